@@ -0,0 +1,109 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * Base class for GreyscaleRasters, which adds bulk access to whole rows.
+ * The default implementation reads every pixel with getGreyScale,
+ * subclasses should override the row methods if they can do better.
+ * 
+ * Code which has to handle arbitrary GreyscaleRasters should use the
+ * static getRow methods, which fall back to per pixel access for rasters
+ * not extending this class.
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public abstract class AbstractGreyscaleRaster implements GreyscaleRaster
+{
+
+  /**
+   * Copies the grey values of the row y into target[0..getWidth()-1]
+   * 
+   * @param y
+   * @param target 
+   */
+  public void getRow(int y, int[] target)
+  {
+    for (int x = 0; x < getWidth(); x++)
+    {
+      target[x] = getGreyScale(x, y);
+    }
+  }
+
+  /**
+   * Copies the grey values of the row y into target[0..getWidth()-1]
+   * as unsigned bytes
+   * 
+   * @param y
+   * @param target 
+   */
+  public void getRow(int y, byte[] target)
+  {
+    for (int x = 0; x < getWidth(); x++)
+    {
+      target[x] = (byte) getGreyScale(x, y);
+    }
+  }
+
+  /**
+   * Copies the grey values of the row y of the given raster
+   * into target[0..getWidth()-1]
+   * 
+   * @param raster
+   * @param y
+   * @param target 
+   */
+  public static void getRow(GreyscaleRaster raster, int y, int[] target)
+  {
+    if (raster instanceof AbstractGreyscaleRaster)
+    {
+      ((AbstractGreyscaleRaster) raster).getRow(y, target);
+    }
+    else
+    {
+      for (int x = 0; x < raster.getWidth(); x++)
+      {
+        target[x] = raster.getGreyScale(x, y);
+      }
+    }
+  }
+
+  /**
+   * Copies the grey values of the row y of the given raster
+   * into target[0..getWidth()-1] as unsigned bytes
+   * 
+   * @param raster
+   * @param y
+   * @param target 
+   */
+  public static void getRow(GreyscaleRaster raster, int y, byte[] target)
+  {
+    if (raster instanceof AbstractGreyscaleRaster)
+    {
+      ((AbstractGreyscaleRaster) raster).getRow(y, target);
+    }
+    else
+    {
+      for (int x = 0; x < raster.getWidth(); x++)
+      {
+        target[x] = (byte) raster.getGreyScale(x, y);
+      }
+    }
+  }
+}
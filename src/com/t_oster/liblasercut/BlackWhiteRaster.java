@@ -37,7 +37,70 @@ public class BlackWhiteRaster extends TimeIntensiveOperation
   }
   private int width;
   private int height;
-  private byte[][] raster;
+  /**
+   * The pixels are stored row by row, every row occupies
+   * bytesPerRow bytes and every byte holds 8 pixels
+   * (the leftmost pixel in the most significant bit)
+   */
+  private int bytesPerRow;
+  private byte[] raster;
+  /**
+   * Position of the black pixels in every row. It is built
+   * on the first query and dropped whenever a pixel is changed
+   */
+  private RowIndex index = null;
+
+  private static class RowIndex
+  {
+
+    final int[] first;
+    final int[] last;
+    /**
+     * The first non empty row at or after the given row
+     */
+    final int[] nextNonEmpty;
+    final int left;
+    final int top;
+    final int right;
+    final int bottom;
+
+    RowIndex(BlackWhiteRaster r)
+    {
+      first = new int[r.height];
+      last = new int[r.height];
+      nextNonEmpty = new int[r.height + 1];
+      int l = r.width;
+      int t = r.height;
+      int ri = 0;
+      int b = 0;
+      for (int y = 0; y < r.height; y++)
+      {
+        first[y] = r.scanFirstBlackPixel(y);
+        last[y] = first[y] == -1 ? -1 : r.scanLastBlackPixel(y);
+        if (first[y] != -1)
+        {
+          l = Math.min(l, first[y]);
+          ri = Math.max(ri, last[y] + 1);
+          t = Math.min(t, y);
+          b = y + 1;
+        }
+      }
+      nextNonEmpty[r.height] = r.height;
+      for (int y = r.height - 1; y >= 0; y--)
+      {
+        nextNonEmpty[y] = first[y] != -1 ? y : nextNonEmpty[y + 1];
+      }
+      if (b == 0)
+      {
+        l = 0;
+        t = 0;
+      }
+      left = l;
+      top = t;
+      right = ri;
+      bottom = b;
+    }
+  }
 
   public static DitheringAlgorithm getDitheringAlgorithm(DitherAlgorithm alg)
   {
@@ -66,7 +129,8 @@ public class BlackWhiteRaster extends TimeIntensiveOperation
     }
     this.width = src.getWidth();
     this.height = src.getHeight();
-    raster = new byte[(src.getWidth() + 7) / 8][src.getHeight()];
+    this.bytesPerRow = (width + 7) / 8;
+    raster = new byte[bytesPerRow * height];
     DitheringAlgorithm alg = BlackWhiteRaster.getDitheringAlgorithm(dither_algorithm);
     if (listener != null)
     {
@@ -80,32 +144,376 @@ public class BlackWhiteRaster extends TimeIntensiveOperation
     this(src, dither_algorithm, null);
   }
 
+  /**
+   * Creates a BlackWhiteRaster from the given bytes, which are
+   * indexed as raster[x/8][y].
+   * Since the raster is stored row by row, the bytes are copied:
+   * Changes to the given array after the call do not affect this
+   * raster (and vice versa). Use setBlack or setRow to modify it.
+   * @param width
+   * @param height
+   * @param raster 
+   */
   public BlackWhiteRaster(int width, int height, byte[][] raster)
   {
-    this.width = width;
-    this.height = height;
-    this.raster = raster;
+    this(width, height);
+    for (int bx = 0; bx < bytesPerRow; bx++)
+    {
+      for (int y = 0; y < height; y++)
+      {
+        this.raster[y * bytesPerRow + bx] = raster[bx][y];
+      }
+    }
+    for (int y = 0; y < height; y++)
+    {
+      clearPadding(y);
+    }
   }
 
   public BlackWhiteRaster(int width, int height)
   {
     this.width = width;
     this.height = height;
-    this.raster = new byte[(width + 7) / 8][height];
+    this.bytesPerRow = (width + 7) / 8;
+    this.raster = new byte[bytesPerRow * height];
   }
 
   public boolean isBlack(int x, int y)
   {
-    int bx = x / 8;
-    int ix = 7 - (x % 8);
-    return ((raster[bx][y] & 0xFF) & (int) Math.pow(2,ix)) != 0;
+    return (raster[y * bytesPerRow + (x >> 3)] & (0x80 >>> (x & 7))) != 0;
   }
 
   public void setBlack(int x, int y, boolean black)
   {
-    int bx = x / 8;
-    int ix = 7 - (x % 8);
-    raster[bx][y] = (byte) (((raster[bx][y] & 0xFF) & ~((int) Math.pow(2,ix))) | (black ? (int) Math.pow(2,ix) : 0 ));
+    int idx = y * bytesPerRow + (x >> 3);
+    index = null;
+    if (black)
+    {
+      raster[idx] |= 0x80 >>> (x & 7);
+    }
+    else
+    {
+      raster[idx] &= ~(0x80 >>> (x & 7));
+    }
+  }
+
+  /**
+   * Makes sure the unused bits after the last pixel of the given row
+   * are white
+   */
+  private void clearPadding(int y)
+  {
+    if (width % 8 != 0)
+    {
+      raster[y * bytesPerRow + bytesPerRow - 1] &= 0xFF << (8 - width % 8);
+    }
+  }
+
+  /**
+   * Returns the number of bytes one row of this raster occupies
+   * @return (getWidth()+7)/8
+   */
+  public int getBytesPerRow()
+  {
+    return bytesPerRow;
+  }
+
+  /**
+   * Copies the given row into the target array, starting at offset.
+   * The format is the same as in getByte
+   * @param y the row
+   * @param target an array with at least offset+getBytesPerRow() elements
+   * @param offset
+   */
+  public void getRow(int y, byte[] target, int offset)
+  {
+    System.arraycopy(raster, y * bytesPerRow, target, offset, bytesPerRow);
+  }
+
+  /**
+   * Overwrites the given row with the bytes from source, starting
+   * at offset. The format is the same as in getByte
+   * @param y the row
+   * @param source an array with at least offset+getBytesPerRow() elements
+   * @param offset
+   */
+  public void setRow(int y, byte[] source, int offset)
+  {
+    System.arraycopy(source, offset, raster, y * bytesPerRow, bytesPerRow);
+    clearPadding(y);
+    index = null;
+  }
+
+  /**
+   * ORs the given row into the target array, starting at offset.
+   * This can be used to merge several rows (e.g. of overlapping rasters)
+   * @param y the row
+   * @param target an array with at least offset+getBytesPerRow() elements
+   * @param offset
+   */
+  public void orRow(int y, byte[] target, int offset)
+  {
+    int start = y * bytesPerRow;
+    for (int i = 0; i < bytesPerRow; i++)
+    {
+      target[offset + i] |= raster[start + i];
+    }
+  }
+
+  /**
+   * ORs the row srcY of the given raster into the row y of this raster.
+   * Both rasters must have the same width
+   * @param y
+   * @param src
+   * @param srcY 
+   */
+  public void orRow(int y, BlackWhiteRaster src, int srcY)
+  {
+    if (src.width != width)
+    {
+      throw new IllegalArgumentException("Raster widths differ (" + src.width + " vs " + width + ")");
+    }
+    src.orRow(srcY, raster, y * bytesPerRow);
+    index = null;
+  }
+
+  private RowIndex getIndex()
+  {
+    RowIndex result = index;
+    if (result == null)
+    {
+      result = new RowIndex(this);
+      index = result;
+    }
+    return result;
+  }
+
+  private int scanFirstBlackPixel(int y)
+  {
+    int start = y * bytesPerRow;
+    for (int bx = 0; bx < bytesPerRow; bx++)
+    {
+      int b = raster[start + bx] & 0xFF;
+      if (b != 0)
+      {
+        return bx * 8 + Integer.numberOfLeadingZeros(b) - 24;
+      }
+    }
+    return -1;
+  }
+
+  private int scanLastBlackPixel(int y)
+  {
+    int start = y * bytesPerRow;
+    for (int bx = bytesPerRow - 1; bx >= 0; bx--)
+    {
+      int b = raster[start + bx] & 0xFF;
+      if (b != 0)
+      {
+        return bx * 8 + 7 - Integer.numberOfTrailingZeros(b);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the x coordinate of the first black pixel in the given row.
+   * The position of the black pixels is indexed, so this is O(1)
+   * as long as the raster is not modified
+   * @param y
+   * @return the x coordinate or -1 if the row is completely white
+   */
+  public int getFirstBlackPixel(int y)
+  {
+    return getIndex().first[y];
+  }
+
+  /**
+   * Returns the x coordinate of the last black pixel in the given row
+   * @param y
+   * @return the x coordinate or -1 if the row is completely white
+   */
+  public int getLastBlackPixel(int y)
+  {
+    return getIndex().last[y];
+  }
+
+  /**
+   * Returns the x coordinate of the first pixel at or after x in the
+   * given row which has the given color. The row is scanned 64 pixels
+   * at a time
+   * @param y
+   * @param x
+   * @param black
+   * @return the x coordinate or getWidth() if there is no such pixel
+   */
+  public int getNextPixel(int y, int x, boolean black)
+  {
+    if (x >= width)
+    {
+      return width;
+    }
+    int start = y * bytesPerRow;
+    int end = start + bytesPerRow;
+    int b = start + (x >> 3);
+    long mask = -1L >>> (x & 7);
+    while (b < end)
+    {
+      long word = 0;
+      int n = Math.min(8, end - b);
+      for (int i = 0; i < n; i++)
+      {
+        word = (word << 8) | (raster[b + i] & 0xFF);
+      }
+      word <<= 8 * (8 - n);
+      if (!black)
+      {
+        word = ~word;
+      }
+      word &= mask;
+      if (word != 0)
+      {
+        return Math.min(width, (b - start) * 8 + Long.numberOfLeadingZeros(word));
+      }
+      mask = -1L;
+      b += 8;
+    }
+    return width;
+  }
+
+  /**
+   * Returns true if the given row does not contain any black pixel
+   * @param y
+   * @return 
+   */
+  public boolean isRowEmpty(int y)
+  {
+    return getIndex().first[y] == -1;
+  }
+
+  /**
+   * Returns the first row at or after y which contains a black pixel.
+   * This can be used to skip runs of empty rows
+   * @param y
+   * @return the row or getHeight() if all remaining rows are empty
+   */
+  public int getNextNonEmptyRow(int y)
+  {
+    return getIndex().nextNonEmpty[y];
+  }
+
+  /**
+   * Returns true if the raster does not contain any black pixel
+   * @return 
+   */
+  public boolean isEmpty()
+  {
+    return getIndex().bottom == 0;
+  }
+
+  /**
+   * Returns the x coordinate of the left edge of the bounding box
+   * of all black pixels (0 if the raster is empty)
+   * @return 
+   */
+  public int getContentLeft()
+  {
+    return getIndex().left;
+  }
+
+  /**
+   * Returns the y coordinate of the top edge of the bounding box
+   * of all black pixels (0 if the raster is empty)
+   * @return 
+   */
+  public int getContentTop()
+  {
+    return getIndex().top;
+  }
+
+  /**
+   * Returns the x coordinate after the right edge of the bounding box
+   * of all black pixels (0 if the raster is empty)
+   * @return 
+   */
+  public int getContentRight()
+  {
+    return getIndex().right;
+  }
+
+  /**
+   * Returns the y coordinate after the bottom edge of the bounding box
+   * of all black pixels (0 if the raster is empty)
+   * @return 
+   */
+  public int getContentBottom()
+  {
+    return getIndex().bottom;
+  }
+
+  /**
+   * Returns a new BlackWhiteRaster containing the given rectangle
+   * of this raster
+   * @param x
+   * @param y
+   * @param width
+   * @param height
+   * @return 
+   */
+  public BlackWhiteRaster crop(int x, int y, int width, int height)
+  {
+    if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height)
+    {
+      throw new IllegalArgumentException("Crop rectangle exceeds the raster");
+    }
+    BlackWhiteRaster result = new BlackWhiteRaster(width, height);
+    int shift = x & 7;
+    for (int row = 0; row < height; row++)
+    {
+      int src = (y + row) * bytesPerRow + (x >> 3);
+      int srcEnd = (y + row + 1) * bytesPerRow;
+      int dst = row * result.bytesPerRow;
+      for (int bx = 0; bx < result.bytesPerRow; bx++)
+      {
+        int b = (raster[src + bx] & 0xFF) << shift;
+        if (shift != 0 && src + bx + 1 < srcEnd)
+        {
+          b |= (raster[src + bx + 1] & 0xFF) >>> (8 - shift);
+        }
+        result.raster[dst + bx] = (byte) b;
+      }
+      result.clearPadding(row);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new BlackWhiteRaster which only contains the
+   * bounding box of all black pixels.
+   * The position of the cropped raster inside this raster is
+   * (getContentLeft(), getContentTop())
+   * @return 
+   */
+  public BlackWhiteRaster cropToContent()
+  {
+    RowIndex i = getIndex();
+    return crop(i.left, i.top, i.right - i.left, i.bottom - i.top);
+  }
+
+  /**
+   * Returns the number of black pixels in the given row
+   * @param y
+   * @return 
+   */
+  public int countBlackPixels(int y)
+  {
+    int start = y * bytesPerRow;
+    int result = 0;
+    for (int bx = 0; bx < bytesPerRow; bx++)
+    {
+      result += Integer.bitCount(raster[start + bx] & 0xFF);
+    }
+    return result;
   }
 
   /**
@@ -118,7 +526,7 @@ public class BlackWhiteRaster extends TimeIntensiveOperation
    */
   public byte getByte(int x, int y)
   {
-    return raster[x][y];
+    return raster[y * bytesPerRow + x];
   }
 
   public int getWidth()
@@ -0,0 +1,123 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A GreyscaleRaster which stores one byte per pixel
+ * row by row in a flat array.
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ByteGreyscaleRaster extends AbstractGreyscaleRaster
+{
+
+  private int width;
+  private int height;
+  private byte[] raster;
+
+  public ByteGreyscaleRaster(int width, int height)
+  {
+    if ((long) width * height > Integer.MAX_VALUE)
+    {
+      throw new IllegalArgumentException("Raster of " + width + "x" + height + " pixels is too big for an array");
+    }
+    this.width = width;
+    this.height = height;
+    this.raster = new byte[width * height];
+  }
+
+  /**
+   * Creates a ByteGreyscaleRaster which uses the given bytes
+   * (row by row, one byte per pixel) without copying them
+   * @param width
+   * @param height
+   * @param raster 
+   */
+  public ByteGreyscaleRaster(int width, int height, byte[] raster)
+  {
+    if (raster.length < (long) width * height)
+    {
+      throw new IllegalArgumentException("The array has to hold at least " + ((long) width * height) + " bytes");
+    }
+    this.width = width;
+    this.height = height;
+    this.raster = raster;
+  }
+
+  /**
+   * Creates a copy of the given GreyscaleRaster
+   * @param src 
+   */
+  public ByteGreyscaleRaster(GreyscaleRaster src)
+  {
+    this(src.getWidth(), src.getHeight());
+    byte[] row = new byte[width];
+    for (int y = 0; y < height; y++)
+    {
+      AbstractGreyscaleRaster.getRow(src, y, row);
+      System.arraycopy(row, 0, raster, y * width, width);
+    }
+  }
+
+  /**
+   * Returns the underlying array. The pixel (x,y) is
+   * stored at index y*getWidth()+x
+   * @return 
+   */
+  public byte[] getRaster()
+  {
+    return raster;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return raster[y * width + x] & 0xFF;
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    raster[y * width + x] = (byte) grey;
+  }
+
+  @Override
+  public void getRow(int y, byte[] target)
+  {
+    System.arraycopy(raster, y * width, target, 0, width);
+  }
+
+  @Override
+  public void getRow(int y, int[] target)
+  {
+    int offset = y * width;
+    for (int x = 0; x < width; x++)
+    {
+      target[x] = raster[offset + x] & 0xFF;
+    }
+  }
+}
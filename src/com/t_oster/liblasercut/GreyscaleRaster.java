@@ -28,6 +28,9 @@ package com.t_oster.liblasercut;
  * because there are some plattfroms (ie Android) where BufferedImage
  * is not available but other Image classes which can be used.
  * 
+ * Implementations should extend AbstractGreyscaleRaster, which
+ * adds bulk access to whole rows.
+ * 
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public interface GreyscaleRaster
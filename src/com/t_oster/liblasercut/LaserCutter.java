@@ -23,7 +23,17 @@
 package com.t_oster.liblasercut;
 
 import com.t_oster.liblasercut.platform.Util;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /**
  *
@@ -32,6 +42,211 @@ import java.util.List;
 public abstract class LaserCutter implements Cloneable
 {
 
+  private static Executor defaultExecutor = null;
+  private Executor executor = null;
+  private final List<Closeable> resources = new LinkedList<Closeable>();
+
+  /**
+   * Returns the Executor used by sendJobAsync, if no Executor is set.
+   * It uses virtual threads if the Java runtime supports them and
+   * daemon threads otherwise
+   * @return 
+   */
+  public static synchronized Executor getDefaultExecutor()
+  {
+    if (defaultExecutor == null)
+    {
+      try
+      {
+        //available since Java 21
+        defaultExecutor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (Exception e)
+      {
+        defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+          public Thread newThread(Runnable r)
+          {
+            Thread result = new Thread(r, "LaserCutter job");
+            result.setDaemon(true);
+            return result;
+          }
+        });
+      }
+    }
+    return defaultExecutor;
+  }
+
+  /**
+   * Get the value of executor
+   *
+   * @return the value of executor
+   */
+  public Executor getExecutor()
+  {
+    return executor;
+  }
+
+  /**
+   * Set the Executor sendJobAsync runs the jobs on.
+   * null means the default Executor
+   *
+   * @param executor new value of executor
+   */
+  public void setExecutor(Executor executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * Runs sendJob(job, pl) on the Executor of this LaserCutter.
+   * Cancelling the returned Future with mayInterruptIfRunning set
+   * interrupts the job, which stops at the next raster line or vector
+   * path, and closes all connections it has opened.
+   * The exceptions of sendJob are thrown by Future.get wrapped in an
+   * ExecutionException.
+   * A LaserCutter sends one job at a time, use clone() to send
+   * jobs to several cutters in parallel.
+   * 
+   * @param job
+   * @param pl
+   * @return 
+   */
+  public Future<Void> sendJobAsync(final LaserJob job, final ProgressListener pl)
+  {
+    return execute(new Callable<Void>()
+    {
+      public Void call() throws Exception
+      {
+        sendJob(job, pl);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Runs sendPreparedJob(job, pl) on the Executor of this LaserCutter
+   * like sendJobAsync. The job is not closed.
+   * 
+   * @param job
+   * @param pl
+   * @return 
+   */
+  public Future<Void> sendPreparedJobAsync(final PreparedJob job, final ProgressListener pl)
+  {
+    return execute(new Callable<Void>()
+    {
+      public Void call() throws Exception
+      {
+        sendPreparedJob(job, pl);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Runs the task on the Executor. Cancelling the returned Future
+   * closes the registered resources of the running task
+   */
+  private Future<Void> execute(Callable<Void> task)
+  {
+    FutureTask<Void> result = new FutureTask<Void>(task)
+    {
+
+      private volatile boolean started = false;
+
+      @Override
+      public void run()
+      {
+        started = true;
+        super.run();
+      }
+
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && mayInterruptIfRunning && started)
+        {
+          closeResources();
+        }
+        return cancelled;
+      }
+    };
+    (executor != null ? executor : getDefaultExecutor()).execute(result);
+    return result;
+  }
+
+  /**
+   * Registers a resource of the running job, e.g. a socket or serial
+   * port. It is closed, if the job is cancelled, so blocking I/O
+   * returns immediately. If the job is already cancelled, the
+   * resource is closed at once.
+   * 
+   * @param resource
+   * @throws InterruptedIOException if the job was cancelled
+   */
+  protected void registerResource(Closeable resource) throws InterruptedIOException
+  {
+    synchronized (resources)
+    {
+      resources.add(resource);
+    }
+    if (Thread.currentThread().isInterrupted())
+    {
+      closeResources();
+      throw new InterruptedIOException("Job cancelled");
+    }
+  }
+
+  /**
+   * Removes a resource registered with registerResource. It is not closed
+   * @param resource 
+   */
+  protected void unregisterResource(Closeable resource)
+  {
+    synchronized (resources)
+    {
+      resources.remove(resource);
+    }
+  }
+
+  private void closeResources()
+  {
+    List<Closeable> open;
+    synchronized (resources)
+    {
+      open = new LinkedList<Closeable>(resources);
+      resources.clear();
+    }
+    for (Closeable c : open)
+    {
+      try
+      {
+        c.close();
+      }
+      catch (IOException e)
+      {
+        //the job fails anyway
+      }
+    }
+  }
+
+  /**
+   * Throws an InterruptedIOException if the thread sending the job
+   * was interrupted, e.g. because the job was cancelled.
+   * Drivers call this between raster lines and vector paths
+   * 
+   * @throws InterruptedIOException 
+   */
+  protected static void checkCancelled() throws InterruptedIOException
+  {
+    if (Thread.currentThread().isInterrupted())
+    {
+      throw new InterruptedIOException("Job cancelled");
+    }
+  }
+
   /**
    * Checks the given job. It throws exceptions if
    * - job size is bigger than laser bed size
@@ -89,6 +304,25 @@ public abstract class LaserCutter implements Cloneable
     }
   }
   
+  /**
+   * Returns true if the job passes the sanity checks of this
+   * Lasercutter, so sendJob would accept it
+   * @param job
+   * @return 
+   */
+  public boolean isCompatible(LaserJob job)
+  {
+    try
+    {
+      checkJob(job);
+      return true;
+    }
+    catch (IllegalJobException e)
+    {
+      return false;
+    }
+  }
+
   /**
    * Performs sanity checks on the LaserJob and sends it to the Cutter
    * @param job
@@ -98,6 +332,38 @@ public abstract class LaserCutter implements Cloneable
    */
   public abstract void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception;
 
+  /**
+   * Performs the sanity checks on the LaserJob and generates the data,
+   * which sendPreparedJob sends to the Cutter. This allows generating
+   * the next job on another thread while the current one is sent.
+   * The default implementation only checks the job, so
+   * sendPreparedJob generates the data while sending it.
+   * Drivers, which generate their data before sending it anyway,
+   * override both methods.
+   * @param job
+   * @param pl A ProgressListener to give feedback about the progress
+   * @return the prepared job, which has to be closed by the caller
+   * @throws IllegalJobException if the Job didn't pass the SanityCheck
+   * @throws Exception if the data could not be generated
+   */
+  public PreparedJob prepareJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    checkJob(job);
+    return new PreparedJob(job);
+  }
+
+  /**
+   * Sends a job prepared by prepareJob of this LaserCutter or a clone
+   * of it with the same settings. The job is not closed.
+   * @param job
+   * @param pl A ProgressListener to give feedback about the progress
+   * @throws Exception  if there is a Problem with the Communication or Queue
+   */
+  public void sendPreparedJob(PreparedJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    sendJob(job.getJob(), pl);
+  }
+
   /**
    * This calls sendJob(job, pl) with a default progress listener, which
    * just dumps everythong on the command line
@@ -0,0 +1,54 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.Closeable;
+
+/**
+ * A LaserJob, whose data was generated by LaserCutter.prepareJob,
+ * so sending it only transmits the data. It is sent once and has
+ * to be closed afterwards or if it is not sent at all, which
+ * deletes its spool files.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PreparedJob implements Closeable
+{
+
+  private LaserJob job;
+
+  public PreparedJob(LaserJob job)
+  {
+    this.job = job;
+  }
+
+  /**
+   * Get the value of job
+   *
+   * @return the value of job
+   */
+  public LaserJob getJob()
+  {
+    return job;
+  }
+
+  public void close()
+  {
+  }
+}
@@ -139,6 +139,23 @@ public class Raster3dPart {
         return result;
     }
 
+    /**
+     * Copies one line of the given raster into the given RasterLine
+     * and computes its extent without leading and trailing zero bytes.
+     * Every byte represents one pixel and the value corresponds to
+     * the raster power
+     * @param raster
+     * @param line
+     * @param target the RasterLine to fill. It should be reused for every line
+     */
+    public void getRasterLine(int raster, int line, RasterLine target) {
+        GreyscaleRaster img = this.images.get(raster);
+        int w = img.getWidth();
+        target.setLength(w);
+        AbstractGreyscaleRaster.getRow(img, line, target.getBytes());
+        target.trim();
+    }
+
     public int getRasterWidth(int raster) {
         return this.images.get(raster).getWidth();
     }
@@ -168,4 +185,23 @@ public class Raster3dPart {
         }
         return result;
     }
+
+    /**
+     * Like getRasterLine(int, int, RasterLine), but every byte
+     * is inverted (255 - value)
+     * @param raster
+     * @param line
+     * @param target the RasterLine to fill. It should be reused for every line
+     */
+    public void getInvertedRasterLine(int raster, int line, RasterLine target) {
+        GreyscaleRaster img = this.images.get(raster);
+        int w = img.getWidth();
+        target.setLength(w);
+        byte[] bytes = target.getBytes();
+        AbstractGreyscaleRaster.getRow(img, line, bytes);
+        for (int x = 0; x < w; x++) {
+            bytes[x] = (byte) (255 - (bytes[x] & 0xFF));
+        }
+        target.trim();
+    }
 }
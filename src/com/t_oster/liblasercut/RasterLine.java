@@ -0,0 +1,145 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A reusable buffer for one line of a RasterPart or Raster3dPart.
+ * The line is filled by RasterPart.getRasterLine(int, int, RasterLine) or
+ * Raster3dPart.getRasterLine(int, int, RasterLine), which also compute
+ * the extent [first,last) of the line without leading and trailing zeroes.
+ * 
+ * Drivers should create one RasterLine per job and reuse it for every
+ * line, so no memory is allocated per line.
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class RasterLine
+{
+
+  private byte[] bytes;
+  private int length = 0;
+  private int first = 0;
+  private int last = 0;
+
+  public RasterLine()
+  {
+    this(0);
+  }
+
+  public RasterLine(int capacity)
+  {
+    bytes = new byte[capacity];
+  }
+
+  /**
+   * Makes sure the buffer can hold at least the given number
+   * of bytes and sets the length of the line. The content of the
+   * buffer is undefined afterwards
+   * @param length 
+   */
+  void setLength(int length)
+  {
+    if (bytes.length < length)
+    {
+      bytes = new byte[length];
+    }
+    this.length = length;
+  }
+
+  /**
+   * Computes the extent of the line without leading
+   * and trailing zero bytes
+   */
+  void trim()
+  {
+    first = 0;
+    while (first < length && bytes[first] == 0)
+    {
+      first++;
+    }
+    last = length;
+    while (last > first && bytes[last - 1] == 0)
+    {
+      last--;
+    }
+  }
+
+  /**
+   * Sets the extent of the line, if it is already known
+   * @param first the index of the first non-zero byte
+   * @param last the index after the last non-zero byte
+   */
+  void setExtent(int first, int last)
+  {
+    this.first = first;
+    this.last = last;
+  }
+
+  /**
+   * Returns the underlying buffer. Only the first getLength() bytes
+   * belong to the current line. The buffer may be modified by the caller.
+   * @return 
+   */
+  public byte[] getBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * Returns the length of the complete (untrimmed) line
+   * @return 
+   */
+  public int getLength()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the index of the first non-zero byte
+   * or getLength() if the line is empty
+   * @return 
+   */
+  public int getFirst()
+  {
+    return first;
+  }
+
+  /**
+   * Returns the index after the last non-zero byte
+   * @return 
+   */
+  public int getLast()
+  {
+    return last;
+  }
+
+  /**
+   * Returns true if the line contains only zero bytes
+   * @return 
+   */
+  public boolean isEmpty()
+  {
+    return first >= last;
+  }
+
+  public byte get(int index)
+  {
+    return bytes[index];
+  }
+}
@@ -37,6 +37,7 @@ public class RasterPart
   private List<BlackWhiteRaster> images = new LinkedList<BlackWhiteRaster>();
   private List<LaserProperty> properties = new LinkedList<LaserProperty>();
   private List<Point> starts = new LinkedList<Point>();
+  private boolean autoCrop = false;
 
   public RasterPart(LaserProperty initialLaserProperty)
   {
@@ -63,6 +64,28 @@ public class RasterPart
     this.curProp.setSpeed(speed);
   }
 
+  /**
+   * Get the value of autoCrop
+   *
+   * @return the value of autoCrop
+   */
+  public boolean isAutoCrop()
+  {
+    return autoCrop;
+  }
+
+  /**
+   * If set, images added afterwards are cropped to the bounding box
+   * of their black pixels and their start point is moved accordingly,
+   * so drivers do not have to process white margins
+   *
+   * @param autoCrop new value of autoCrop
+   */
+  public void setAutoCrop(boolean autoCrop)
+  {
+    this.autoCrop = autoCrop;
+  }
+
   /**
    * Adds the given Image to this RasterPart
    * The Image must be in sRGB Format. The grey value of every pixel
@@ -77,6 +100,13 @@ public class RasterPart
 
   public void addImage(BlackWhiteRaster img, LaserProperty prop, Point start)
   {
+    if (autoCrop && !img.isEmpty()
+      && (img.getContentLeft() > 0 || img.getContentTop() > 0
+      || img.getContentRight() < img.getWidth() || img.getContentBottom() < img.getHeight()))
+    {
+      start = new Point(start.x + img.getContentLeft(), start.y + img.getContentTop());
+      img = img.cropToContent();
+    }
     this.images.add(img);
     this.properties.add(prop.clone());
     this.starts.add(start);
@@ -154,6 +184,30 @@ public class RasterPart
     return result;
   }
 
+  /**
+   * Copies one line of the given raster into the given RasterLine
+   * and computes its extent without leading and trailing white bytes.
+   * Every byte represents 8 pixel, the format is the same as
+   * in getRasterLine(int, int)
+   * @param raster
+   * @param line
+   * @param target the RasterLine to fill. It should be reused for every line
+   */
+  public void getRasterLine(int raster, int line, RasterLine target)
+  {
+    BlackWhiteRaster img = this.images.get(raster);
+    target.setLength(img.getBytesPerRow());
+    img.getRow(line, target.getBytes(), 0);
+    if (img.isRowEmpty(line))
+    {
+      target.setExtent(img.getBytesPerRow(), img.getBytesPerRow());
+    }
+    else
+    {
+      target.setExtent(img.getFirstBlackPixel(line) / 8, img.getLastBlackPixel(line) / 8 + 1);
+    }
+  }
+
   public int getRasterWidth(int raster)
   {
     return this.images.get(raster).getWidth();
@@ -0,0 +1,179 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * The runs of equal pixel values of one raster line, without the
+ * leading and trailing white (zero) pixels. The first and the last
+ * run are never white.
+ * 
+ * A RasterRuns object can be filled from a row of a BlackWhiteRaster
+ * (black pixels have the value 255) or from a RasterLine of a
+ * Raster3dPart. Drivers should create one per job and reuse it for
+ * every line, so no memory is allocated per line.
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class RasterRuns
+{
+
+  private int count = 0;
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private int[] values = new int[16];
+
+  private void add(int start, int end, int value)
+  {
+    if (count == starts.length)
+    {
+      int[] s = new int[count * 2];
+      int[] e = new int[count * 2];
+      int[] v = new int[count * 2];
+      System.arraycopy(starts, 0, s, 0, count);
+      System.arraycopy(ends, 0, e, 0, count);
+      System.arraycopy(values, 0, v, 0, count);
+      starts = s;
+      ends = e;
+      values = v;
+    }
+    starts[count] = start;
+    ends[count] = end;
+    values[count] = value;
+    count++;
+  }
+
+  /**
+   * Extracts the runs of the given row. Black runs have the value 255,
+   * white runs the value 0
+   * @param img
+   * @param y 
+   */
+  public void extract(BlackWhiteRaster img, int y)
+  {
+    count = 0;
+    int x = img.getFirstBlackPixel(y);
+    if (x == -1)
+    {
+      return;
+    }
+    int last = img.getLastBlackPixel(y);
+    while (true)
+    {
+      int end = Math.min(last + 1, img.getNextPixel(y, x, false));
+      add(x, end, 255);
+      if (end > last)
+      {
+        break;
+      }
+      int next = img.getNextPixel(y, end, true);
+      add(end, next, 0);
+      x = next;
+    }
+  }
+
+  /**
+   * Extracts the runs of the given RasterLine, where every byte
+   * is one pixel
+   * @param line 
+   */
+  public void extract(RasterLine line)
+  {
+    extract(line.getBytes(), line.getFirst(), line.getLast());
+  }
+
+  /**
+   * Extracts the runs of bytes[from..to), where every byte is one pixel.
+   * Zero bytes at the start and end of the range are skipped
+   * @param bytes
+   * @param from
+   * @param to 
+   */
+  public void extract(byte[] bytes, int from, int to)
+  {
+    count = 0;
+    while (from < to && bytes[from] == 0)
+    {
+      from++;
+    }
+    while (to > from && bytes[to - 1] == 0)
+    {
+      to--;
+    }
+    int start = from;
+    while (start < to)
+    {
+      byte value = bytes[start];
+      int end = start + 1;
+      while (end < to && bytes[end] == value)
+      {
+        end++;
+      }
+      add(start, end, value & 0xFF);
+      start = end;
+    }
+  }
+
+  /**
+   * Returns the number of runs
+   * @return 
+   */
+  public int getCount()
+  {
+    return count;
+  }
+
+  /**
+   * Returns true if the line contains no non-white pixel
+   * @return 
+   */
+  public boolean isEmpty()
+  {
+    return count == 0;
+  }
+
+  /**
+   * Returns the x coordinate of the first pixel of the given run
+   * @param run
+   * @return 
+   */
+  public int getStart(int run)
+  {
+    return starts[run];
+  }
+
+  /**
+   * Returns the x coordinate after the last pixel of the given run
+   * @param run
+   * @return 
+   */
+  public int getEnd(int run)
+  {
+    return ends[run];
+  }
+
+  /**
+   * Returns the value (0-255) of the pixels in the given run
+   * @param run
+   * @return 
+   */
+  public int getValue(int run)
+  {
+    return values[run];
+  }
+}
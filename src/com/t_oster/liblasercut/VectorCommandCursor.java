@@ -0,0 +1,159 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A cursor over the packed command buffer of a VectorPart.
+ * It allows drivers to iterate over all commands without creating
+ * a VectorCommand object for each of them:
+ * 
+ * <pre>
+ * VectorCommandCursor c = vp.getCommandCursor();
+ * while (c.next())
+ * {
+ *   switch (c.getType()) ...
+ * }
+ * </pre>
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class VectorCommandCursor
+{
+
+  private static final VectorCommand.CmdType[] TYPES = VectorCommand.CmdType.values();
+  private final int[] commands;
+  private final int size;
+  private int position = -1;
+  private int next = 0;
+  private VectorCommand.CmdType type;
+
+  VectorCommandCursor(int[] commands, int size)
+  {
+    this.commands = commands;
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of ints the given command type occupies
+   * in the packed buffer (including the opcode)
+   */
+  private static int getCommandLength(VectorCommand.CmdType type)
+  {
+    return type == VectorCommand.CmdType.MOVETO || type == VectorCommand.CmdType.LINETO ? 3 : 2;
+  }
+
+  /**
+   * Advances the cursor to the next command.
+   * @return false if there are no more commands
+   */
+  public boolean next()
+  {
+    if (next >= size)
+    {
+      type = null;
+      return false;
+    }
+    position = next;
+    type = TYPES[commands[position]];
+    next = position + getCommandLength(type);
+    return true;
+  }
+
+  /**
+   * Resets the cursor to the position before the first command
+   */
+  public void reset()
+  {
+    position = -1;
+    next = 0;
+    type = null;
+  }
+
+  public VectorCommand.CmdType getType()
+  {
+    return type;
+  }
+
+  public int getX()
+  {
+    if (type == VectorCommand.CmdType.MOVETO || type == VectorCommand.CmdType.LINETO)
+    {
+      return commands[position + 1];
+    }
+    throw new UnsupportedOperationException("getX not supported for " + type);
+  }
+
+  public int getY()
+  {
+    if (type == VectorCommand.CmdType.MOVETO || type == VectorCommand.CmdType.LINETO)
+    {
+      return commands[position + 2];
+    }
+    throw new UnsupportedOperationException("getY not supported for " + type);
+  }
+
+  /**
+   * Returns the operand of a SETPOWER, SETSPEED or SETFREQUENCY command
+   * @return 
+   */
+  public int getValue()
+  {
+    if (type == VectorCommand.CmdType.SETPOWER || type == VectorCommand.CmdType.SETSPEED || type == VectorCommand.CmdType.SETFREQUENCY)
+    {
+      return commands[position + 1];
+    }
+    throw new UnsupportedOperationException("getValue is not Applicable for " + type);
+  }
+
+  public int getPower()
+  {
+    if (type == VectorCommand.CmdType.SETPOWER)
+    {
+      return commands[position + 1];
+    }
+    throw new UnsupportedOperationException("getPower is not Applicable for " + type);
+  }
+
+  public int getSpeed()
+  {
+    if (type == VectorCommand.CmdType.SETSPEED)
+    {
+      return commands[position + 1];
+    }
+    throw new UnsupportedOperationException("getSpeed is not Applicable for " + type);
+  }
+
+  public int getFrequency()
+  {
+    if (type == VectorCommand.CmdType.SETFREQUENCY)
+    {
+      return commands[position + 1];
+    }
+    throw new UnsupportedOperationException("getFrequency is not Applicable for " + type);
+  }
+
+  public float getFocus()
+  {
+    if (type == VectorCommand.CmdType.SETFOCUS)
+    {
+      return Float.intBitsToFloat(commands[position + 1]);
+    }
+    throw new UnsupportedOperationException("getFocus is not Applicable for " + type);
+  }
+}
@@ -22,8 +22,7 @@
  */
 package com.t_oster.liblasercut;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  *
@@ -32,20 +31,64 @@ import java.util.List;
 public class VectorPart
 {
 
+  private LaserProperty initialCuttingProperty;
   private LaserProperty currentCuttingProperty;
   private int maxX;
   private int maxY;
   private int minX;
   private int minY;
-  private List<VectorCommand> commands;
+  /**
+   * The commands are stored packed in one int array. Every command
+   * starts with the ordinal of its CmdType followed by its operands
+   * (x and y for MOVETO and LINETO, the float bits for SETFOCUS and
+   * the value for all other commands)
+   */
+  private int[] commands = new int[64];
+  private int size = 0;
+  private int commandCount = 0;
 
   public VectorPart(LaserProperty initialProperty)
   {
+    this.initialCuttingProperty = initialProperty.clone();
     this.currentCuttingProperty = initialProperty.clone();
-    commands = new LinkedList<VectorCommand>();
-    commands.add(new VectorCommand(VectorCommand.CmdType.SETPOWER, currentCuttingProperty.getPower()));
-    commands.add(new VectorCommand(VectorCommand.CmdType.SETSPEED, currentCuttingProperty.getSpeed()));
-    commands.add(new VectorCommand(VectorCommand.CmdType.SETFREQUENCY, currentCuttingProperty.getFrequency()));
+    add(VectorCommand.CmdType.SETPOWER, currentCuttingProperty.getPower());
+    add(VectorCommand.CmdType.SETSPEED, currentCuttingProperty.getSpeed());
+    add(VectorCommand.CmdType.SETFREQUENCY, currentCuttingProperty.getFrequency());
+  }
+
+  private void ensureCapacity(int additional)
+  {
+    if (size + additional > commands.length)
+    {
+      commands = Arrays.copyOf(commands, Math.max(commands.length * 2, size + additional));
+    }
+  }
+
+  private void add(VectorCommand.CmdType type, int operand)
+  {
+    ensureCapacity(2);
+    commands[size++] = type.ordinal();
+    commands[size++] = operand;
+    commandCount++;
+  }
+
+  private void add(VectorCommand.CmdType type, int x, int y)
+  {
+    ensureCapacity(3);
+    commands[size++] = type.ordinal();
+    commands[size++] = x;
+    commands[size++] = y;
+    commandCount++;
+  }
+
+  /**
+   * Returns a copy of the property this VectorPart was created with.
+   * Its focus is in effect until the first SETFOCUS command
+   * @return 
+   */
+  public LaserProperty getInitialCuttingProperty()
+  {
+    return initialCuttingProperty.clone();
   }
 
   public LaserProperty getCurrentCuttingProperty()
@@ -61,16 +104,61 @@ public class VectorPart
     this.setFocus(cp.getFocus());
   }
 
+  /**
+   * Returns a copy of all commands as VectorCommand objects.
+   * This creates one object per command, so drivers should
+   * use getCommandCursor() instead
+   * @return 
+   */
   public VectorCommand[] getCommandList()
   {
-    return commands.toArray(new VectorCommand[0]);
+    VectorCommand[] result = new VectorCommand[commandCount];
+    VectorCommandCursor c = getCommandCursor();
+    int i = 0;
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+        case LINETO:
+          result[i++] = new VectorCommand(c.getType(), c.getX(), c.getY());
+          break;
+        case SETFOCUS:
+          result[i++] = new VectorCommand(c.getType(), c.getFocus());
+          break;
+        default:
+          result[i++] = new VectorCommand(c.getType(), c.getValue());
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a cursor which iterates over the commands without
+   * copying them. Commands added after creating the cursor
+   * are not visited.
+   * @return 
+   */
+  public VectorCommandCursor getCommandCursor()
+  {
+    return new VectorCommandCursor(commands, size);
+  }
+
+  /**
+   * Returns the number of commands in this VectorPart
+   * @return 
+   */
+  public int getCommandCount()
+  {
+    return commandCount;
   }
 
   public void setSpeed(int speed)
   {
     if (speed != this.currentCuttingProperty.getSpeed())
     {
-      commands.add(new VectorCommand(VectorCommand.CmdType.SETSPEED, speed));
+      add(VectorCommand.CmdType.SETSPEED, speed);
       this.currentCuttingProperty.setSpeed(speed);
     }
   }
@@ -79,7 +167,7 @@ public class VectorPart
   {
     if (power != this.currentCuttingProperty.getPower())
     {
-      commands.add(new VectorCommand(VectorCommand.CmdType.SETPOWER, power));
+      add(VectorCommand.CmdType.SETPOWER, power);
       this.currentCuttingProperty.setPower(power);
     }
   }
@@ -88,7 +176,7 @@ public class VectorPart
   {
     if (frequency != this.currentCuttingProperty.getFrequency())
     {
-      commands.add(new VectorCommand(VectorCommand.CmdType.SETFREQUENCY, frequency));
+      add(VectorCommand.CmdType.SETFREQUENCY, frequency);
       this.currentCuttingProperty.setFrequency(frequency);
     }
   }
@@ -97,7 +185,7 @@ public class VectorPart
   {
     if (focus != this.currentCuttingProperty.getFocus())
     {
-      commands.add(new VectorCommand(VectorCommand.CmdType.SETFOCUS, focus));
+      add(VectorCommand.CmdType.SETFOCUS, Float.floatToIntBits(focus));
       this.currentCuttingProperty.setFocus(focus);
     }
   }
@@ -128,14 +216,14 @@ public class VectorPart
 
   public void moveto(int x, int y)
   {
-    commands.add(new VectorCommand(VectorCommand.CmdType.MOVETO, x, y));
+    add(VectorCommand.CmdType.MOVETO, x, y);
     checkMin(x, y);
     checkMax(x, y);
   }
 
   public void lineto(int x, int y)
   {
-    commands.add(new VectorCommand(VectorCommand.CmdType.LINETO, x, y));
+    add(VectorCommand.CmdType.LINETO, x, y);
     checkMin(x, y);
     checkMax(x, y);
   }
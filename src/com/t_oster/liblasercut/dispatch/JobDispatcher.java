@@ -0,0 +1,576 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.dispatch;
+
+import com.t_oster.liblasercut.IllegalJobException;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.PreparedJob;
+import com.t_oster.liblasercut.ProgressListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Distributes LaserJobs over several Lasercutters. Every job is placed
+ * on the compatible Lasercutter, which would finish it first, according
+ * to the estimated durations of the jobs already placed on it.
+ * 
+ * The placement, the optional JobPreparer and the generation of the
+ * data (LaserCutter.prepareJob) run on a pool of worker threads.
+ * Every Lasercutter has its own thread, which only sends the prepared
+ * jobs placed on it (LaserCutter.sendPreparedJob), one after another.
+ * Drivers, which do not override prepareJob, still generate their data
+ * while sending it. The dispatcher works on clones of the added
+ * Lasercutters, so the originals can still be configured by the
+ * application.
+ * 
+ * The number of submitted but not yet sent jobs is limited, so
+ * submit blocks if all Lasercutters are busy.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class JobDispatcher
+{
+
+  /**
+   * Prepares a job for the Lasercutter it was placed on,
+   * e.g. optimizes its vector part.
+   */
+  public interface JobPreparer
+  {
+
+    /**
+     * Returns the job, which is sent to the given Lasercutter instead
+     * of the submitted one. It is called on the worker pool.
+     */
+    LaserJob prepare(LaserJob job, LaserCutter cutter) throws Exception;
+  }
+
+  private class Machine
+  {
+
+    private final LaserCutter original;
+    private final LaserCutter cutter;
+    private final ExecutorService transmitter;
+    //all values are guarded by the Machine
+    private double backlog = 0;
+    private int pending = 0;
+    private int finished = 0;
+    private long busyNanos = 0;
+    private long runningSince = 0;
+    private int runningDuration = 0;
+
+    Machine(LaserCutter original)
+    {
+      this.original = original;
+      this.cutter = original.clone();
+      this.transmitter = Executors.newSingleThreadExecutor(threads);
+    }
+
+    /**
+     * Returns the estimated seconds until all placed jobs are sent
+     */
+    synchronized double getBacklog()
+    {
+      double result = backlog;
+      if (runningSince != 0)
+      {
+        result -= Math.min(runningDuration, (System.nanoTime() - runningSince) / 1e9);
+      }
+      return result;
+    }
+
+    synchronized long getBusyNanos()
+    {
+      long result = busyNanos;
+      if (runningSince != 0)
+      {
+        result += System.nanoTime() - runningSince;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Runs the sendPreparedJob task of one job on the thread of its Lasercutter,
+   * closes the prepared job and keeps track of the backlog and the busy time
+   */
+  private class Transmit implements Executor
+  {
+
+    private final Machine machine;
+    private final int duration;
+    private final Dispatch dispatch;
+
+    Transmit(Machine machine, int duration, Dispatch dispatch)
+    {
+      this.machine = machine;
+      this.duration = duration;
+      this.dispatch = dispatch;
+    }
+
+    public void execute(final Runnable task)
+    {
+      machine.transmitter.execute(new Runnable()
+      {
+
+        public void run()
+        {
+          synchronized (machine)
+          {
+            machine.runningSince = System.nanoTime();
+            machine.runningDuration = duration;
+          }
+          try
+          {
+            task.run();
+          }
+          finally
+          {
+            dispatch.data.close();
+            synchronized (machine)
+            {
+              machine.busyNanos += System.nanoTime() - machine.runningSince;
+              machine.runningSince = 0;
+              machine.backlog -= duration;
+              machine.pending--;
+              machine.finished++;
+            }
+            capacity.release();
+            dispatch.accounted.countDown();
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * The Future of a submitted job. It is completed, when the job was sent
+   * to the Lasercutter it was placed on, which is its result.
+   */
+  private class Dispatch implements Future<LaserCutter>, Runnable
+  {
+
+    private final LaserJob job;
+    private final ProgressListener pl;
+    private final CountDownLatch placed = new CountDownLatch(1);
+    //counted down, when the job is no longer counted as queued
+    private final CountDownLatch accounted = new CountDownLatch(1);
+    private volatile Machine machine = null;
+    private volatile PreparedJob data = null;
+    private volatile Future<Void> sending = null;
+    private volatile Exception failure = null;
+    private volatile boolean cancelled = false;
+
+    Dispatch(LaserJob job, ProgressListener pl)
+    {
+      this.job = job;
+      this.pl = pl;
+    }
+
+    public void run()
+    {
+      try
+      {
+        if (cancelled)
+        {
+          capacity.release();
+        }
+        else
+        {
+          place();
+        }
+      }
+      catch (Exception e)
+      {
+        failure = e;
+        capacity.release();
+      }
+      finally
+      {
+        placed.countDown();
+      }
+    }
+
+    private void place() throws Exception
+    {
+      //the estimates may take a while, so they are computed without a lock
+      List<Machine> compatible = new ArrayList<Machine>();
+      List<Integer> durations = new ArrayList<Integer>();
+      for (Machine m : getMachines())
+      {
+        if (m.cutter.isCompatible(job))
+        {
+          compatible.add(m);
+          durations.add(m.cutter.estimateJobDuration(job));
+        }
+      }
+      if (compatible.isEmpty())
+      {
+        throw new IllegalJobException("No Lasercutter supports the job " + job.getTitle());
+      }
+      Machine best = null;
+      int duration = 0;
+      //choosing and reserving the Lasercutter is one step, so concurrent
+      //workers see the backlog of each other's jobs
+      synchronized (placement)
+      {
+        double end = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < compatible.size(); i++)
+        {
+          Machine m = compatible.get(i);
+          int d = durations.get(i);
+          if (m.getBacklog() + d < end)
+          {
+            best = m;
+            duration = d;
+            end = m.getBacklog() + d;
+          }
+        }
+        synchronized (best)
+        {
+          best.backlog += duration;
+          best.pending++;
+        }
+      }
+      try
+      {
+        LaserJob prepared = preparer != null ? preparer.prepare(job, best.cutter) : job;
+        //generated by another clone, since the Lasercutter may be
+        //sending a job meanwhile
+        data = best.cutter.clone().prepareJob(prepared, pl);
+        synchronized (best)
+        {
+          //the executor of the clone is only used for this call
+          best.cutter.setExecutor(new Transmit(best, duration, this));
+          machine = best;
+          sending = best.cutter.sendPreparedJobAsync(data, pl);
+        }
+      }
+      catch (Exception e)
+      {
+        //e.g. a RejectedExecutionException after shutdown
+        if (data != null && sending == null)
+        {
+          data.close();
+        }
+        synchronized (best)
+        {
+          best.backlog -= duration;
+          best.pending--;
+        }
+        throw e;
+      }
+      if (cancelled)
+      {
+        sending.cancel(true);
+      }
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+      if (isDone())
+      {
+        return false;
+      }
+      cancelled = true;
+      Future<Void> s = sending;
+      if (s != null)
+      {
+        return s.cancel(mayInterruptIfRunning);
+      }
+      placed.countDown();
+      return true;
+    }
+
+    public boolean isCancelled()
+    {
+      Future<Void> s = sending;
+      return s != null ? s.isCancelled() : cancelled;
+    }
+
+    public boolean isDone()
+    {
+      Future<Void> s = sending;
+      return s != null ? s.isDone() : (cancelled || failure != null);
+    }
+
+    public LaserCutter get() throws InterruptedException, ExecutionException
+    {
+      placed.await();
+      if (failure != null)
+      {
+        throw new ExecutionException(failure);
+      }
+      Future<Void> s = sending;
+      if (s == null)
+      {
+        throw new CancellationException();
+      }
+      s.get();
+      accounted.await();
+      return machine.original;
+    }
+
+    public LaserCutter get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      if (!placed.await(timeout, unit))
+      {
+        throw new TimeoutException();
+      }
+      if (failure != null)
+      {
+        throw new ExecutionException(failure);
+      }
+      Future<Void> s = sending;
+      if (s == null)
+      {
+        throw new CancellationException();
+      }
+      s.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      if (!accounted.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+      {
+        throw new TimeoutException();
+      }
+      return machine.original;
+    }
+  }
+
+  private final ThreadFactory threads = new ThreadFactory()
+  {
+
+    public Thread newThread(Runnable r)
+    {
+      Thread result = new Thread(r, "JobDispatcher");
+      result.setDaemon(true);
+      return result;
+    }
+  };
+  private final List<Machine> machines = new ArrayList<Machine>();
+  //guards choosing a Lasercutter together with reserving its backlog
+  private final Object placement = new Object();
+  private final int queueCapacity;
+  private final Semaphore capacity;
+  private final ExecutorService workers;
+  private final long startNanos = System.nanoTime();
+  private volatile JobPreparer preparer = null;
+
+  /**
+   * @param queueCapacity the maximum number of submitted, but not
+   * yet sent jobs
+   * @param workerThreads the number of threads placing and preparing jobs
+   */
+  public JobDispatcher(int queueCapacity, int workerThreads)
+  {
+    this.queueCapacity = queueCapacity;
+    this.capacity = new Semaphore(queueCapacity, true);
+    this.workers = Executors.newFixedThreadPool(workerThreads, threads);
+  }
+
+  public JobDispatcher()
+  {
+    this(64, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Get the value of preparer
+   *
+   * @return the value of preparer
+   */
+  public JobPreparer getPreparer()
+  {
+    return preparer;
+  }
+
+  /**
+   * Set the value of preparer
+   *
+   * @param preparer new value of preparer
+   */
+  public void setPreparer(JobPreparer preparer)
+  {
+    this.preparer = preparer;
+  }
+
+  /**
+   * Adds a Lasercutter. The dispatcher sends the jobs through a clone,
+   * changes of the given instance do not affect it
+   * @param cutter 
+   */
+  public synchronized void addCutter(LaserCutter cutter)
+  {
+    machines.add(new Machine(cutter));
+  }
+
+  /**
+   * Returns the added Lasercutters
+   * @return 
+   */
+  public synchronized List<LaserCutter> getCutters()
+  {
+    List<LaserCutter> result = new ArrayList<LaserCutter>();
+    for (Machine m : machines)
+    {
+      result.add(m.original);
+    }
+    return result;
+  }
+
+  private synchronized List<Machine> getMachines()
+  {
+    return new ArrayList<Machine>(machines);
+  }
+
+  private synchronized Machine getMachine(LaserCutter cutter)
+  {
+    for (Machine m : machines)
+    {
+      if (m.original == cutter)
+      {
+        return m;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Lasercutter " + cutter.getModelName());
+  }
+
+  /**
+   * Submits a job. If the queue is full, it blocks until one of
+   * the queued jobs is sent. The returned Future returns the Lasercutter
+   * the job was sent to. If no Lasercutter supports the job,
+   * it throws an ExecutionException caused by an IllegalJobException.
+   * 
+   * @param job
+   * @param pl
+   * @return
+   * @throws InterruptedException 
+   */
+  public Future<LaserCutter> submit(LaserJob job, ProgressListener pl) throws InterruptedException
+  {
+    capacity.acquire();
+    Dispatch result = new Dispatch(job, pl);
+    workers.execute(result);
+    return result;
+  }
+
+  /**
+   * Submits a job like submit, but returns null
+   * instead of blocking, if the queue is full
+   * 
+   * @param job
+   * @param pl
+   * @return 
+   */
+  public Future<LaserCutter> offer(LaserJob job, ProgressListener pl)
+  {
+    if (!capacity.tryAcquire())
+    {
+      return null;
+    }
+    Dispatch result = new Dispatch(job, pl);
+    workers.execute(result);
+    return result;
+  }
+
+  /**
+   * Returns the number of submitted jobs, which are not sent yet
+   * @return 
+   */
+  public int getQueuedJobs()
+  {
+    return queueCapacity - capacity.availablePermits();
+  }
+
+  /**
+   * Returns the number of jobs placed on the Lasercutter,
+   * which are not sent yet
+   * @param cutter
+   * @return 
+   */
+  public int getPendingJobs(LaserCutter cutter)
+  {
+    Machine m = getMachine(cutter);
+    synchronized (m)
+    {
+      return m.pending;
+    }
+  }
+
+  /**
+   * Returns the number of jobs the Lasercutter has finished
+   * (sent, failed or cancelled)
+   * @param cutter
+   * @return 
+   */
+  public int getFinishedJobs(LaserCutter cutter)
+  {
+    Machine m = getMachine(cutter);
+    synchronized (m)
+    {
+      return m.finished;
+    }
+  }
+
+  /**
+   * Returns the estimated duration in seconds of the jobs placed on the
+   * Lasercutter, which are not sent yet
+   * @param cutter
+   * @return 
+   */
+  public double getBacklog(LaserCutter cutter)
+  {
+    return getMachine(cutter).getBacklog();
+  }
+
+  /**
+   * Returns the fraction of time (0 to 1) the Lasercutter has been
+   * sending jobs since the dispatcher was created
+   * @param cutter
+   * @return 
+   */
+  public double getUtilisation(LaserCutter cutter)
+  {
+    long elapsed = System.nanoTime() - startNanos;
+    return elapsed > 0 ? Math.min(1, (double) getMachine(cutter).getBusyNanos() / elapsed) : 0;
+  }
+
+  /**
+   * Stops all threads after the jobs already placed are sent.
+   * Jobs, which are not placed yet, fail
+   */
+  public void shutdown()
+  {
+    workers.shutdown();
+    for (Machine m : getMachines())
+    {
+      m.transmitter.shutdown();
+    }
+  }
+}
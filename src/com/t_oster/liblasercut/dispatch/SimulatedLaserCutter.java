@@ -0,0 +1,181 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.dispatch;
+
+import com.t_oster.liblasercut.IllegalJobException;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.ProgressListener;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for a real Lasercutter. It has the resolutions, bed size,
+ * settings and duration estimation of the given model, but instead of
+ * sending a job it just waits for its estimated duration multiplied
+ * by the time scale. This allows load tests of a JobDispatcher
+ * without any hardware.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class SimulatedLaserCutter extends LaserCutter
+{
+
+  private LaserCutter model;
+  private double timeScale;
+  //shared with the clones, which send the jobs of a JobDispatcher
+  private final AtomicInteger sentJobs;
+
+  /**
+   * @param model the Lasercutter to simulate
+   * @param timeScale the factor of the simulated to the estimated
+   * duration, e.g. 0.001 to simulate a 100s job in 100ms
+   */
+  public SimulatedLaserCutter(LaserCutter model, double timeScale)
+  {
+    this(model, timeScale, new AtomicInteger(0));
+  }
+
+  private SimulatedLaserCutter(LaserCutter model, double timeScale, AtomicInteger sentJobs)
+  {
+    this.model = model;
+    this.timeScale = timeScale;
+    this.sentJobs = sentJobs;
+  }
+
+  /**
+   * Get the value of timeScale
+   *
+   * @return the value of timeScale
+   */
+  public double getTimeScale()
+  {
+    return timeScale;
+  }
+
+  /**
+   * Set the value of timeScale
+   *
+   * @param timeScale new value of timeScale
+   */
+  public void setTimeScale(double timeScale)
+  {
+    this.timeScale = timeScale;
+  }
+
+  /**
+   * Returns the number of jobs completely sent by this
+   * SimulatedLaserCutter and all of its clones
+   * @return 
+   */
+  public int getSentJobs()
+  {
+    return sentJobs.get();
+  }
+
+  @Override
+  protected void checkJob(LaserJob job) throws IllegalJobException
+  {
+    if (!model.isCompatible(job))
+    {
+      throw new IllegalJobException("The job is not supported by the " + model.getModelName());
+    }
+  }
+
+  @Override
+  public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    checkJob(job);
+    pl.taskChanged(this, "sending");
+    long duration = (long) (model.estimateJobDuration(job) * 1000 * timeScale);
+    long start = System.currentTimeMillis();
+    for (long elapsed = 0; elapsed < duration; elapsed = System.currentTimeMillis() - start)
+    {
+      try
+      {
+        Thread.sleep(Math.min(100, duration - elapsed));
+      }
+      catch (InterruptedException e)
+      {
+        throw new InterruptedIOException("Job cancelled");
+      }
+      pl.progressChanged(this, (int) (100 * Math.min(duration, System.currentTimeMillis() - start) / duration));
+    }
+    sentJobs.incrementAndGet();
+    pl.taskChanged(this, "sent.");
+    pl.progressChanged(this, 100);
+  }
+
+  @Override
+  public List<Integer> getResolutions()
+  {
+    return model.getResolutions();
+  }
+
+  @Override
+  public double getBedWidth()
+  {
+    return model.getBedWidth();
+  }
+
+  @Override
+  public double getBedHeight()
+  {
+    return model.getBedHeight();
+  }
+
+  @Override
+  public List<String> getSettingAttributes()
+  {
+    return model.getSettingAttributes();
+  }
+
+  @Override
+  public String getSettingValue(String attribute)
+  {
+    return model.getSettingValue(attribute);
+  }
+
+  @Override
+  public void setSettingValue(String attribute, String value)
+  {
+    model.setSettingValue(attribute, value);
+  }
+
+  @Override
+  public int estimateJobDuration(LaserJob job)
+  {
+    return model.estimateJobDuration(job);
+  }
+
+  @Override
+  public String getModelName()
+  {
+    return "Simulated " + model.getModelName();
+  }
+
+  @Override
+  public SimulatedLaserCutter clone()
+  {
+    return new SimulatedLaserCutter(model.clone(), timeScale, sentJobs);
+  }
+}
@@ -18,6 +18,9 @@
  **/
 package com.t_oster.liblasercut.dithering;
 
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
@@ -27,28 +30,45 @@ public class Average extends  DitheringAlgorithm
   
   protected void doDithering()
   {
-    long lumTotal = 0;
-    int pixelcount = 0;
-    int width = src.getWidth();
+    final int width = src.getWidth();
     int height = src.getHeight();
+    final AtomicLong lumTotal = new AtomicLong(0);
 
-    for (int y = 0; y < height; y++)
+    processStripes(new StripeWorker()
     {
-      for (int x = 0; x < width; x++)
+      public void process(int stripe, int fromY, int toY)
       {
-        lumTotal += src.getGreyScale(x, y);
+        int[] row = new int[width];
+        long sum = 0;
+        for (int y = fromY; y < toY; y++)
+        {
+          AbstractGreyscaleRaster.getRow(src, y, row);
+          for (int x = 0; x < width; x++)
+          {
+            sum += row[x];
+          }
+          rowDone();
+        }
+        lumTotal.addAndGet(sum);
       }
-      setProgress((100 * pixelcount++) / (2 * height));
-    }
+    }, 0, 50);
 
-    int thresh = (int) (lumTotal / height / width);
-    for (int y = 0; y < height; y++)
+    final int thresh = (int) (lumTotal.get() / height / width);
+    processStripes(new StripeWorker()
     {
-      for (int x = 0; x < width; x++)
+      public void process(int stripe, int fromY, int toY)
       {
-        this.setBlack(x, y, src.getGreyScale(x, y) < thresh);
+        int[] row = new int[width];
+        for (int y = fromY; y < toY; y++)
+        {
+          AbstractGreyscaleRaster.getRow(src, y, row);
+          for (int x = 0; x < width; x++)
+          {
+            setBlack(x, y, row[x] < thresh);
+          }
+          rowDone();
+        }
       }
-      setProgress((100 * pixelcount++) / (2 * height));
-    }
+    }, 50, 100);
   }
 }
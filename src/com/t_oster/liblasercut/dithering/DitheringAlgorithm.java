@@ -21,6 +21,16 @@ package com.t_oster.liblasercut.dithering;
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
 import com.t_oster.liblasercut.TimeIntensiveOperation;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -29,8 +39,209 @@ import com.t_oster.liblasercut.TimeIntensiveOperation;
 public abstract class DitheringAlgorithm extends TimeIntensiveOperation
 {
   
+  /**
+   * The number of rows of one stripe. It does not depend on the number
+   * of threads, so the result of an algorithm does not either
+   */
+  protected static final int STRIPE_HEIGHT = 64;
+
+  /**
+   * A part of a dithering algorithm, which processes the
+   * rows [fromY, toY) independently of all other rows.
+   * It has to call rowDone() after every processed row
+   */
+  protected interface StripeWorker
+  {
+
+    void process(int stripe, int fromY, int toY);
+  }
+
   protected GreyscaleRaster src;
   protected BlackWhiteRaster target;
+  private int threadCount = 1;
+  private Executor executor = null;
+  private AtomicInteger rowsDone;
+  private int rowsTotal;
+  private int progressStart;
+  private int progressRange;
+
+  /**
+   * Get the value of threadCount
+   *
+   * @return the value of threadCount
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+  /**
+   * Set the number of threads algorithms which support it use
+   * to dither stripes of the image in parallel. The GreyscaleRaster has
+   * to support concurrent access to different rows if this is bigger than 1.
+   * The default is 1, so the GreyscaleRaster is only accessed by the
+   * calling thread.
+   *
+   * @param threadCount new value of threadCount
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = Math.max(1, threadCount);
+  }
+
+  /**
+   * Get the value of executor
+   *
+   * @return the value of executor
+   */
+  public Executor getExecutor()
+  {
+    return executor;
+  }
+
+  /**
+   * Set the Executor the threads run on if threadCount is bigger than 1,
+   * e.g. a pool shared by several algorithms. null means a thread pool
+   * is created for every dithering
+   *
+   * @param executor new value of executor
+   */
+  public void setExecutor(Executor executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * Processes all rows of the source image with the given worker.
+   * The image is split into horizontal stripes of STRIPE_HEIGHT rows,
+   * which are processed in parallel if threadCount is bigger than 1.
+   * The progress of all stripes is merged and reported from progressStart
+   * to progressEnd.
+   * 
+   * @param worker
+   * @param progressStart
+   * @param progressEnd 
+   */
+  protected void processStripes(final StripeWorker worker, int progressStart, int progressEnd)
+  {
+    int height = src.getHeight();
+    int stripes = (height + STRIPE_HEIGHT - 1) / STRIPE_HEIGHT;
+    startProgress(progressStart, progressEnd);
+    if (threadCount == 1 || stripes <= 1)
+    {
+      for (int stripe = 0; stripe < stripes; stripe++)
+      {
+        worker.process(stripe, stripe * STRIPE_HEIGHT, Math.min(height, (stripe + 1) * STRIPE_HEIGHT));
+      }
+      return;
+    }
+    List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+    for (int stripe = 0; stripe < stripes; stripe++)
+    {
+      final int s = stripe;
+      final int fromY = stripe * STRIPE_HEIGHT;
+      final int toY = Math.min(height, (stripe + 1) * STRIPE_HEIGHT);
+      tasks.add(new Callable<Object>()
+      {
+        public Object call()
+        {
+          worker.process(s, fromY, toY);
+          return null;
+        }
+      });
+    }
+    runTasks(tasks);
+  }
+
+  /**
+   * Runs the given tasks on the Executor or at most threadCount new
+   * threads and waits until all of them are finished. A RuntimeException
+   * thrown by a task is rethrown. The tasks must not wait for tasks
+   * submitted after them, since the Executor may run fewer tasks at once.
+   * 
+   * @param tasks 
+   */
+  protected void runTasks(List<Callable<Object>> tasks)
+  {
+    ExecutorService pool = null;
+    Executor target = executor;
+    if (target == null)
+    {
+      pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, tasks.size())));
+      target = pool;
+    }
+    List<FutureTask<Object>> results = new LinkedList<FutureTask<Object>>();
+    try
+    {
+      for (Callable<Object> task : tasks)
+      {
+        FutureTask<Object> f = new FutureTask<Object>(task);
+        results.add(f);
+        target.execute(f);
+      }
+      for (Future<Object> f : results)
+      {
+        f.get();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Dithering was interrupted", e);
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    finally
+    {
+      if (pool != null)
+      {
+        pool.shutdownNow();
+      }
+      else
+      {
+        for (Future<Object> f : results)
+        {
+          f.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Resets the row counter used by rowDone(). The progress
+   * will be reported from progressStart to progressEnd
+   * when all rows of the source image are done.
+   * 
+   * @param progressStart
+   * @param progressEnd 
+   */
+  protected void startProgress(int progressStart, int progressEnd)
+  {
+    this.rowsDone = new AtomicInteger(0);
+    this.rowsTotal = Math.max(1, src.getHeight());
+    this.progressStart = progressStart;
+    this.progressRange = progressEnd - progressStart;
+  }
+
+  /**
+   * Has to be called by workers after every processed row.
+   * It may be called from any thread.
+   */
+  protected void rowDone()
+  {
+    int done = rowsDone.incrementAndGet();
+    int progress = progressStart + (int) ((long) progressRange * done / rowsTotal);
+    synchronized (this)
+    {
+      setProgress(progress);
+    }
+  }
 
   protected void setBlack(int x, int y, boolean black)
   {
@@ -18,61 +18,151 @@
  **/
 package com.t_oster.liblasercut.dithering;
 
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 /**
+ * Floyd-Steinberg error diffusion.
+ * 
+ * A pixel only depends on its left neighbour and the three pixels above
+ * it, so if more than one thread is used, the rows are processed as a
+ * wavefront: Row y+1 may dither pixel x as soon as row y is done with
+ * pixel x+1. Every row publishes how many pixels it has finished in a
+ * lock free counter, which is polled by the row below. The result is
+ * exactly the same as with one thread.
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public class FloydSteinberg extends DitheringAlgorithm
 {
 
+  /**
+   * Number of pixels after which a row publishes its progress
+   * to the row below
+   */
+  private static final int PUBLISH_INTERVAL = 32;
+
   protected void doDithering()
   {
-    int pixelcount = 0;
+    final int width = src.getWidth();
+    final int height = src.getHeight();
+    if (width == 0 || height == 0)
+    {
+      return;
+    }
+    final int threads = Math.min(getThreadCount(), height);
     /**
      * We have to copy the input image, because we will
      * alter the pixels during dither process and don't want
-     * to destroy the input image
+     * to destroy the input image.
+     * Row y uses lines[y % lines.length]. The threads take the rows
+     * in order, so at most threads rows are unfinished and when a thread
+     * starts row y, the row which used the same line before is done.
+     * A row only waits for rows taken before it, so the threads may
+     * run on an Executor, which runs fewer tasks at once.
      */
-    int[][] input = new int[src.getWidth()][2];
-    for (int x = 0; x < src.getWidth(); x++)
+    final int[][] lines = new int[threads + 1][width];
+    final AtomicIntegerArray done = new AtomicIntegerArray(height);
+    final AtomicBoolean aborted = new AtomicBoolean(false);
+    final AtomicInteger nextRow = new AtomicInteger(0);
+    AbstractGreyscaleRaster.getRow(src, 0, lines[0]);
+    startProgress(0, 100);
+    if (threads == 1)
     {
-      input[x][1] = src.getGreyScale(x, 0);
+      for (int y = 0; y < height; y++)
+      {
+        ditherRow(y, lines, done, aborted);
+      }
+      return;
     }
-    for (int y = 0; y < src.getHeight(); y++)
+    List<Callable<Object>> tasks = new LinkedList<Callable<Object>>();
+    for (int t = 0; t < threads; t++)
     {
-      // copy lower line to upper line
-      // and read in next line from picture
-      for (int x = 0; x < input.length; x++)
+      tasks.add(new Callable<Object>()
       {
-        input[x][0] = input[x][1];
-        if (y + 1 < src.getHeight())
+        public Object call()
         {
-          input[x][1] = (src.getGreyScale(x, y + 1));
+          try
+          {
+            for (int y = nextRow.getAndIncrement(); y < height; y = nextRow.getAndIncrement())
+            {
+              ditherRow(y, lines, done, aborted);
+            }
+          }
+          catch (RuntimeException e)
+          {
+            aborted.set(true);
+            throw e;
+          }
+          return null;
         }
-      }
+      });
+    }
+    runTasks(tasks);
+  }
 
-      for (int x = 0; x < input.length; x++)
+  private void ditherRow(int y, int[][] lines, AtomicIntegerArray done, AtomicBoolean aborted)
+  {
+    int width = src.getWidth();
+    int height = src.getHeight();
+    int[] line = lines[y % lines.length];
+    int[] next = null;
+    if (y + 1 < height)
+    {
+      // read in next line from picture
+      next = lines[(y + 1) % lines.length];
+      AbstractGreyscaleRaster.getRow(src, y + 1, next);
+    }
+    int above = y == 0 ? width : done.get(y - 1);
+    int carry = 0;
+    for (int x = 0; x < width; x++)
+    {
+      if (above < width && above < x + 2)
+      {
+        above = waitForRow(y - 1, Math.min(width, x + 2), done, aborted);
+      }
+      int value = line[x] + carry;
+      this.setBlack(x, y, value <= 127);
+      int error = value - ((value <= 127) ? 0 : 255);
+      carry = 7 * error / 16;
+      if (next != null)
       {
-        this.setBlack(x, y, input[x][0] <= 127);
-        int error = input[x][0] - ((input[x][0] <= 127) ? 0 : 255);
-        if (x + 1 < input.length)
+        if (x + 1 < width)
         {
-          input[x + 1][0] = (input[x + 1][0] + 7 * error / 16);
-          if (y + 1 < src.getHeight())
-          {
-            input[x + 1][1] = (input[x + 1][1] + 1 * error / 16);
-          }
+          next[x + 1] += 1 * error / 16;
         }
-        if (y + 1 < src.getHeight())
+        next[x] += 5 * error / 16;
+        if (x > 0)
         {
-          input[x][1] = (input[x][1] + 5 * error / 16);
-          if (x > 0)
-          {
-            input[x - 1][1] = (input[x - 1][1] + 3 * error / 16);
-          }
+          next[x - 1] += 3 * error / 16;
         }
       }
-      setProgress((100 * pixelcount++) / (src.getHeight()));
+      if ((x + 1) % PUBLISH_INTERVAL == 0)
+      {
+        done.set(y, x + 1);
+      }
+    }
+    done.set(y, width);
+    rowDone();
+  }
+
+  private int waitForRow(int y, int pixels, AtomicIntegerArray done, AtomicBoolean aborted)
+  {
+    int result = done.get(y);
+    while (result < pixels)
+    {
+      if (aborted.get())
+      {
+        throw new IllegalStateException("Dithering of another row failed");
+      }
+      Thread.yield();
+      result = done.get(y);
     }
+    return result;
   }
 }
@@ -18,6 +18,8 @@
  **/
 package com.t_oster.liblasercut.dithering;
 
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
+
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
@@ -25,73 +27,42 @@ package com.t_oster.liblasercut.dithering;
 public class Ordered extends DitheringAlgorithm
 {
 
-  protected void doDithering()
+  private static final int nPatWid = 4;
+  private static final int[][] filter =
   {
-    int width = src.getWidth();
-    int height = src.getHeight();
-    int nPatWid = 4;
-    int[][] filter =
     {
-      {
-        16, 144, 48, 176
-      },
-      {
-        208, 80, 240, 112
-      },
-      {
-        64, 192, 32, 160
-      },
-      {
-        256, 128, 224, 96
-      },
-    };
-
-    int x = 0;
-    int y = 0;
-    int pixelcount = 0;
-
-    for (y = 0; y < (height - nPatWid); y = y + nPatWid)
+      16, 144, 48, 176
+    },
     {
+      208, 80, 240, 112
+    },
+    {
+      64, 192, 32, 160
+    },
+    {
+      256, 128, 224, 96
+    },
+  };
 
-      for (x = 0; x < (width - nPatWid); x = x + nPatWid)
-      {
-
-        for (int xdelta = 0; xdelta < nPatWid; xdelta++)
-        {
-          for (int ydelta = 0; ydelta < nPatWid; ydelta++)
-          {
-            this.setBlack(x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
-        }
-      }
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
-      {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
-        {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
-          {
-            this.setBlack(x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
-        }
-      }
-      setProgress((100 * pixelcount++) / (height));
-    }
-
-    // y is at max; loop through x
-    for (x = 0; x < (width); x = x + nPatWid)
+  protected void doDithering()
+  {
+    final int width = src.getWidth();
+    processStripes(new StripeWorker()
     {
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
+      public void process(int stripe, int fromY, int toY)
       {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
+        int[] row = new int[width];
+        for (int y = fromY; y < toY; y++)
         {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
+          AbstractGreyscaleRaster.getRow(src, y, row);
+          int ydelta = y % nPatWid;
+          for (int x = 0; x < width; x++)
           {
-            this.setBlack(x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
+            setBlack(x, y, row[x] < filter[x % nPatWid][ydelta]);
           }
+          rowDone();
         }
       }
-    }
+    }, 0, 100);
   }
 }
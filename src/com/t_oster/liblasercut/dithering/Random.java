@@ -18,6 +18,8 @@
  **/
 package com.t_oster.liblasercut.dithering;
 
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
+
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
@@ -25,20 +27,49 @@ package com.t_oster.liblasercut.dithering;
 public class Random extends DitheringAlgorithm
 {
 
-  protected void doDithering()
+  private long seed = new java.util.Random().nextLong();
+
+  /**
+   * Get the value of seed
+   *
+   * @return the value of seed
+   */
+  public long getSeed()
   {
-    int width = src.getWidth();
-    int height = src.getHeight();
-    int pixelcount = 0;
-    java.util.Random r = new java.util.Random();
+    return seed;
+  }
 
-    for (int y = 0; y < height; y++)
+  /**
+   * Set the value of seed. Every stripe of the image uses its
+   * own random generator, which is seeded with seed + stripe number,
+   * so the same seed always yields the same result.
+   *
+   * @param seed new value of seed
+   */
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  protected void doDithering()
+  {
+    final int width = src.getWidth();
+    processStripes(new StripeWorker()
     {
-      for (int x = 0; x < width; x++)
+      public void process(int stripe, int fromY, int toY)
       {
-        this.setBlack(x, y, src.getGreyScale(x, y) < r.nextInt(256));
+        int[] row = new int[width];
+        java.util.Random r = new java.util.Random(seed + stripe);
+        for (int y = fromY; y < toY; y++)
+        {
+          AbstractGreyscaleRaster.getRow(src, y, row);
+          for (int x = 0; x < width; x++)
+          {
+            setBlack(x, y, row[x] < r.nextInt(256));
+          }
+          rowDone();
+        }
       }
-      setProgress((100 * pixelcount++) / (height));
-    }
+    }, 0, 100);
   }
 }
@@ -0,0 +1,229 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replaces runs of lineto points which lie on a circular arc by a single
+ * arc for drivers which support arcs (G2/G3). The points are buffered
+ * per polyline and written to the Target on flush, so flush has to be
+ * called before anything else is written to the output.
+ * 
+ * An arc replaces at least MIN_SEGMENTS lines. All its points have to
+ * lie within the tolerance of the circle and the arc may not bulge more
+ * than the tolerance over any of the lines it replaces.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class ArcFitter
+{
+
+  interface Target
+  {
+
+    void lineto(int x, int y) throws IOException;
+
+    /**
+     * Cuts an arc from the current position to (x, y) around the center
+     * (current position + (i, j)). counterClockwise refers to the pixel
+     * coordinates, i.e. turning from the x axis towards the y axis.
+     */
+    void arcto(int x, int y, double i, double j, boolean counterClockwise) throws IOException;
+  }
+  private static final int MIN_SEGMENTS = 3;
+  private static final int MAX_POINTS = 4096;
+  private static final double MAX_RADIUS = 1e6;
+  private final Target target;
+  private final double tolerance;
+  private int[] xs = new int[64];
+  private int[] ys = new int[64];
+  //number of buffered points, the first one is the current position
+  private int count = 0;
+  //the circle found by the last successful call of fits
+  private double centerX;
+  private double centerY;
+  private boolean counterClockwise;
+
+  /**
+   * @param target the receiver of the lines and arcs
+   * @param tolerance the tolerance in pixels
+   */
+  ArcFitter(Target target, double tolerance)
+  {
+    this.target = target;
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Flushes the buffered lines and starts a new polyline
+   * at the given position. The move itself is not written.
+   */
+  void moveto(int x, int y) throws IOException
+  {
+    flush();
+    xs[0] = x;
+    ys[0] = y;
+    count = 1;
+  }
+
+  void lineto(int x, int y) throws IOException
+  {
+    if (count == 0)
+    {
+      //the current position is unknown, so nothing can be fitted
+      target.lineto(x, y);
+      xs[0] = x;
+      ys[0] = y;
+      count = 1;
+      return;
+    }
+    if (count == xs.length)
+    {
+      xs = Arrays.copyOf(xs, count * 2);
+      ys = Arrays.copyOf(ys, count * 2);
+    }
+    xs[count] = x;
+    ys[count] = y;
+    count++;
+    if (count == MAX_POINTS)
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Writes all buffered lines to the target. The polyline
+   * continues at the last point.
+   */
+  void flush() throws IOException
+  {
+    int i = 0;
+    while (i < count - 1)
+    {
+      int end = i + MIN_SEGMENTS;
+      if (end < count && fits(i, end))
+      {
+        double cx = centerX;
+        double cy = centerY;
+        boolean ccw = counterClockwise;
+        while (end + 1 < count && fits(i, end + 1))
+        {
+          end++;
+          cx = centerX;
+          cy = centerY;
+          ccw = counterClockwise;
+        }
+        target.arcto(xs[end], ys[end], cx - xs[i], cy - ys[i], ccw);
+        i = end;
+      }
+      else
+      {
+        i++;
+        target.lineto(xs[i], ys[i]);
+      }
+    }
+    if (count > 0)
+    {
+      xs[0] = xs[count - 1];
+      ys[0] = ys[count - 1];
+      count = 1;
+    }
+  }
+
+  /**
+   * Checks if the points from..to lie on a circle through the first
+   * and the last of them. The center lies on the bisector of these two,
+   * its position on the bisector is fitted to the points in between
+   * with least squares (of the squared distances), so single rounded
+   * points do not spoil the circle.
+   */
+  private boolean fits(int from, int to)
+  {
+    //relative to the first point for precision
+    double bx = xs[to] - (double) xs[from];
+    double by = ys[to] - (double) ys[from];
+    //center = (b / 2) + t * (-by, bx)
+    double ab = 0;
+    double bb = 0;
+    for (int k = from + 1; k < to; k++)
+    {
+      double px = xs[k] - (double) xs[from];
+      double py = ys[k] - (double) ys[from];
+      double a = px * px + py * py - bx * px - by * py;
+      double b = 2 * (bx * py - by * px);
+      ab += a * b;
+      bb += b * b;
+    }
+    if (bb < 1e-9 || (bx == 0 && by == 0))
+    {
+      return false;
+    }
+    double t = ab / bb;
+    double ux = bx / 2 - t * by;
+    double uy = by / 2 + t * bx;
+    double radius = Math.sqrt(ux * ux + uy * uy);
+    if (radius > MAX_RADIUS)
+    {
+      return false;
+    }
+    ux += xs[from];
+    uy += ys[from];
+    double sweep = 0;
+    boolean ccw = false;
+    for (int k = from; k < to; k++)
+    {
+      double v1x = xs[k] - ux;
+      double v1y = ys[k] - uy;
+      double v2x = xs[k + 1] - ux;
+      double v2y = ys[k + 1] - uy;
+      if (Math.abs(Math.sqrt(v2x * v2x + v2y * v2y) - radius) > tolerance)
+      {
+        return false;
+      }
+      double angle = Math.atan2(v1x * v2y - v1y * v2x, v1x * v2x + v1y * v2y);
+      if (k == from)
+      {
+        ccw = angle > 0;
+      }
+      if (angle == 0 || (angle > 0) != ccw)
+      {
+        return false;
+      }
+      sweep += Math.abs(angle);
+      //the arc may not bulge too far over the line it replaces
+      double dx = xs[k + 1] - (double) xs[k];
+      double dy = ys[k + 1] - (double) ys[k];
+      double half2 = (dx * dx + dy * dy) / 4;
+      if (half2 > radius * radius || radius - Math.sqrt(radius * radius - half2) > tolerance)
+      {
+        return false;
+      }
+    }
+    if (sweep >= 2 * Math.PI - 1e-3)
+    {
+      return false;
+    }
+    centerX = ux;
+    centerY = uy;
+    counterClockwise = ccw;
+    return true;
+  }
+}
@@ -0,0 +1,374 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Writes ASCII commands (GCode, the LAOS simple format or PCL/HPGL)
+ * into a reusable byte buffer. Numbers are formatted as integers or fixed point
+ * values without going through a Formatter.
+ * 
+ * Pixel coordinates are converted to the output unit by printX and printY.
+ * The conversion is precomputed by setTransform as an integer fraction
+ * and offset, so every coordinate costs one multiplication and one
+ * division.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class AsciiCommandWriter
+{
+
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  static
+  {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++)
+    {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+  /**
+   * Numerator and denominator may not exceed this number of bits,
+   * so x*numerator fits in a long for all reasonable coordinates
+   */
+  private static final int MAX_FRACTION_BITS = 38;
+  private OutputStream out;
+  private byte[] buffer = new byte[8192];
+  private int count = 0;
+  private byte[] digits = new byte[20];
+  private long numerator = 1;
+  private long denominator = 1;
+  private long xOffset = 0;
+  private boolean flipX = false;
+  private boolean round = true;
+  private int decimals = 0;
+
+  public AsciiCommandWriter(OutputStream out)
+  {
+    this.out = out;
+  }
+
+  /**
+   * Sets the conversion from pixel coordinates to the output unit
+   * used by printX and printY
+   * @param dpi the resolution of the pixel coordinates
+   * @param unit the size of one output unit in mm
+   * (1 for GCode, mm per step for the LAOS simple mode)
+   * @param decimals the number of decimals printed for every coordinate
+   * @param round if true, coordinates are rounded half up, otherwise
+   * they are truncated towards zero
+   * @param flipX if true, x coordinates are mirrored at bedWidth
+   * @param bedWidth the width of the bed in mm
+   */
+  public void setTransform(double dpi, double unit, int decimals, boolean round, boolean flipX, double bedWidth)
+  {
+    if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+    {
+      throw new IllegalArgumentException("Unsupported number of decimals: " + decimals);
+    }
+    //px * 25.4 / dpi / unit * 10^decimals = px * numerator / denominator
+    BigDecimal scale = new BigDecimal("25.4").movePointRight(decimals);
+    BigDecimal divisor = BigDecimal.valueOf(dpi).multiply(BigDecimal.valueOf(unit));
+    BigInteger num = scale.unscaledValue();
+    BigInteger den = divisor.unscaledValue();
+    if (divisor.scale() > scale.scale())
+    {
+      num = num.multiply(BigInteger.TEN.pow(divisor.scale() - scale.scale()));
+    }
+    else
+    {
+      den = den.multiply(BigInteger.TEN.pow(scale.scale() - divisor.scale()));
+    }
+    if (den.signum() <= 0)
+    {
+      throw new IllegalArgumentException("Resolution and unit have to be positive");
+    }
+    BigInteger gcd = num.gcd(den);
+    num = num.divide(gcd);
+    den = den.divide(gcd);
+    //approximate fractions which are too big
+    int shift = Math.max(num.bitLength(), den.bitLength()) - MAX_FRACTION_BITS;
+    if (shift > 0)
+    {
+      num = num.shiftRight(shift);
+      den = den.shiftRight(shift).max(BigInteger.ONE);
+    }
+    this.numerator = num.longValue();
+    this.denominator = den.longValue();
+    this.xOffset = BigDecimal.valueOf(bedWidth).movePointRight(decimals).multiply(new BigDecimal(den))
+      .divide(BigDecimal.valueOf(unit), 0, RoundingMode.HALF_UP).longValue();
+    this.decimals = decimals;
+    this.round = round;
+    this.flipX = flipX;
+  }
+
+  private long convert(long value)
+  {
+    long q = value / denominator;
+    if (round)
+    {
+      long r = value % denominator;
+      if (2 * Math.abs(r) >= denominator)
+      {
+        q += value < 0 ? -1 : 1;
+      }
+    }
+    return q;
+  }
+
+  /**
+   * Prints the given x coordinate (in pixels) in the output unit
+   * @param x
+   * @throws IOException 
+   */
+  public void printX(int x) throws IOException
+  {
+    long value = x * numerator;
+    printFixed(convert(flipX ? xOffset - value : value), decimals);
+  }
+
+  /**
+   * Prints the given y coordinate (in pixels) in the output unit
+   * @param y
+   * @throws IOException 
+   */
+  public void printY(int y) throws IOException
+  {
+    printFixed(convert(y * numerator), decimals);
+  }
+
+  /**
+   * Prints the given distance along the x axis (in pixels) in the
+   * output unit. It is mirrored like the x coordinates.
+   * @param dx
+   * @throws IOException 
+   */
+  public void printOffsetX(double dx) throws IOException
+  {
+    printFixed(Math.round((flipX ? -dx : dx) * numerator / denominator), decimals);
+  }
+
+  /**
+   * Prints the given distance along the y axis (in pixels) in the
+   * output unit
+   * @param dy
+   * @throws IOException 
+   */
+  public void printOffsetY(double dy) throws IOException
+  {
+    printFixed(Math.round(dy * numerator / denominator), decimals);
+  }
+
+  /**
+   * Returns true if x coordinates are mirrored, which also
+   * changes the direction of arcs
+   * @return 
+   */
+  public boolean isFlipX()
+  {
+    return flipX;
+  }
+
+  private void ensureCapacity(int bytes) throws IOException
+  {
+    if (count + bytes > buffer.length)
+    {
+      flushBuffer();
+      if (bytes > buffer.length)
+      {
+        buffer = new byte[bytes];
+      }
+    }
+  }
+
+  private void flushBuffer() throws IOException
+  {
+    if (count > 0)
+    {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  /**
+   * Prints the given String. Like a PrintStream with US-ASCII encoding,
+   * every character which is not ASCII is replaced by '?'
+   * @param s
+   * @throws IOException 
+   */
+  public void print(String s) throws IOException
+  {
+    int length = s.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++)
+    {
+      char c = s.charAt(i);
+      if (c < 128)
+      {
+        buffer[count++] = (byte) c;
+      }
+      else
+      {
+        buffer[count++] = '?';
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+        {
+          i++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Prints the given bytes, which should be precomputed ASCII text
+   * @param ascii
+   * @throws IOException 
+   */
+  public void print(byte[] ascii) throws IOException
+  {
+    write(ascii, 0, ascii.length);
+  }
+
+  /**
+   * Writes the given bytes unchanged
+   * @param data
+   * @param offset
+   * @param length
+   * @throws IOException 
+   */
+  public void write(byte[] data, int offset, int length) throws IOException
+  {
+    if (length > buffer.length)
+    {
+      flushBuffer();
+      out.write(data, offset, length);
+      return;
+    }
+    ensureCapacity(length);
+    System.arraycopy(data, offset, buffer, count, length);
+    count += length;
+  }
+
+  public void print(char c) throws IOException
+  {
+    ensureCapacity(1);
+    buffer[count++] = (byte) c;
+  }
+
+  /**
+   * Prints the given number in decimal notation
+   * @param value
+   * @throws IOException 
+   */
+  public void print(long value) throws IOException
+  {
+    printFixed(value, 0);
+  }
+
+  /**
+   * Prints the given number with at least width characters, padded
+   * with zeroes after the sign (like the format "%0<width>d")
+   * @param value
+   * @param width
+   * @throws IOException 
+   */
+  public void print(long value, int width) throws IOException
+  {
+    ensureCapacity(21 + width);
+    if (value < 0)
+    {
+      buffer[count++] = '-';
+      value = -value;
+      width--;
+    }
+    int n = 0;
+    do
+    {
+      digits[n++] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    while (value > 0);
+    for (; width > n; width--)
+    {
+      buffer[count++] = '0';
+    }
+    while (n > 0)
+    {
+      buffer[count++] = digits[--n];
+    }
+  }
+
+  /**
+   * Prints value / 10^decimals with exactly the given number of decimals
+   * @param value
+   * @param decimals
+   * @throws IOException 
+   */
+  public void printFixed(long value, int decimals) throws IOException
+  {
+    ensureCapacity(21 + decimals);
+    if (value < 0)
+    {
+      buffer[count++] = '-';
+      value = -value;
+    }
+    long integer = value;
+    if (decimals > 0)
+    {
+      integer = value / POWERS_OF_TEN[decimals];
+      value -= integer * POWERS_OF_TEN[decimals];
+    }
+    int n = 0;
+    do
+    {
+      digits[n++] = (byte) ('0' + integer % 10);
+      integer /= 10;
+    }
+    while (integer > 0);
+    while (n > 0)
+    {
+      buffer[count++] = digits[--n];
+    }
+    if (decimals > 0)
+    {
+      buffer[count++] = '.';
+      for (int i = decimals - 1; i >= 0; i--)
+      {
+        buffer[count + i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+      count += decimals;
+    }
+  }
+
+  /**
+   * Writes the buffered bytes to the underlying stream
+   * @throws IOException 
+   */
+  public void flush() throws IOException
+  {
+    flushBuffer();
+    out.flush();
+  }
+}
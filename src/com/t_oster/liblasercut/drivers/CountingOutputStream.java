@@ -0,0 +1,88 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream which counts the bytes written to it and passes
+ * them on to the underlying stream. If the underlying stream is null,
+ * the bytes are only counted, which can be used to determine the size of
+ * generated data without keeping it in memory.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class CountingOutputStream extends FilterOutputStream
+{
+
+  private long count = 0;
+
+  public CountingOutputStream(OutputStream out)
+  {
+    super(out);
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    if (out != null)
+    {
+      out.write(b);
+    }
+    count++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    if (out != null)
+    {
+      out.write(b, off, len);
+    }
+    count += len;
+  }
+
+  @Override
+  public void flush() throws IOException
+  {
+    if (out != null)
+    {
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (out != null)
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the number of bytes written so far
+   */
+  public long getCount()
+  {
+    return count;
+  }
+}
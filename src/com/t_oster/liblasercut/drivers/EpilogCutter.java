@@ -31,10 +31,15 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -51,6 +56,7 @@ abstract class EpilogCutter extends LaserCutter
   private static final int MAXFOCUS = 500;//Maximal focus value (not mm)
   private static final double FOCUSWIDTH = 0.0252;//How much mm/unit the focus values are
   private String hostname;
+  private String localHostname = null;
   private int port = 515;
   private Socket connection;
   private InputStream in;
@@ -91,6 +97,11 @@ abstract class EpilogCutter extends LaserCutter
     waitForResponse(expected, 3);
   }
 
+  /**
+   * Blocks until the Lasercutter sends a byte and checks it.
+   * @param timeout the read timeout is timeout * timeout seconds, the
+   * maximum wait of the former polling loop
+   */
   private void waitForResponse(int expected, int timeout) throws IOException, Exception
   {
     if (SIMULATE_COMMUNICATION)
@@ -99,91 +110,147 @@ abstract class EpilogCutter extends LaserCutter
     }
     int result;
     out.flush();
-    for (int i = 0; i < timeout * 10; i++)
+    if (connection != null)
+    {
+      connection.setSoTimeout(timeout * timeout * 1000);
+    }
+    try
+    {
+      result = in.read();
+    }
+    catch (SocketTimeoutException e)
+    {
+      throw new SocketTimeoutException("Timeout");
+    }
+    if (result == -1)
+    {
+      throw new IOException("End of Stream");
+    }
+    if (result != expected)
     {
-      if (in.available() > 0)
+      throw new Exception("unexpected Response: " + result);
+    }
+  }
+
+  /**
+   * Returns the name of the local host, which is sent with every job.
+   * It is resolved only once, because the lookup may block for seconds
+   * on hosts with a slow reverse DNS
+   */
+  private String getLocalHostname()
+  {
+    if (localHostname == null)
+    {
+      try
       {
-        result = in.read();
-        if (result == -1)
-        {
-          throw new IOException("End of Stream");
-        }
-        if (result != expected)
-        {
-          throw new Exception("unexpected Response: " + result);
-        }
-        return;
+        localHostname = java.net.InetAddress.getLocalHost().getHostName();
       }
-      else
+      catch (UnknownHostException e)
       {
-        Thread.sleep(100 * timeout);
+        localHostname = "unknown";
       }
     }
-    throw new Exception("Timeout");
+    return localHostname;
+  }
+
+  /**
+   * Precomputed prefixes of the PCL commands with a numeric argument
+   */
+  private static final byte[] PCL_AMP_Y = ascii("\033&y");
+  private static final byte[] PCL_AMP_Z = ascii("\033&z");
+  private static final byte[] PCL_AMP_U = ascii("\033&u");
+  private static final byte[] PCL_STAR_P = ascii("\033*p");
+  private static final byte[] PCL_STAR_R = ascii("\033*r");
+  private static final byte[] PCL_STAR_B = ascii("\033*b");
+  private static final byte[] PCL_STAR_T = ascii("\033*t");
 
+  private static byte[] ascii(String s)
+  {
+    try
+    {
+      return s.getBytes("US-ASCII");
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      throw new RuntimeException(e);
+    }
   }
 
-  private byte[] generatePjlHeader(LaserJob job) throws UnsupportedEncodingException
+  /**
+   * Writes the PCL command prefix, value, command
+   */
+  private void pcl(AsciiCommandWriter out, byte[] prefix, long value, char command) throws IOException
+  {
+    out.print(prefix);
+    out.print(value);
+    out.print(command);
+  }
+
+  private void generatePjlHeader(AsciiCommandWriter out, LaserJob job) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
     /* Print the printer job language header. */
-    out.printf("\033%%-12345X@PJL JOB NAME=%s\r\n", job.getTitle());
-    out.printf("\033E@PJL ENTER LANGUAGE=PCL\r\n");
+    out.print("\033%-12345X@PJL JOB NAME=");
+    out.print(String.valueOf(job.getTitle()));
+    out.print("\r\n");
+    out.print("\033E@PJL ENTER LANGUAGE=PCL\r\n");
     /* Set autofocus off. */
-    out.printf("\033&y0A");
+    out.print("\033&y0A");
     /* Set focus to 0. */
-    out.printf("\033&y0C");
+    out.print("\033&y0C");
     /* UNKNOWN */
-    out.printf("\033&y0Z");
+    out.print("\033&y0Z");
     /* Left (long-edge) offset registration.  Adjusts the position of the
      * logical page across the width of the page.
      */
-    out.printf("\033&l0U");
+    out.print("\033&l0U");
     /* Top (short-edge) offset registration.  Adjusts the position of the
      * logical page across the length of the page.
      */
-    out.printf("\033&l0Z");
+    out.print("\033&l0Z");
     /* Resolution of the print. Number of Units/Inch*/
-    out.printf("\033&u%dD", job.getResolution());
+    pcl(out, PCL_AMP_U, job.getResolution(), 'D');
     /* X position = 0 */
-    out.printf("\033*p0X");
+    out.print("\033*p0X");
     /* Y position = 0 */
-    out.printf("\033*p0Y");
+    out.print("\033*p0Y");
     /* PCL/RasterGraphics resolution. */
-    out.printf("\033*t%dR", job.getResolution());
-    return result.toByteArray();
+    pcl(out, PCL_STAR_T, job.getResolution(), 'R');
   }
 
-  private byte[] generatePjlFooter() throws UnsupportedEncodingException
+  private void generatePjlFooter(AsciiCommandWriter out) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-
     /* Footer for printer job language. */
     /* Reset */
-    out.printf("\033E");
+    out.print("\033E");
     /* Exit language. */
-    out.printf("\033%%-12345X");
+    out.print("\033%-12345X");
     /* End job. */
-    out.printf("@PJL EOJ \r\n");
-    return result.toByteArray();
+    out.print("@PJL EOJ \r\n");
   }
 
-  private void sendPjlJob(LaserJob job, byte[] pjlData) throws UnknownHostException, UnsupportedEncodingException, IOException, Exception
+  /**
+   * Starts a LPD receive job command on the current connection. Every
+   * job is then sent as control and data file subcommands
+   */
+  private void startReceiveJob() throws IOException, Exception
   {
-    String localhost;
-    try
-    {
-      localhost = java.net.InetAddress.getLocalHost().getHostName();
-    }
-    catch (UnknownHostException e)
-    {
-      localhost = "unknown";
-    }
     PrintStream out = new PrintStream(this.out, true, "US-ASCII");
     out.print("\002\n");
     waitForResponse(0);
+  }
+
+  /**
+   * Announces the job via LPD as subcommands of the current receive job
+   * command: it sends the control file and the header of the data file,
+   * which contains the size of the PJL data.
+   * Nothing of the PJL data is sent yet, so the job can be announced
+   * again on a new connection if this fails.
+   */
+  private void announcePjlJob(PjlJob prepared) throws UnknownHostException, UnsupportedEncodingException, IOException, Exception
+  {
+    LaserJob job = prepared.job;
+    String localhost = getLocalHostname();
+    PrintStream out = new PrintStream(this.out, true, "US-ASCII");
     ByteArrayOutputStream tmp = new ByteArrayOutputStream();
     PrintStream stmp = new PrintStream(tmp, true, "US-ASCII");
     stmp.printf("H%s\n", localhost);
@@ -198,10 +265,33 @@ abstract class EpilogCutter extends LaserCutter
     out.append((char) 0);
     waitForResponse(0);
     /* Send the Job length and name to the queue */
-    out.printf("\003%d dfA%s%s\n", pjlData.length, job.getName(), localhost);
+    out.printf("\003%d dfA%s%s\n", prepared.pjlLength, job.getName(), localhost);
     waitForResponse(0);
-    /* Send the real PJL Job */
-    out.write(pjlData);
+  }
+
+  /**
+   * Sends the PJL data of the job announced by announcePjlJob
+   * and waits until the Lasercutter acknowledges it
+   */
+  private void sendPjlData(PjlJob prepared) throws IOException, Exception
+  {
+    if (prepared.spool != null)
+    {
+      this.out.flush();
+      if (connection != null && connection.getChannel() != null)
+      {
+        prepared.spool.transferTo(connection.getChannel());
+      }
+      else
+      {
+        prepared.spool.transferTo(this.out);
+      }
+    }
+    else
+    {
+      prepared.data.writeTo(this.out);
+      this.out.flush();
+    }
     waitForResponse(0);
   }
 
@@ -213,8 +303,13 @@ abstract class EpilogCutter extends LaserCutter
     }
     else
     {
-      connection = new Socket();
+      //open the socket through a channel, so spooled data can be sent with transferTo
+      connection = SocketChannel.open().socket();
       connection.connect(new InetSocketAddress(hostname, port), NETWORK_TIMEOUT);
+      //the LPD handshake consists of small packets, which must not be delayed
+      connection.setTcpNoDelay(true);
+      connection.setSoTimeout(NETWORK_TIMEOUT);
+      registerResource(connection.getChannel());
       in = new BufferedInputStream(connection.getInputStream());
       out = new BufferedOutputStream(connection.getOutputStream());
     }
@@ -224,18 +319,39 @@ abstract class EpilogCutter extends LaserCutter
   {
     if (!SIMULATE_COMMUNICATION)
     {
+      unregisterResource(connection.getChannel());
       in.close();
       out.close();
     }
   }
 
+  /**
+   * Closes the connection without flushing pending data,
+   * e.g. after it was closed by the Lasercutter
+   */
+  private void disconnectQuietly()
+  {
+    if (!SIMULATE_COMMUNICATION && connection != null)
+    {
+      unregisterResource(connection.getChannel());
+      try
+      {
+        connection.close();
+      }
+      catch (IOException e)
+      {
+      }
+    }
+  }
+
   @Override
   protected void checkJob(LaserJob job) throws IllegalJobException
   {
     super.checkJob(job);
     if (job.containsVector())
     {
-      for (VectorCommand cmd : job.getVectorPart().getCommandList())
+      VectorCommandCursor cmd = job.getVectorPart().getCommandCursor();
+      while (cmd.next())
       {
         if (cmd.getType() == VectorCommand.CmdType.SETFOCUS)
         {
@@ -275,42 +391,360 @@ abstract class EpilogCutter extends LaserCutter
 
   @Override
   public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, SocketTimeoutException, UnsupportedEncodingException, IOException, UnknownHostException, Exception
+  {
+    List<LaserJob> jobs = new ArrayList<LaserJob>(1);
+    jobs.add(job);
+    sendJobs(jobs, pl);
+  }
+
+  /**
+   * Sends several jobs over one LPD connection. The PJL data of the
+   * next job is generated while the current one is transmitted.
+   * If the Lasercutter does not accept another job on the same
+   * connection, it is sent again over a new connection and all
+   * following jobs get their own connection. This is only done while
+   * no PJL data of the job was sent. Later failures are thrown, since
+   * the Lasercutter may already have received the complete job.
+   * 
+   * @param jobs
+   * @param pl
+   * @throws IllegalJobException if one of the jobs is invalid. Nothing
+   * is sent in this case
+   * @throws Exception 
+   */
+  public void sendJobs(List<LaserJob> jobs, ProgressListener pl) throws IllegalJobException, SocketTimeoutException, UnsupportedEncodingException, IOException, UnknownHostException, Exception
   {
     pl.progressChanged(this, 0);
     pl.taskChanged(this, "checking job");
-    //Perform santiy checks
-    checkJob(job);
-    if (job.contains3dRaster() && job.containsRaster())
-    {//Raster and 3d Raster may not be in the same job. Send 2
-      pl.taskChanged(this, "sending job 1/2");
-      this.realSendJob(new LaserJob("(1/2)" + job.getTitle(), job.getName(), job.getUser(), job.getResolution(), job.getRaster3dPart(), null, null), pl);
-      pl.taskChanged(this, "sending job 2/2");
-      this.realSendJob(new LaserJob("(2/2)" + job.getTitle(), job.getName(), job.getUser(), job.getResolution(), null, job.getVectorPart(), job.getRasterPart()), pl);
+    List<Callable<PjlJob>> tasks = new ArrayList<Callable<PjlJob>>();
+    for (LaserJob part : split(jobs))
+    {
+      tasks.add(prepare(part));
     }
-    else
+    transmit(tasks, pl);
+  }
+
+  /**
+   * Checks the jobs and splits them into the jobs sent to the
+   * Lasercutter. Raster and 3d Raster may not be in the same job
+   */
+  private List<LaserJob> split(List<LaserJob> jobs) throws IllegalJobException
+  {
+    List<LaserJob> parts = new ArrayList<LaserJob>();
+    for (LaserJob job : jobs)
     {
-      pl.taskChanged(this, "sending job");
-      this.realSendJob(job, pl);
+      //Perform santiy checks
+      checkJob(job);
+      if (job.contains3dRaster() && job.containsRaster())
+      {//Raster and 3d Raster may not be in the same job. Send 2
+        parts.add(new LaserJob("(1/2)" + job.getTitle(), job.getName(), job.getUser(), job.getResolution(), job.getRaster3dPart(), null, null));
+        parts.add(new LaserJob("(2/2)" + job.getTitle(), job.getName(), job.getUser(), job.getResolution(), null, job.getVectorPart(), job.getRasterPart()));
+      }
+      else
+      {
+        parts.add(job);
+      }
+    }
+    return parts;
+  }
+
+  /**
+   * Sends the jobs returned by the tasks over one LPD connection.
+   * The next task runs while the current job is transmitted.
+   * The spool files of the jobs are deleted
+   */
+  private void transmit(List<Callable<PjlJob>> parts, ProgressListener pl) throws Exception
+  {
+    ExecutorService generator = Executors.newSingleThreadExecutor();
+    Future<PjlJob> next = generator.submit(parts.get(0));
+    boolean connected = false;
+    boolean reconnectPerJob = false;
+    try
+    {
+      for (int i = 0; i < parts.size(); i++)
+      {
+        String suffix = parts.size() > 1 ? " " + (i + 1) + "/" + parts.size() : "";
+        pl.taskChanged(this, "generating" + suffix);
+        PjlJob current = get(next);
+        next = i + 1 < parts.size() ? generator.submit(parts.get(i + 1)) : null;
+        try
+        {
+          if (connected && reconnectPerJob)
+          {
+            disconnect();
+            connected = false;
+          }
+          boolean reused = connected;
+          if (!connected)
+          {
+            pl.taskChanged(this, "connecting" + suffix);
+            connect();
+            connected = true;
+            startReceiveJob();
+          }
+          pl.taskChanged(this, "sending job" + suffix);
+          try
+          {
+            announcePjlJob(current);
+          }
+          catch (IOException e)
+          {
+            if (!reused || Thread.currentThread().isInterrupted())
+            {
+              throw e;
+            }
+            //The Lasercutter closed the connection or does not answer
+            //after the last job. None of the data was sent, so the job
+            //is announced again on a new connection
+            reconnectPerJob = true;
+            disconnectQuietly();
+            pl.taskChanged(this, "connecting" + suffix);
+            connect();
+            startReceiveJob();
+            pl.taskChanged(this, "sending job" + suffix);
+            announcePjlJob(current);
+          }
+          //Once the data is on its way, the Lasercutter may already have
+          //the complete job, so it is never sent again
+          sendPjlData(current);
+        }
+        finally
+        {
+          if (current.spool != null)
+          {
+            current.spool.delete();
+          }
+        }
+        pl.progressChanged(this, (i + 1) * 100 / parts.size());
+      }
+      connected = false;
+      disconnect();
+    }
+    finally
+    {
+      if (connected)
+      {
+        disconnectQuietly();
+      }
+      generator.shutdown();
+      //a running generation stops at the next raster line
+      //and deletes its spool file
+      if (next != null && !next.cancel(true))
+      {
+        try
+        {
+          PjlJob unused = next.get();
+          if (unused.spool != null)
+          {
+            unused.spool.delete();
+          }
+        }
+        catch (Exception e)
+        {
+          //its spool file was already deleted
+        }
+      }
     }
     pl.progressChanged(this, 100);
   }
 
-  private void realSendJob(LaserJob job, ProgressListener pl) throws UnsupportedEncodingException, IOException, UnknownHostException, Exception
+  /**
+   * A job with its generated PJL data, which is either kept
+   * in memory or in a spool file
+   */
+  private static class PjlJob
+  {
+
+    private LaserJob job;
+    private long pjlLength;
+    private ByteArrayOutputStream data;
+    private SpoolFile spool;
+  }
+
+  /**
+   * The PJL data of all jobs a LaserJob is split into
+   */
+  private static class EpilogJob extends PreparedJob
+  {
+
+    private List<PjlJob> parts = new ArrayList<PjlJob>();
+
+    EpilogJob(LaserJob job)
+    {
+      super(job);
+    }
+
+    @Override
+    public void close()
+    {
+      for (PjlJob part : parts)
+      {
+        if (part.spool != null)
+        {
+          part.spool.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Generates the PJL data of the job, so sendPreparedJob
+   * only transmits it
+   */
+  @Override
+  public PreparedJob prepareJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    List<LaserJob> jobs = new ArrayList<LaserJob>(1);
+    jobs.add(job);
+    EpilogJob result = new EpilogJob(job);
+    boolean generated = false;
+    try
+    {
+      for (LaserJob part : split(jobs))
+      {
+        pl.taskChanged(this, "generating");
+        result.parts.add(prepare(part).call());
+      }
+      generated = true;
+    }
+    finally
+    {
+      if (!generated)
+      {
+        result.close();
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void sendPreparedJob(PreparedJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    if (!(job instanceof EpilogJob))
+    {
+      super.sendPreparedJob(job, pl);
+      return;
+    }
+    pl.progressChanged(this, 0);
+    List<Callable<PjlJob>> tasks = new ArrayList<Callable<PjlJob>>();
+    for (final PjlJob part : ((EpilogJob) job).parts)
+    {
+      tasks.add(new Callable<PjlJob>()
+      {
+
+        public PjlJob call()
+        {
+          return part;
+        }
+      });
+    }
+    transmit(tasks, pl);
+  }
+
+  /**
+   * Keeps the written data in memory until it exceeds the given
+   * threshold. Then it is moved to a spool file, which takes
+   * all further data.
+   */
+  private static class JobBuffer extends OutputStream
+  {
+
+    private long threshold;
+    private File directory;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private SpoolFile spool = null;
+    private OutputStream out = memory;
+
+    JobBuffer(long threshold, File directory)
+    {
+      this.threshold = threshold;
+      this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (spool == null && memory.size() + len > threshold)
+      {
+        spool = new SpoolFile(directory);
+        out = spool.getOutputStream();
+        memory.writeTo(out);
+        memory = null;
+      }
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      out.flush();
+    }
+  }
+
+  /**
+   * Returns a task, which generates the PJL data of the job. It is kept
+   * in memory up to spoolThreshold bytes (0 if useSpoolFile is set)
+   * and spooled to disk above that. Either way it is generated only once
+   */
+  private Callable<PjlJob> prepare(final LaserJob job)
+  {
+    final long threshold = useSpoolFile ? 0 : spoolThreshold;
+    final File directory = spoolDirectory;
+    return new Callable<PjlJob>()
+    {
+
+      public PjlJob call() throws Exception
+      {
+        PjlJob result = new PjlJob();
+        result.job = job;
+        JobBuffer buffer = new JobBuffer(threshold, directory);
+        boolean generated = false;
+        try
+        {
+          result.pjlLength = generatePjlData(job, buffer);
+          generated = true;
+        }
+        finally
+        {
+          //whatever went wrong, the spool file is not deleted on exit
+          if (!generated && buffer.spool != null)
+          {
+            buffer.spool.delete();
+          }
+        }
+        result.data = buffer.memory;
+        result.spool = buffer.spool;
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Waits for the prepared job and rethrows the exceptions
+   * of its generation
+   */
+  private PjlJob get(Future<PjlJob> job) throws Exception
   {
-    //Generate all the data
-    pl.taskChanged(this, "generating data");
-    byte[] pjlData = generatePjlData(job);
-    pl.progressChanged(this, 40);
-    //connect to lasercutter
-    pl.taskChanged(this, "connecting");
-    connect();
-    pl.progressChanged(this, 60);
-    //send job
-    pl.taskChanged(this, "sending");
-    sendPjlJob(job, pjlData);
-    pl.progressChanged(this, 90);
-    //disconnect
-    disconnect();
+    try
+    {
+      return job.get();
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof Exception)
+      {
+        throw (Exception) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
   }
 
   @Override
@@ -322,47 +756,126 @@ abstract class EpilogCutter extends LaserCutter
    */
   public List<Byte> encode(List<Byte> line)
   {
-    int idx = 0;
-    int r = line.size();
-    List<Byte> result = new LinkedList<Byte>();
+    byte[] bytes = new byte[line.size()];
+    int i = 0;
+    for (Byte b : line)
+    {
+      bytes[i++] = b;
+    }
+    byte[] encoded = new byte[getMaxEncodedLength(bytes.length)];
+    int len = encode(bytes, 0, bytes.length, encoded);
+    List<Byte> result = new ArrayList<Byte>(len);
+    for (i = 0; i < len; i++)
+    {
+      result.add(encoded[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the maximum number of bytes the TIFF Packbyte encoding
+   * of length bytes can occupy, including the padding to 8 bytes.
+   * Every literal header but the last is followed by a run of at least
+   * two bytes, so there is at most one header per three bytes.
+   */
+  private int getMaxEncodedLength(int length)
+  {
+    return length + (length + 2) / 3 + 1 + 8;
+  }
+
+  /**
+   * Encodes length bytes of line, starting at offset, in TIFF Packbyte encoding
+   * @param line
+   * @param offset
+   * @param length
+   * @param target the buffer for the encoded data. It must be at least
+   * getMaxEncodedLength(length) bytes long
+   * @return the number of bytes written to target
+   */
+  private int encode(byte[] line, int offset, int length, byte[] target)
+  {
+    int idx = offset;
+    int r = offset + length;
+    int t = 0;
     while (idx < r)
     {
       int p;
       p = idx + 1;
-      while (p < r && p < idx + 128 && line.get(p) == line.get(idx))
+      while (p < r && p < idx + 128 && line[p] == line[idx])
       {
         p++;
       }
       if (p - idx >= 2)
       {
         // run length
-        result.add((byte) (1 - (p - idx)));
-        result.add((byte) line.get(idx));
+        target[t++] = (byte) (1 - (p - idx));
+        target[t++] = line[idx];
         idx = p;
       }
       else
       {
         p = idx;
         while (p < r && p < idx + 127
-          && (p + 1 == r || line.get(p)
-          != line.get(p + 1)))
+          && (p + 1 == r || line[p] != line[p + 1]))
         {
           p++;
         }
-        result.add((byte) (p - idx - 1));
-        while (idx < p)
-        {
-          result.add((byte) (line.get(idx++)));
-        }
+        target[t++] = (byte) (p - idx - 1);
+        System.arraycopy(line, idx, target, t, p - idx);
+        t += p - idx;
+        idx = p;
       }
     }
-    return result;
+    return t;
   }
 
-  private byte[] generateRaster3dPCL(LaserJob job, Raster3dPart rp) throws UnsupportedEncodingException, IOException
+  /**
+   * Writes length bytes of line, starting at offset, as TIFF Packbyte encoded
+   * raster data (the data length command followed by the data, which is
+   * padded with 128 (no-op) bytes).
+   * @param buffer the buffer to encode into. It may be null
+   * @return the buffer which should be passed for the next line
+   */
+  private byte[] writeEncodedLine(AsciiCommandWriter out, byte[] line, int offset, int length, byte[] buffer) throws IOException
+  {
+    if (buffer == null || buffer.length < getMaxEncodedLength(length))
+    {
+      buffer = new byte[getMaxEncodedLength(length)];
+    }
+    int len = encode(line, offset, length, buffer);
+    int pcks = len / 8;
+    if (len % 8 > 0)
+    {
+      pcks++;
+    }
+    /**
+     * Number of Pixels in a row??
+     * or b2m%dW for TIFF encoding?
+     * Or number of Bytes in a row? who knows
+     * in ctrl-cut its number of packed bytes
+     */
+    pcl(out, PCL_STAR_B, pcks * 8, 'W');
+    int padding = 8 - (len % 8);
+    Arrays.fill(buffer, len, len + padding, (byte) 128);
+    out.write(buffer, 0, len + padding);
+    return buffer;
+  }
+
+  /**
+   * Reverses the bytes from index from (inclusive) to to (exclusive)
+   */
+  private void reverse(byte[] bytes, int from, int to)
+  {
+    for (int a = from, b = to - 1; a < b; a++, b--)
+    {
+      byte tmp = bytes[a];
+      bytes[a] = bytes[b];
+      bytes[b] = tmp;
+    }
+  }
+
+  private void generateRaster3dPCL(AsciiCommandWriter out, LaserJob job, Raster3dPart rp) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
     LaserProperty curprop = new LaserProperty();
     if (rp != null && rp.getRasterCount() > 0)
     {
@@ -370,17 +883,19 @@ abstract class EpilogCutter extends LaserCutter
       {
         curprop = rp.getLaserProperty(0);
       }
+      RasterLine rasterLine = new RasterLine(rp.getWidth());
+      byte[] encoded = null;
       /* Raster Orientation: Printed in current direction */
-      out.printf("\033*r0F");
+      out.print("\033*r0F");
       /* Raster power */
-      out.printf("\033&y%dP", curprop.getPower());
+      pcl(out, PCL_AMP_Y, curprop.getPower(), 'P');
       /* Raster speed */
-      out.printf("\033&z%dS", curprop.getSpeed());
+      pcl(out, PCL_AMP_Z, curprop.getSpeed(), 'S');
       /* Focus */
-      out.printf("\033&y%dA", mm2focus(curprop.getFocus()));
+      pcl(out, PCL_AMP_Y, mm2focus(curprop.getFocus()), 'A');
 
-      out.printf("\033*r%dT", rp != null ? rp.getHeight() : 10);//height);
-      out.printf("\033*r%dS", rp != null ? rp.getWidth() : 10);//width);
+      pcl(out, PCL_STAR_R, rp != null ? rp.getHeight() : 10, 'T');//height);
+      pcl(out, PCL_STAR_R, rp != null ? rp.getWidth() : 10, 'S');//width);
             /* Raster compression:
        *  2 = TIFF encoding
        *  7 = TIFF encoding, 3d-mode,
@@ -389,11 +904,11 @@ abstract class EpilogCutter extends LaserCutter
        * 2M = Bitweise, also 1=dot 0=nodot (standard raster)
        * 7MLT = Byteweise 0= no power 100=full power (3d raster)
        */
-      out.printf("\033*b%dMLT", 7);
+      out.print("\033*b7MLT");
       /* Raster direction (1 = up, 0=down) */
-      out.printf("\033&y%dO", 0);
+      out.print("\033&y0O");
       /* start at current position */
-      out.printf("\033*r1A");
+      out.print("\033*r1A");
 
       for (int i = 0; rp != null && i < rp.getRasterCount(); i++)
       {
@@ -401,81 +916,63 @@ abstract class EpilogCutter extends LaserCutter
         if (newprop.getPower() != curprop.getPower())
         {
           /* Raster power */
-          out.printf("\033&y%dP", newprop.getPower());
+          pcl(out, PCL_AMP_Y, newprop.getPower(), 'P');
         }
         if (newprop.getSpeed() != curprop.getSpeed())
         {
           /* Raster speed */
-          out.printf("\033&z%dS", newprop.getSpeed());
+          pcl(out, PCL_AMP_Z, newprop.getSpeed(), 'S');
         }
         if (newprop.getFocus() != curprop.getFocus())
         {
           /* Focus  */
-          out.printf("\033&y%dA", mm2focus(newprop.getFocus()));
+          pcl(out, PCL_AMP_Y, mm2focus(newprop.getFocus()), 'A');
         }
         curprop = newprop;
         Point sp = rp.getRasterStart(i);
         boolean leftToRight = true;
         for (int y = 0; y < rp.getRasterHeight(i); y++)
         {
-
-          List<Byte> line = rp.getInvertedRasterLine(i, y);
-          for (int n = 0; n < line.size(); n++)
+          checkCancelled();
+          rp.getInvertedRasterLine(i, y, rasterLine);
+          byte[] bytes = rasterLine.getBytes();
+          int end = rasterLine.getLength();
+          for (int n = rasterLine.getFirst(); n < rasterLine.getLast(); n++)
           {//Apperantly the other power settings are ignored, so we have to scale
-            int x = line.get(n);
-            x = x >= 0 ? x : 256 + x;
+            int x = bytes[n] & 0xFF;
             int scalex = x * curprop.getPower() / 100;
-            byte bx = (byte) (scalex < 128 ? scalex : scalex - 256);
-            line.set(n, bx);
+            bytes[n] = (byte) scalex;
           }
-          //Remove leading zeroes, but keep track of the offset
-          int jump = 0;
-
-          while (line.size() > 0 && line.get(0) == 0)
+          //Skip leading zeroes, but keep track of the offset
+          int jump = rasterLine.getFirst();
+          while (jump < end && bytes[jump] == 0)
           {
-            line.remove(0);
             jump++;
           }
-          if (line.size() > 0)
+          if (jump < end)
           {
-            out.printf("\033*p%dX", sp.x + jump);
-            out.printf("\033*p%dY", sp.y + y);
+            pcl(out, PCL_STAR_P, sp.x + jump, 'X');
+            pcl(out, PCL_STAR_P, sp.y + y, 'Y');
             if (leftToRight)
             {
-              out.printf("\033*b%dA", line.size());
+              pcl(out, PCL_STAR_B, end - jump, 'A');
             }
             else
             {
-              out.printf("\033*b%dA", -line.size());
-              Collections.reverse(line);
-            }
-            line = encode(line);
-            int len = line.size();
-            int pcks = len / 8;
-            if (len % 8 > 0)
-            {
-              pcks++;
-            }
-            out.printf("\033*b%dW", pcks * 8);
-            for (byte s : line)
-            {
-              out.write(s);
-            }
-            for (int k = 0; k < 8 - (len % 8); k++)
-            {
-              out.write((byte) 128);
+              pcl(out, PCL_STAR_B, -(end - jump), 'A');
+              reverse(bytes, jump, end);
             }
+            encoded = writeEncodedLine(out, bytes, jump, end - jump, encoded);
             leftToRight = !leftToRight;
           }
         }
 
       }
-      out.printf("\033*rC");       // end raster
+      out.print("\033*rC");       // end raster
     }
-    return result.toByteArray();
   }
 
-  private byte[] generateRasterPCL(LaserJob job, RasterPart rp) throws UnsupportedEncodingException, IOException
+  private void generateRasterPCL(AsciiCommandWriter out, LaserJob job, RasterPart rp) throws IOException
   {
 
     LaserProperty curprop = null;
@@ -487,19 +984,19 @@ abstract class EpilogCutter extends LaserCutter
     {
       curprop = new LaserProperty();
     }
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    RasterLine rasterLine = new RasterLine();
+    byte[] encoded = null;
     /* Raster Orientation: Printed in current direction */
-    out.printf("\033*r0F");
+    out.print("\033*r0F");
     /* Raster power */
-    out.printf("\033&y%dP", curprop.getPower());
+    pcl(out, PCL_AMP_Y, curprop.getPower(), 'P');
     /* Raster speed */
-    out.printf("\033&z%dS", curprop.getSpeed());
+    pcl(out, PCL_AMP_Z, curprop.getSpeed(), 'S');
     /* Focus */
-    out.printf("\033&y%dA", mm2focus(curprop.getFocus()));
+    pcl(out, PCL_AMP_Y, mm2focus(curprop.getFocus()), 'A');
 
-    out.printf("\033*r%dT", rp != null ? rp.getHeight() : 10);//height);
-    out.printf("\033*r%dS", rp != null ? rp.getWidth() : 10);//width);
+    pcl(out, PCL_STAR_R, rp != null ? rp.getHeight() : 10, 'T');//height);
+    pcl(out, PCL_STAR_R, rp != null ? rp.getWidth() : 10, 'S');//width);
         /* Raster compression:
      *  2 = TIFF encoding
      *  7 = TIFF encoding, 3d-mode,
@@ -508,11 +1005,11 @@ abstract class EpilogCutter extends LaserCutter
      * 2M = Bitweise, also 1=dot 0=nodot (standard raster)
      * 7MLT = Byteweise 0= no power 100=full power (3d raster)
      */
-    out.printf("\033*b2M");
+    out.print("\033*b2M");
     /* Raster direction (1 = up, 0=down) */
-    out.printf("\033&y%dO", 0);
+    out.print("\033&y0O");
     /* start at current position */
-    out.printf("\033*r1A");
+    out.print("\033*r1A");
 
     for (int i = 0; rp != null && i < rp.getRasterCount(); i++)
     {
@@ -521,143 +1018,128 @@ abstract class EpilogCutter extends LaserCutter
       if (newprop.getPower() != curprop.getPower())
       {
         /* Raster power */
-        out.printf("\033&y%dP", newprop.getPower());
+        pcl(out, PCL_AMP_Y, newprop.getPower(), 'P');
       }
       if (newprop.getSpeed() != curprop.getSpeed())
       {
         /* Raster speed */
-        out.printf("\033&z%dS", newprop.getSpeed());
+        pcl(out, PCL_AMP_Z, newprop.getSpeed(), 'S');
       }
       if (newprop.getFocus() != curprop.getFocus())
       {
         /* Focus  */
-        out.printf("\033&y%dA", mm2focus(newprop.getFocus()));
+        pcl(out, PCL_AMP_Y, mm2focus(newprop.getFocus()), 'A');
       }
       curprop = newprop;
       Point sp = rp.getRasterStart(i);
       boolean leftToRight = true;
       for (int y = 0; y < rp.getRasterHeight(i); y++)
       {
-
-        List<Byte> line = rp.getRasterLine(i, y);
-        //Remove leading zeroes, but keep track of the offset
-        int jump = 0;
-
-        while (line.size() > 0 && line.get(0) == 0)
+        checkCancelled();
+        //Leading and trailing zeroes are skipped, but we keep track of the offset
+        rp.getRasterLine(i, y, rasterLine);
+        if (!rasterLine.isEmpty())
         {
-          line.remove(0);
-          jump++;
-        }
-        //Remove trailing zeroes
-        while (line.size() > 0 && line.get(line.size()-1) == 0)
-        {
-          line.remove(line.size()-1);
-        }
-        if (line.size() > 0)
-        {
-          out.printf("\033*p%dX", sp.x + jump * 8);
-          out.printf("\033*p%dY", sp.y + y);
+          byte[] bytes = rasterLine.getBytes();
+          int jump = rasterLine.getFirst();
+          int end = rasterLine.getLast();
+          pcl(out, PCL_STAR_P, sp.x + jump * 8, 'X');
+          pcl(out, PCL_STAR_P, sp.y + y, 'Y');
           if (leftToRight)
           {
-            out.printf("\033*b%dA", line.size());
+            pcl(out, PCL_STAR_B, end - jump, 'A');
           }
           else
           {
-            out.printf("\033*b%dA", -line.size());
-            Collections.reverse(line);
-          }
-          line = encode(line);
-          int len = line.size();
-          int pcks = len / 8;
-          if (len % 8 > 0)
-          {
-            pcks++;
-          }
-          /**
-           * Number of Pixels in a row??
-           * or b2m%dW for TIFF encoding?
-           * Or number of Bytes in a row? who knows
-           * in ctrl-cut its number of packed bytes
-           */
-          out.printf("\033*b%dW", pcks * 8);
-          for (byte s : line)
-          {
-            out.write(s);
-          }
-          for (int k = 0; k < 8 - (len % 8); k++)
-          {
-            out.write((byte) 128);
+            pcl(out, PCL_STAR_B, -(end - jump), 'A');
+            reverse(bytes, jump, end);
           }
+          encoded = writeEncodedLine(out, bytes, jump, end - jump, encoded);
           leftToRight = !leftToRight;
         }
       }
 
     }
-    out.printf("\033*rC");       // end raster
-    return result.toByteArray();
+    out.print("\033*rC");       // end raster
   }
 
-  private byte[] generateVectorPCL(LaserJob job, VectorPart vp) throws UnsupportedEncodingException
+  private void generateVectorPCL(AsciiCommandWriter out, LaserJob job, VectorPart vp) throws IOException
   {
-
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-
-    out.printf("\033*r0F");
-    out.printf("\033*r%dT", vp == null ? 500 : vp.getHeight());// if not dummy, then job.getHeight());
-    out.printf("\033*r%dS", vp == null ? 500 : vp.getWidth());// if not dummy then job.getWidth());
-    out.printf("\033*r1A");
-    out.printf("\033*rC");
-    out.printf("\033%%1B");// Start HLGL
-    out.printf("IN;PU0,0;");
+    out.print("\033*r0F");
+    pcl(out, PCL_STAR_R, vp == null ? 500 : vp.getHeight(), 'T');// if not dummy, then job.getHeight());
+    pcl(out, PCL_STAR_R, vp == null ? 500 : vp.getWidth(), 'S');// if not dummy then job.getWidth());
+    out.print("\033*r1A");
+    out.print("\033*rC");
+    out.print("\033%1B");// Start HLGL
+    out.print("IN;PU0,0;");
 
     if (vp != null)
     {
       int sx = job.getStartX();
       int sy = job.getStartY();
       VectorCommand.CmdType lastType = null;
-      for (VectorCommand cmd : vp.getCommandList())
+      VectorCommandCursor cmd = vp.getCommandCursor();
+      while (cmd.next())
       {
         if (lastType != null && lastType == VectorCommand.CmdType.LINETO && cmd.getType() != VectorCommand.CmdType.LINETO)
         {
-          out.print(";");
+          out.print(';');
         }
         switch (cmd.getType())
         {
           case SETFOCUS:
           {
-            out.printf("WF%d;", mm2focus(cmd.getFocus()));
+            out.print("WF");
+            out.print(mm2focus(cmd.getFocus()));
+            out.print(';');
             break;
           }
           case SETFREQUENCY:
           {
-            out.printf("XR%04d;", cmd.getFrequency());
+            out.print("XR");
+            out.print(cmd.getFrequency(), 4);
+            out.print(';');
             break;
           }
           case SETPOWER:
           {
-            out.printf("YP%03d;", cmd.getPower());
+            out.print("YP");
+            out.print(cmd.getPower(), 3);
+            out.print(';');
             break;
           }
           case SETSPEED:
           {
-            out.printf("ZS%03d;", cmd.getSpeed());
+            out.print("ZS");
+            out.print(cmd.getSpeed(), 3);
+            out.print(';');
             break;
           }
           case MOVETO:
           {
-            out.printf("PU%d,%d;", cmd.getX() - sx, cmd.getY() - sy);
+            checkCancelled();
+            out.print("PU");
+            out.print(cmd.getX() - sx);
+            out.print(',');
+            out.print(cmd.getY() - sy);
+            out.print(';');
             break;
           }
           case LINETO:
           {
             if (lastType == null || lastType != VectorCommand.CmdType.LINETO)
             {
-              out.printf("PD%d,%d", cmd.getX() - sx, cmd.getY() - sy);
+              out.print("PD");
+              out.print(cmd.getX() - sx);
+              out.print(',');
+              out.print(cmd.getY() - sy);
             }
             else
             {
-              out.printf(",%d,%d", cmd.getX() - sx, cmd.getY() - sy);
+              out.print(',');
+              out.print(cmd.getX() - sx);
+              out.print(',');
+              out.print(cmd.getY() - sy);
             }
             break;
           }
@@ -666,28 +1148,100 @@ abstract class EpilogCutter extends LaserCutter
       }
     }
     //Reset Focus to 0
-    out.printf("WF%d;", 0);
-    return result.toByteArray();
+    out.print("WF0;");
   }
 
-  private byte[] generatePjlData(LaserJob job) throws UnsupportedEncodingException, IOException
+  /**
+   * Generates the complete PJL Job and writes it to the given stream.
+   * The data is generated while writing, so the stream may be the
+   * connection to the Lasercutter
+   * @return the number of bytes written
+   */
+  private long generatePjlData(LaserJob job, OutputStream target) throws UnsupportedEncodingException, IOException
   {
-    /* Generate complete PJL Job */
-    ByteArrayOutputStream pjlJob = new ByteArrayOutputStream();
-    PrintStream wrt = new PrintStream(pjlJob, true, "US-ASCII");
+    CountingOutputStream counter = new CountingOutputStream(target);
+    AsciiCommandWriter wrt = new AsciiCommandWriter(counter);
 
-    wrt.write(generatePjlHeader(job));
-    wrt.write(generateRasterPCL(job, job.getRasterPart()));
-    wrt.write(generateRaster3dPCL(job, job.getRaster3dPart()));
-    wrt.write(generateVectorPCL(job, job.getVectorPart()));
-    wrt.write(generatePjlFooter());
+    generatePjlHeader(wrt, job);
+    generateRasterPCL(wrt, job, job.getRasterPart());
+    generateRaster3dPCL(wrt, job, job.getRaster3dPart());
+    generateVectorPCL(wrt, job, job.getVectorPart());
+    generatePjlFooter(wrt);
     /* Pad out the remainder of the file with 0 characters. */
-    for (int i = 0; i < 4096; i++)
-    {
-      wrt.append((char) 0);
-    }
+    wrt.write(new byte[4096], 0, 4096);
     wrt.flush();
-    return pjlJob.toByteArray();
+    return counter.getCount();
+  }
+
+  protected boolean useSpoolFile = false;
+
+  /**
+   * Get the value of useSpoolFile
+   *
+   * @return the value of useSpoolFile
+   */
+  public boolean isUseSpoolFile()
+  {
+    return useSpoolFile;
+  }
+
+  /**
+   * Set the value of useSpoolFile
+   * If true, the generated job is always written to a temporary file
+   * instead of being kept in memory
+   *
+   * @param useSpoolFile new value of useSpoolFile
+   */
+  public void setUseSpoolFile(boolean useSpoolFile)
+  {
+    this.useSpoolFile = useSpoolFile;
+  }
+  protected long spoolThreshold = Long.MAX_VALUE;
+
+  /**
+   * Get the value of spoolThreshold
+   *
+   * @return the value of spoolThreshold
+   */
+  public long getSpoolThreshold()
+  {
+    return spoolThreshold;
+  }
+
+  /**
+   * Set the value of spoolThreshold
+   * The generated data of a job is kept in memory up to this many bytes.
+   * Bigger jobs are written to a temporary file, even if useSpoolFile
+   * is not set. The default is Long.MAX_VALUE, so nothing is written
+   * to disk unless one of them is set.
+   *
+   * @param spoolThreshold new value of spoolThreshold
+   */
+  public void setSpoolThreshold(long spoolThreshold)
+  {
+    this.spoolThreshold = spoolThreshold;
+  }
+  protected File spoolDirectory = null;
+
+  /**
+   * Get the value of spoolDirectory
+   *
+   * @return the value of spoolDirectory
+   */
+  public File getSpoolDirectory()
+  {
+    return spoolDirectory;
+  }
+
+  /**
+   * Set the value of spoolDirectory
+   *
+   * @param spoolDirectory new value of spoolDirectory.
+   * null means the default temporary directory
+   */
+  public void setSpoolDirectory(File spoolDirectory)
+  {
+    this.spoolDirectory = spoolDirectory;
   }
 
   public int getPort()
@@ -719,6 +1273,10 @@ abstract class EpilogCutter extends LaserCutter
     {
       return "" + this.getBedHeight();
     }
+    else if ("SpoolToDisk".equals(attribute))
+    {
+      return this.isUseSpoolFile() ? "yes" : "no";
+    }
     return null;
   }
   protected double bedWidth = 600;
@@ -783,10 +1341,14 @@ abstract class EpilogCutter extends LaserCutter
     {
       this.setBedHeight(Double.parseDouble(value));
     }
+    else if ("SpoolToDisk".equals(attribute))
+    {
+      this.setUseSpoolFile("yes".equals(value));
+    }
   }
   private String[] attributes = new String[]
   {
-    "Hostname", "Port", "BedWidth", "BedHeight"
+    "Hostname", "Port", "BedWidth", "BedHeight", "SpoolToDisk"
   };
 
   @Override
@@ -822,17 +1384,8 @@ abstract class EpilogCutter extends LaserCutter
         double linespeed = ((double) RASTER_LINESPEED * rp.getLaserProperty(i).getSpeed()) / 100;
         BlackWhiteRaster bwr = rp.getImages()[i];
         for (int y = 0; y < bwr.getHeight(); y++)
-        {//Find any black point
-          boolean lineEmpty = true;
-          for (int x = 0; x < bwr.getWidth(); x++)
-          {
-            if (bwr.isBlack(x, y))
-            {
-              lineEmpty = false;
-              break;
-            }
-          }
-          if (!lineEmpty)
+        {
+          if (!bwr.isRowEmpty(y))
           {
             int w = bwr.getWidth();
             result += (double) RASTER_LINEOFFSET + (double) w / linespeed;
@@ -856,12 +1409,14 @@ abstract class EpilogCutter extends LaserCutter
           (double) (p.y - sp.y) / VECTOR_MOVESPEED_Y);
         double linespeed = ((double) RASTER3D_LINESPEED * rp.getLaserProperty(i).getSpeed()) / 100;
         GreyscaleRaster gsr = rp.getImages()[i];
+        byte[] row = new byte[gsr.getWidth()];
         for (int y = 0; y < gsr.getHeight(); y++)
         {//Check if
           boolean lineEmpty = true;
-          for (int x = 0; x < gsr.getWidth(); x++)
+          AbstractGreyscaleRaster.getRow(gsr, y, row);
+          for (int x = 0; x < row.length; x++)
           {
-            if (gsr.getGreyScale(x, y) != 0)
+            if (row[x] != 0)
             {
               lineEmpty = false;
               break;
@@ -881,7 +1436,8 @@ abstract class EpilogCutter extends LaserCutter
     {
       double speed = VECTOR_LINESPEED;
       VectorPart vp = job.getVectorPart();
-      for (VectorCommand cmd : vp.getCommandList())
+      VectorCommandCursor cmd = vp.getCommandCursor();
+      while (cmd.next())
       {
         switch (cmd.getType())
         {
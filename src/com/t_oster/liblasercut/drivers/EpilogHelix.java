@@ -75,6 +75,9 @@ public class EpilogHelix extends EpilogCutter
     result.setPort(this.getPort());
     result.setBedHeight(this.getBedHeight());
     result.setBedWidth(this.getBedWidth());
+    result.setUseSpoolFile(this.isUseSpoolFile());
+    result.setSpoolDirectory(this.getSpoolDirectory());
+    result.setSpoolThreshold(this.getSpoolThreshold());
     return result;
   }
 
@@ -23,24 +23,30 @@ import com.t_oster.liblasercut.IllegalJobException;
 import com.t_oster.liblasercut.LaserCutter;
 import com.t_oster.liblasercut.LaserJob;
 import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PreparedJob;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.Raster3dPart;
+import com.t_oster.liblasercut.RasterLine;
 import com.t_oster.liblasercut.RasterPart;
-import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.RasterRuns;
+import com.t_oster.liblasercut.VectorCommandCursor;
 import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.PeepholeOptimizer;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 import org.apache.commons.net.tftp.TFTP;
 import org.apache.commons.net.tftp.TFTPClient;
 
@@ -63,6 +69,8 @@ public class LaosCutter extends LaserCutter
   private static final String SETTING_MMPERSTEP = "mm per Step (for SimpleMode)";
   private static final String SETTING_TFTP = "Use TFTP instead of TCP";
   private static final String SETTING_RASTER_WHITESPACE = "Additional space per Raster line";
+  private static final String SETTING_SPOOL = "Spool jobs to disk (yes/no)";
+  private static final String SETTING_ARC_TOLERANCE = "Arc tolerance for G2/G3 in mm (0 = off)";
 
   private double addSpacePerRasterLine = 5;
 
@@ -115,6 +123,51 @@ public class LaosCutter extends LaserCutter
   {
     this.useTftp = useTftp;
   }
+  protected boolean useSpoolFile = false;
+
+  /**
+   * Get the value of useSpoolFile
+   *
+   * @return the value of useSpoolFile
+   */
+  public boolean isUseSpoolFile()
+  {
+    return useSpoolFile;
+  }
+
+  /**
+   * Set the value of useSpoolFile
+   * If true, the generated job is written to a temporary file
+   * instead of memory (TFTP) before it is sent
+   *
+   * @param useSpoolFile new value of useSpoolFile
+   */
+  public void setUseSpoolFile(boolean useSpoolFile)
+  {
+    this.useSpoolFile = useSpoolFile;
+  }
+  protected File spoolDirectory = null;
+
+  /**
+   * Get the value of spoolDirectory
+   *
+   * @return the value of spoolDirectory
+   */
+  public File getSpoolDirectory()
+  {
+    return spoolDirectory;
+  }
+
+  /**
+   * Set the value of spoolDirectory
+   *
+   * @param spoolDirectory new value of spoolDirectory.
+   * null means the default temporary directory
+   */
+  public void setSpoolDirectory(File spoolDirectory)
+  {
+    this.spoolDirectory = spoolDirectory;
+  }
   protected boolean flipXaxis = false;
 
   /**
@@ -220,310 +273,364 @@ public class LaosCutter extends LaserCutter
   {
     this.mmPerStep = mmPerStep;
   }
+  protected double arcTolerance = 0;
+
+  /**
+   * Get the value of arcTolerance
+   *
+   * @return the value of arcTolerance
+   */
+  public double getArcTolerance()
+  {
+    return arcTolerance;
+  }
+
+  /**
+   * Set the value of arcTolerance
+   * If it is bigger than 0, lines lying on a circular arc within
+   * this distance (in mm) are sent as one G2/G3 command in GCode mode.
+   * The firmware has to support arcs.
+   *
+   * @param arcTolerance new value of arcTolerance
+   */
+  public void setArcTolerance(double arcTolerance)
+  {
+    this.arcTolerance = arcTolerance;
+  }
 
-  private int px2steps(double px, double dpi)
+  /**
+   * Number of decimals of the coordinates in GCode mode
+   */
+  private static final int GCODE_DECIMALS = 6;
+
+  /**
+   * Creates a writer, which converts pixel coordinates of the given
+   * resolution to steps (simple mode) or mm (GCode)
+   */
+  private AsciiCommandWriter createWriter(OutputStream out, int resolution)
   {
-    return (int) (Util.px2mm(px, dpi) / this.mmPerStep);
+    AsciiCommandWriter result = new AsciiCommandWriter(out);
+    if (this.isSimpleMode())
+    {
+      result.setTransform(resolution, this.mmPerStep, 0, false, isFlipXaxis(), bedWidth);
+    }
+    else
+    {
+      result.setTransform(resolution, 1, GCODE_DECIMALS, true, isFlipXaxis(), bedWidth);
+    }
+    return result;
   }
 
-  private byte[] generateVectorGCode(VectorPart vp, int resolution) throws UnsupportedEncodingException
+  /**
+   * Encodes the optimized motion commands with the current properties.
+   * Lines are passed through an ArcFitter, if arcs are enabled
+   */
+  private class MotionTarget implements PeepholeOptimizer.Target
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-    int power = 100;
-    int speed = 50;
-    int frequency = 500;
-    double focus = 0;
+
+    private AsciiCommandWriter out;
+    private int resolution;
+    private ArcFitter arcs = null;
+    private int power = 100;
+    private int speed = 50;
+    private int frequency = 500;
+
+    MotionTarget(final AsciiCommandWriter out, int resolution, double arcTolerance)
+    {
+      this.out = out;
+      this.resolution = resolution;
+      if (!isSimpleMode() && arcTolerance > 0)
+      {
+        arcs = new ArcFitter(new ArcFitter.Target()
+        {
+
+          public void lineto(int x, int y) throws IOException
+          {
+            line(out, x, y, power, speed, frequency);
+          }
+
+          public void arcto(int x, int y, double i, double j, boolean counterClockwise) throws IOException
+          {
+            arc(out, x, y, i, j, counterClockwise, power, speed);
+          }
+        }, Util.mm2px(arcTolerance, resolution));
+      }
+    }
+
+    public void moveto(int x, int y) throws IOException
+    {
+      if (arcs != null)
+      {
+        arcs.moveto(x, y);
+      }
+      move(out, x, y);
+    }
+
+    public void lineto(int x, int y) throws IOException
+    {
+      if (arcs != null)
+      {
+        arcs.lineto(x, y);
+      }
+      else
+      {
+        line(out, x, y, power, speed, frequency);
+      }
+    }
+
+    public void setPower(int power) throws IOException
+    {
+      flush();
+      this.power = power;
+    }
+
+    public void setSpeed(int speed) throws IOException
+    {
+      flush();
+      this.speed = speed;
+    }
+
+    public void setFrequency(int frequency) throws IOException
+    {
+      flush();
+      this.frequency = frequency;
+    }
+
+    public void setFocus(float focus) throws IOException
+    {
+      flush();
+      if (isSimpleMode())
+      {
+        out.print("2 ");
+        out.print((int) Util.mm2px(focus, resolution));
+        out.print('\n');
+      }
+      else
+      {
+        //TODO: Focus in GCode????
+      }
+    }
+
+    /**
+     * Writes the lines still held back by the ArcFitter
+     */
+    public void flush() throws IOException
+    {
+      if (arcs != null)
+      {
+        arcs.flush();
+      }
+    }
+  }
+
+  private void generateVectorGCode(OutputStream target, VectorPart vp, int resolution) throws IOException
+  {
+    AsciiCommandWriter out = createWriter(target, resolution);
+    MotionTarget motionTarget = new MotionTarget(out, resolution, arcTolerance);
+    PeepholeOptimizer motion = new PeepholeOptimizer(motionTarget);
     //reset saved values, so the first ones get verbosed
     this.currentPower = -1;
     this.currentSpeed = -1;
     this.currentFrequency = -1;
-    for (VectorCommand cmd : vp.getCommandList())
+    VectorCommandCursor cmd = vp.getCommandCursor();
+    while (cmd.next())
     {
       switch (cmd.getType())
       {
         case MOVETO:
-          move(out, cmd.getX(), cmd.getY(), resolution);
+          checkCancelled();
+          motion.moveto(cmd.getX(), cmd.getY());
           break;
         case LINETO:
-          line(out, cmd.getX(), cmd.getY(), power, speed, frequency, resolution);
+          motion.lineto(cmd.getX(), cmd.getY());
           break;
         case SETPOWER:
-          power = cmd.getPower();
+          motion.setPower(cmd.getPower());
           break;
         case SETFOCUS:
-          if (this.isSimpleMode())
-          {
-            out.printf(Locale.US, "2 %d\n", (int) Util.mm2px(cmd.getFocus(), resolution));
-          }
-          else
-          {
-            focus = cmd.getFocus();
-          }
+          motion.setFocus(cmd.getFocus());
           break;
         case SETSPEED:
-          speed = cmd.getSpeed();
+          motion.setSpeed(cmd.getSpeed());
           break;
         case SETFREQUENCY:
-          frequency = cmd.getFrequency();
+          motion.setFrequency(cmd.getFrequency());
           break;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    motionTarget.flush();
+    out.flush();
   }
 
-  private void move(PrintStream out, int x, int y, int resolution)
+  private void move(AsciiCommandWriter out, int x, int y) throws IOException
   {
-    if (this.isSimpleMode())
-    {
-      out.printf("0 %d %d\n", px2steps(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), px2steps(y, resolution));
-    }
-    else
-    {
-      out.printf(Locale.US, "G0 X%f Y%f\n", Util.px2mm(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), Util.px2mm(y, resolution));
-    }
+    out.print(this.isSimpleMode() ? "0 " : "G0 X");
+    out.printX(x);
+    out.print(this.isSimpleMode() ? " " : " Y");
+    out.printY(y);
+    out.print('\n');
   }
   private int currentPower = -1;
   private int currentSpeed = -1;
   private int currentFrequency = -1;
 
-  private void line(PrintStream out, int x, int y, int power, int speed, int frequency, int resolution)
+  private void line(AsciiCommandWriter out, int x, int y, int power, int speed, int frequency) throws IOException
   {
     if (this.isSimpleMode())
     {
       if (currentPower != power)
       {
-        out.printf("7 101 %d\n", power * 100);
+        out.print("7 101 ");
+        out.print(power * 100);
+        out.print('\n');
         currentPower = power;
       }
       if (currentSpeed != speed)
       {
-        out.printf("7 100 %d\n", speed * 100);
+        out.print("7 100 ");
+        out.print(speed * 100);
+        out.print('\n');
         currentSpeed = speed;
       }
       if (currentFrequency != frequency)
       {
-        out.printf("7 102 %d\n", frequency);
+        out.print("7 102 ");
+        out.print(frequency);
+        out.print('\n');
         currentFrequency = frequency;
       }
-      out.printf("1 %d %d\n", px2steps(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), px2steps(y, resolution));
+      out.print("1 ");
+      out.printX(x);
+      out.print(' ');
+      out.printY(y);
+      out.print('\n');
     }
     else
     {//Frequency???
-      out.printf(Locale.US, "G1 X%f Y%f E%d F%d\n", Util.px2mm(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), Util.px2mm(y, resolution), power, speed);
+      out.print("G1 X");
+      out.printX(x);
+      out.print(" Y");
+      out.printY(y);
+      out.print(" E");
+      out.print(power);
+      out.print(" F");
+      out.print(speed);
+      out.print('\n');
     }
   }
 
-  private byte[] generatePseudoRaster3dGCode(Raster3dPart rp, int resolution) throws UnsupportedEncodingException
+  private void arc(AsciiCommandWriter out, int x, int y, double i, double j, boolean counterClockwise, int power, int speed) throws IOException
+  {
+    //mirroring the x axis changes the direction
+    out.print(counterClockwise != out.isFlipX() ? "G3 X" : "G2 X");
+    out.printX(x);
+    out.print(" Y");
+    out.printY(y);
+    out.print(" I");
+    out.printOffsetX(i);
+    out.print(" J");
+    out.printOffsetY(j);
+    out.print(" E");
+    out.print(power);
+    out.print(" F");
+    out.print(speed);
+    out.print('\n');
+  }
+
+  private void generatePseudoRaster3dGCode(OutputStream target, Raster3dPart rp, int resolution) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    AsciiCommandWriter out = createWriter(target, resolution);
+    PeepholeOptimizer motion = new PeepholeOptimizer(new MotionTarget(out, resolution, 0));
+    //keep the run-up moves around the lines
+    motion.setKeepRunUps(true);
     boolean dirRight = true;
+    RasterLine rasterLine = new RasterLine();
+    RasterRuns runs = new RasterRuns();
     for (int raster = 0; raster < rp.getRasterCount(); raster++)
     {
       Point rasterStart = rp.getRasterStart(raster);
       LaserProperty prop = rp.getLaserProperty(raster);
-      //Set focus
-      if (this.isSimpleMode())
-      {
-        out.printf(Locale.US, "2 %d\n", (int) Util.mm2px(prop.getFocus(), resolution));
-      }
-      else
-      {
-        //TODO: Focus in GCode????
-      }
+      motion.setFocus(prop.getFocus());
+      motion.setSpeed(prop.getSpeed());
+      motion.setFrequency(prop.getFrequency());
       for (int line = 0; line < rp.getRasterHeight(raster); line++)
       {
-        Point lineStart = rasterStart.clone();
-        lineStart.y += line;
-        List<Byte> bytes = rp.getRasterLine(raster, line);
-        //remove heading zeroes
-        while (bytes.size() > 0 && bytes.get(0) == 0)
-        {
-          bytes.remove(0);
-          lineStart.x += 1;
-        }
-        //remove trailing zeroes
-        while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0)
-        {
-          bytes.remove(bytes.size() - 1);
-        }
-        if (bytes.size() > 0)
+        checkCancelled();
+        rp.getRasterLine(raster, line, rasterLine);
+        runs.extract(rasterLine);
+        if (!runs.isEmpty())
         {
           if (dirRight)
           {
-            //move to the first nonempyt point of the line
-            move(out, lineStart.x, lineStart.y, resolution);
-            byte old = bytes.get(0);
-            for (int pix = 0; pix < bytes.size(); pix++)
-            {
-              if (bytes.get(pix) != old)
-              {
-                if (old == 0)
-                {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                else
-                {
-                  line(out, lineStart.x + pix - 1, lineStart.y, prop.getPower() * (0xFF & old) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            line(out, lineStart.x + bytes.size() - 1, lineStart.y, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
+            RasterRunWriter.writeRight(motion, runs, rasterStart.x, rasterStart.y + line, prop);
           }
           else
           {
-            //move to the last nonempty point of the line
-            move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-            byte old = bytes.get(bytes.size() - 1);
-            for (int pix = bytes.size() - 1; pix >= 0; pix--)
-            {
-              if (bytes.get(pix) != old || pix == 0)
-              {
-                if (old == 0)
-                {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                else
-                {
-                  line(out, lineStart.x + pix + 1, lineStart.y, prop.getPower() * (0xFF & old) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            line(out, lineStart.x, lineStart.y, prop.getPower() * (0xFF & bytes.get(0)) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
+            RasterRunWriter.writeLeft(motion, runs, rasterStart.x, rasterStart.y + line, prop);
           }
         }
         dirRight = !dirRight;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    out.flush();
   }
 
-  private byte[] generatePseudoRasterGCode(RasterPart rp, int resolution) throws UnsupportedEncodingException
+  private void generatePseudoRasterGCode(OutputStream target, RasterPart rp, int resolution) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    AsciiCommandWriter out = createWriter(target, resolution);
+    PeepholeOptimizer motion = new PeepholeOptimizer(new MotionTarget(out, resolution, 0));
+    //keep the run-up moves around the lines
+    motion.setKeepRunUps(true);
     boolean dirRight = true;
+    RasterRuns runs = new RasterRuns();
+    double space = Util.mm2px(this.addSpacePerRasterLine, resolution);
+    int maxX = (int) Util.mm2px(bedWidth, resolution);
     for (int raster = 0; raster < rp.getRasterCount(); raster++)
     {
+      BlackWhiteRaster bwr = rp.getImages()[raster];
       Point rasterStart = rp.getRasterStart(raster);
       LaserProperty prop = rp.getLaserProperty(raster);
-      //Set focus
-      if (this.isSimpleMode())
-      {
-        out.printf(Locale.US, "2 %d\n", (int) Util.mm2px(prop.getFocus(), resolution));
-      }
-      else
-      {
-        //TODO: Focus in GCode????
-      }
+      motion.setFocus(prop.getFocus());
+      motion.setSpeed(prop.getSpeed());
+      motion.setFrequency(prop.getFrequency());
       for (int line = 0; line < rp.getRasterHeight(raster); line++)
       {
-        Point lineStart = rasterStart.clone();
-        lineStart.y += line;
-        //Convert BlackWhite line into line of 0 and 255 bytes
-        BlackWhiteRaster bwr = rp.getImages()[raster];
-        List<Byte> bytes = new LinkedList<Byte>();
-        boolean lookForStart = true;
-        for (int x = 0; x < bwr.getWidth(); x++)
-        {
-          if (lookForStart)
-          {
-            if (bwr.isBlack(x, line))
-            {
-              lookForStart = false;
-              bytes.add((byte) 255);
-            }
-            else
-            {
-              lineStart.x += 1;
-            }
-          }
-          else
-          {
-            bytes.add(bwr.isBlack(x, line) ? (byte) 255 : (byte) 0);
-          }
-        }
-        //remove trailing zeroes
-        while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0)
-        {
-          bytes.remove(bytes.size() - 1);
-        }
-        if (bytes.size() > 0)
+        checkCancelled();
+        int y = rasterStart.y + line;
+        runs.extract(bwr, line);
+        if (!runs.isEmpty())
         {
+          int first = rasterStart.x + runs.getStart(0);
+          int last = rasterStart.x + runs.getEnd(runs.getCount() - 1) - 1;
           if (dirRight)
           {
             //add some space to the left
-            move(out, Math.max(0, (int) (lineStart.x-Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
-            //move to the first nonempyt point of the line
-            move(out, lineStart.x, lineStart.y, resolution);
-            byte old = bytes.get(0);
-            for (int pix = 0; pix < bytes.size(); pix++)
-            {
-              if (bytes.get(pix) != old)
-              {
-                if (old == 0)
-                {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                else
-                {
-                  line(out, lineStart.x + pix - 1, lineStart.y, prop.getPower() * (0xFF & old) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            line(out, lineStart.x + bytes.size() - 1, lineStart.y, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
+            motion.moveto(Math.max(0, (int) (first - space)), y);
+            RasterRunWriter.writeRight(motion, runs, rasterStart.x, y, prop);
             //add some space to the right
-            move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+            motion.moveto(Math.min(maxX, (int) (last + space)), y);
           }
           else
           {
             //add some space to the right
-            move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
-            //move to the last nonempty point of the line
-            move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-            byte old = bytes.get(bytes.size() - 1);
-            for (int pix = bytes.size() - 1; pix >= 0; pix--)
-            {
-              if (bytes.get(pix) != old || pix == 0)
-              {
-                if (old == 0)
-                {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                else
-                {
-                  line(out, lineStart.x + pix + 1, lineStart.y, prop.getPower() * (0xFF & old) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            line(out, lineStart.x, lineStart.y, prop.getPower() * (0xFF & bytes.get(0)) / 255, prop.getSpeed(), prop.getFrequency(), resolution);
+            motion.moveto(Math.min(maxX, (int) (last + space)), y);
+            RasterRunWriter.writeLeft(motion, runs, rasterStart.x, y, prop);
             //add some space to the left
-            move(out, Math.max(0, (int) (lineStart.x-Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+            motion.moveto(Math.max(0, (int) (first - space)), y);
           }
         }
         dirRight = !dirRight;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    out.flush();
   }
 
-  private byte[] generateInitializationCode() throws UnsupportedEncodingException
+  private void generateInitializationCode(OutputStream target) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    AsciiCommandWriter out = new AsciiCommandWriter(target);
     if (!this.isSimpleMode())
     {
       out.print("G28\n");//move to origin
@@ -531,90 +638,269 @@ public class LaosCutter extends LaserCutter
       out.print("M106\n");//ventilaton on
       out.print("M151 100\n");//air pressure on
     }
-    return result.toByteArray();
+    out.flush();
   }
 
-  private byte[] generateShutdownCode() throws UnsupportedEncodingException
+  private void generateShutdownCode(OutputStream target) throws IOException
   {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    AsciiCommandWriter out = new AsciiCommandWriter(target);
     //back to origin and shutdown
     if (this.isSimpleMode())
     {
       //out.printf("0 0 0\n");
       //Set focus to 0
-      out.printf(Locale.US, "2 %d\n", 0);
+      out.print("2 0\n");
     }
     else
     {
-      out.printf(Locale.US, "G0 X%f Y%f\n", 0, 0);
+      out.print("G0 X");
+      out.printFixed(0, GCODE_DECIMALS);
+      out.print(" Y");
+      out.printFixed(0, GCODE_DECIMALS);
+      out.print('\n');
       out.print("G28\n");
       out.print("M107\n");
       out.print("M151 0\n");
       out.print("M0\n");
       //TODO: Set focus to 0 in GCod??
     }
-    return result.toByteArray();
+    out.flush();
   }
 
-  @Override
-  public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  /**
+   * Keeps a job in memory until it is sent by TFTP and
+   * reads it back without copying it
+   */
+  private static class JobBuffer extends ByteArrayOutputStream
   {
-    pl.progressChanged(this, 0);
-    this.currentFrequency = -1;
-    this.currentPower = -1;
-    this.currentSpeed = -1;
-    BufferedOutputStream out;
-    ByteArrayOutputStream buffer = null;
-    pl.taskChanged(this, "checking job");
-    checkJob(job);
-    if (!useTftp)
+
+    InputStream getInputStream()
     {
-      pl.taskChanged(this, "connecting");
-      Socket connection = new Socket();
-      connection.connect(new InetSocketAddress(hostname, port), 3000);
-      out = new BufferedOutputStream(connection.getOutputStream());
-      pl.taskChanged(this, "sending");
+      return new ByteArrayInputStream(buf, 0, count);
     }
-    else
+  }
+
+  /**
+   * A job with its generated code, which is either kept
+   * in memory or in a spool file
+   */
+  private static class LaosJob extends PreparedJob
+  {
+
+    private JobBuffer buffer = null;
+    private SpoolFile spool = null;
+
+    LaosJob(LaserJob job)
     {
-      buffer = new ByteArrayOutputStream();
-      out = new BufferedOutputStream(buffer);
-      pl.taskChanged(this, "buffering");
+      super(job);
+    }
+
+    @Override
+    public void close()
+    {
+      if (spool != null)
+      {
+        spool.delete();
+      }
     }
-    out.write(this.generateInitializationCode());
+  }
+
+  private void writeJob(OutputStream out, LaserJob job, ProgressListener pl) throws IOException
+  {
+    this.currentFrequency = -1;
+    this.currentPower = -1;
+    this.currentSpeed = -1;
+    this.generateInitializationCode(out);
     pl.progressChanged(this, 20);
     if (job.contains3dRaster())
     {
-      out.write(this.generatePseudoRaster3dGCode(job.getRaster3dPart(), job.getResolution()));
+      this.generatePseudoRaster3dGCode(out, job.getRaster3dPart(), job.getResolution());
     }
     pl.progressChanged(this, 40);
     if (job.containsRaster())
     {
-      out.write(this.generatePseudoRasterGCode(job.getRasterPart(), job.getResolution()));
+      this.generatePseudoRasterGCode(out, job.getRasterPart(), job.getResolution());
     }
     pl.progressChanged(this, 60);
     if (job.containsVector())
     {
-      out.write(this.generateVectorGCode(job.getVectorPart(), job.getResolution()));
+      this.generateVectorGCode(out, job.getVectorPart(), job.getResolution());
     }
     pl.progressChanged(this, 80);
-    out.write(this.generateShutdownCode());
-    out.close();
-    if (this.isUseTftp())
+    this.generateShutdownCode(out);
+  }
+
+  /**
+   * Opens a TCP connection to the Lasercutter. It is opened through a
+   * channel, so a spool file can be sent with transferTo
+   */
+  private SocketChannel connect() throws IOException
+  {
+    SocketChannel channel = SocketChannel.open();
+    registerResource(channel);
+    try
+    {
+      channel.socket().connect(new InetSocketAddress(hostname, port), 3000);
+    }
+    catch (IOException e)
+    {
+      unregisterResource(channel);
+      channel.close();
+      throw e;
+    }
+    return channel;
+  }
+
+  /**
+   * Generates the code of the job into a spool file (if useSpoolFile
+   * is set) or memory, so sendPreparedJob only transmits it
+   */
+  @Override
+  public PreparedJob prepareJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    checkJob(job);
+    LaosJob result = new LaosJob(job);
+    OutputStream out;
+    if (useSpoolFile)
+    {
+      result.spool = new SpoolFile(spoolDirectory);
+      out = result.spool.getOutputStream();
+      pl.taskChanged(this, "spooling");
+    }
+    else
+    {
+      result.buffer = new JobBuffer();
+      out = new BufferedOutputStream(result.buffer);
+      pl.taskChanged(this, "buffering");
+    }
+    boolean generated = false;
+    try
+    {
+      this.writeJob(out, job, pl);
+      out.flush();
+      generated = true;
+    }
+    finally
+    {
+      if (!generated)
+      {
+        result.close();
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void sendPreparedJob(PreparedJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    if (!(job instanceof LaosJob))
+    {
+      super.sendPreparedJob(job, pl);
+      return;
+    }
+    LaosJob prepared = (LaosJob) job;
+    Closeable connection = null;
+    try
     {
       pl.taskChanged(this, "connecting");
-      TFTPClient tftp = new TFTPClient();
-      tftp.setDefaultTimeout(5000);
-      //open a local UDP socket
-      tftp.open();
+      if (!this.isUseTftp())
+      {
+        SocketChannel channel = connect();
+        connection = channel;
+        pl.taskChanged(this, "sending");
+        if (prepared.spool != null)
+        {
+          prepared.spool.transferTo(channel);
+        }
+        else
+        {
+          prepared.buffer.writeTo(channel.socket().getOutputStream());
+        }
+      }
+      else
+      {
+        final TFTPClient tftp = new TFTPClient();
+        tftp.setDefaultTimeout(5000);
+        //open a local UDP socket
+        tftp.open();
+        connection = new Closeable()
+        {
+
+          public void close()
+          {
+            tftp.close();
+          }
+        };
+        registerResource(connection);
+        pl.taskChanged(this, "sending");
+        InputStream in = prepared.spool != null ? prepared.spool.getInputStream() : prepared.buffer.getInputStream();
+        tftp.sendFile(job.getJob().getName().replace(" ", "") +".lgc", TFTP.BINARY_MODE, in, this.getHostname(), this.getPort());
+        in.close();
+      }
+      pl.taskChanged(this, "sent.");
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        unregisterResource(connection);
+        try
+        {
+          connection.close();
+        }
+        catch (IOException e)
+        {
+          //it was already closed
+        }
+      }
+    }
+    pl.progressChanged(this, 100);
+  }
+
+  @Override
+  public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+  {
+    if (useSpoolFile || useTftp)
+    {
+      PreparedJob prepared = prepareJob(job, pl);
+      try
+      {
+        sendPreparedJob(prepared, pl);
+      }
+      finally
+      {
+        prepared.close();
+      }
+      return;
+    }
+    //stream the code directly to the Lasercutter
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    checkJob(job);
+    pl.taskChanged(this, "connecting");
+    SocketChannel channel = connect();
+    try
+    {
+      OutputStream out = new BufferedOutputStream(channel.socket().getOutputStream());
       pl.taskChanged(this, "sending");
-      ByteArrayInputStream bain = new ByteArrayInputStream(buffer.toByteArray());
-      tftp.sendFile(job.getName().replace(" ", "") +".lgc", TFTP.BINARY_MODE, bain, this.getHostname(), this.getPort());
-      tftp.close();
-      bain.close();
+      this.writeJob(out, job, pl);
+      out.flush();
       pl.taskChanged(this, "sent.");
     }
+    finally
+    {
+      unregisterResource(channel);
+      try
+      {
+        channel.close();
+      }
+      catch (IOException e)
+      {
+        //it was already closed
+      }
+    }
     pl.progressChanged(this, 100);
   }
   private List<Integer> resolutions;
@@ -694,6 +980,8 @@ public class LaosCutter extends LaserCutter
       settingAttributes.add(SETTING_MMPERSTEP);
       settingAttributes.add(SETTING_TFTP);
       settingAttributes.add(SETTING_RASTER_WHITESPACE);
+      settingAttributes.add(SETTING_SPOOL);
+      settingAttributes.add(SETTING_ARC_TOLERANCE);
     }
     return settingAttributes;
   }
@@ -737,6 +1025,14 @@ public class LaosCutter extends LaserCutter
     {
       return this.isUseTftp() ? "yes" : "no";
     }
+    else if (SETTING_SPOOL.equals(attribute))
+    {
+      return this.isUseSpoolFile() ? "yes" : "no";
+    }
+    else if (SETTING_ARC_TOLERANCE.equals(attribute))
+    {
+      return "" + this.getArcTolerance();
+    }
     return null;
   }
 
@@ -775,6 +1071,14 @@ public class LaosCutter extends LaserCutter
     {
       this.setMmPerStep(Double.parseDouble(value));
     }
+    else if (SETTING_SPOOL.equals(attribute))
+    {
+      this.setUseSpoolFile("yes".equals(value));
+    }
+    else if (SETTING_ARC_TOLERANCE.equals(attribute))
+    {
+      this.setArcTolerance(Double.parseDouble(value));
+    }
     else if (SETTING_TFTP.contains(attribute))
     {
       this.setUseTftp("yes".equals(value));
@@ -800,6 +1104,9 @@ public class LaosCutter extends LaserCutter
     clone.mmPerStep = mmPerStep;
     clone.useTftp = useTftp;
     clone.addSpacePerRasterLine = addSpacePerRasterLine;
+    clone.useSpoolFile = useSpoolFile;
+    clone.spoolDirectory = spoolDirectory;
+    clone.arcTolerance = arcTolerance;
     return clone;
   }
 }
@@ -21,10 +21,13 @@ package com.t_oster.liblasercut.drivers;
 import com.t_oster.liblasercut.*;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.PeepholeOptimizer;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 import purejavacomm.CommPort;
 import purejavacomm.CommPortIdentifier;
@@ -46,6 +49,8 @@ public class Lasersaur extends LaserCutter {
   private static final String SETTING_RASTER_WHITESPACE = "Additional space per Raster line (mm)";
   private static final String SETTING_SEEK_RATE = "Max. Seek Rate (mm/min)";
   private static final String SETTING_LASER_RATE = "Max. Laser Rate (mm/min)";
+  private static final String SETTING_SPOOL = "Spool jobs to disk (yes/no)";
+  private static final String SETTING_ARC_TOLERANCE = "Arc tolerance for G2/G3 in mm (0 = off)";
 
   @Override
   public String getModelName() {
@@ -108,6 +113,68 @@ public class Lasersaur extends LaserCutter {
   public void setLaserRate(double laserRate) {
     this.laserRate = laserRate;
   }
+  private double arcTolerance = 0;
+
+  /**
+   * Get the value of arcTolerance
+   *
+   * @return the value of arcTolerance
+   */
+  public double getArcTolerance() {
+    return arcTolerance;
+  }
+
+  /**
+   * Set the value of arcTolerance
+   * If it is bigger than 0, lines lying on a circular arc within
+   * this distance (in mm) are sent as one G2/G3 command.
+   *
+   * @param arcTolerance new value of arcTolerance
+   */
+  public void setArcTolerance(double arcTolerance) {
+    this.arcTolerance = arcTolerance;
+  }
+  private boolean useSpoolFile = false;
+
+  /**
+   * Get the value of useSpoolFile
+   *
+   * @return the value of useSpoolFile
+   */
+  public boolean isUseSpoolFile() {
+    return useSpoolFile;
+  }
+
+  /**
+   * Set the value of useSpoolFile
+   * If true, the complete job is written to a temporary file
+   * before the serial port is opened
+   *
+   * @param useSpoolFile new value of useSpoolFile
+   */
+  public void setUseSpoolFile(boolean useSpoolFile) {
+    this.useSpoolFile = useSpoolFile;
+  }
+  private File spoolDirectory = null;
+
+  /**
+   * Get the value of spoolDirectory
+   *
+   * @return the value of spoolDirectory
+   */
+  public File getSpoolDirectory() {
+    return spoolDirectory;
+  }
+
+  /**
+   * Set the value of spoolDirectory
+   *
+   * @param spoolDirectory new value of spoolDirectory.
+   * null means the default temporary directory
+   */
+  public void setSpoolDirectory(File spoolDirectory) {
+    this.spoolDirectory = spoolDirectory;
+  }
   protected boolean flipXaxis = false;
 
   /**
@@ -146,247 +213,324 @@ public class Lasersaur extends LaserCutter {
   public void setComPort(String comPort) {
     this.comPort = comPort;
   }
+  private Transport.Factory transport = null;
+
+  /**
+   * Get the value of transport
+   *
+   * @return the value of transport
+   */
+  public Transport.Factory getTransport() {
+    return transport;
+  }
+
+  /**
+   * Set the value of transport
+   * If it is not null, jobs are sent through the Transports it opens
+   * instead of the serial port given by comPort
+   *
+   * @param transport new value of transport
+   */
+  public void setTransport(Transport.Factory transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Number of decimals of the coordinates
+   */
+  private static final int GCODE_DECIMALS = 6;
+
+  /**
+   * Creates a writer, which converts pixel coordinates
+   * of the given resolution to mm
+   */
+  private AsciiCommandWriter createWriter(OutputStream out, int resolution) {
+    AsciiCommandWriter result = new AsciiCommandWriter(out);
+    result.setTransform(resolution, 1, GCODE_DECIMALS, true, isFlipXaxis(), bedWidth);
+    return result;
+  }
+
+  /**
+   * Encodes the optimized motion commands. Lines are passed
+   * through an ArcFitter, if arcs are enabled
+   */
+  private class MotionTarget implements PeepholeOptimizer.Target {
+
+    private AsciiCommandWriter out;
+    private ArcFitter arcs = null;
+
+    MotionTarget(final AsciiCommandWriter out, int resolution, double arcTolerance) {
+      this.out = out;
+      if (arcTolerance > 0) {
+        arcs = new ArcFitter(new ArcFitter.Target() {
+          public void lineto(int x, int y) throws IOException {
+            line(out, x, y);
+          }
+
+          public void arcto(int x, int y, double i, double j, boolean counterClockwise) throws IOException {
+            arc(out, x, y, i, j, counterClockwise);
+          }
+        }, Util.mm2px(arcTolerance, resolution));
+      }
+    }
 
-  private byte[] generateVectorGCode(VectorPart vp, int resolution) throws UnsupportedEncodingException {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-    for (VectorCommand cmd : vp.getCommandList()) {
+    public void moveto(int x, int y) throws IOException {
+      if (arcs != null) {
+        arcs.moveto(x, y);
+      }
+      move(out, x, y);
+    }
+
+    public void lineto(int x, int y) throws IOException {
+      if (arcs != null) {
+        arcs.lineto(x, y);
+      } else {
+        line(out, x, y);
+      }
+    }
+
+    public void setPower(int power) throws IOException {
+      flush();
+      Lasersaur.this.setPower(out, power);
+    }
+
+    public void setSpeed(int speed) throws IOException {
+      flush();
+      Lasersaur.this.setSpeed(out, speed);
+    }
+
+    public void setFrequency(int frequency) {
+    }
+
+    public void setFocus(float focus) {
+    }
+
+    /**
+     * Writes the lines still held back by the ArcFitter
+     */
+    public void flush() throws IOException {
+      if (arcs != null) {
+        arcs.flush();
+      }
+    }
+  }
+
+  private void generateVectorGCode(OutputStream target, VectorPart vp, int resolution) throws IOException {
+    AsciiCommandWriter out = createWriter(target, resolution);
+    MotionTarget motionTarget = new MotionTarget(out, resolution, arcTolerance);
+    PeepholeOptimizer motion = new PeepholeOptimizer(motionTarget);
+    VectorCommandCursor cmd = vp.getCommandCursor();
+    while (cmd.next()) {
       switch (cmd.getType()) {
         case MOVETO:
-          int x = cmd.getX();
-          int y = cmd.getY();
-          move(out, x, y, resolution);
+          checkCancelled();
+          motion.moveto(cmd.getX(), cmd.getY());
           break;
         case LINETO:
-          x = cmd.getX();
-          y = cmd.getY();
-          line(out, x, y, resolution);
+          motion.lineto(cmd.getX(), cmd.getY());
           break;
         case SETPOWER:
-          setPower(out, cmd.getPower());
+          motion.setPower(cmd.getPower());
           break;
         case SETFOCUS:
-          float focus = cmd.getFocus();
+          motion.setFocus(cmd.getFocus());
           break;
         case SETSPEED:
-          int speed = cmd.getSpeed();
-          setSpeed(out, speed);
+          motion.setSpeed(cmd.getSpeed());
           break;
         case SETFREQUENCY:
-          int frequency = cmd.getFrequency();
+          motion.setFrequency(cmd.getFrequency());
           break;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    motionTarget.flush();
+    out.flush();
   }
   private int currentPower = -1;
   private int currentSpeed = -1;
 
-  private void setSpeed(PrintStream out, int speedInPercent) {
+  private void setSpeed(AsciiCommandWriter out, int speedInPercent) throws IOException {
     if (speedInPercent != currentSpeed) {
-      out.printf(Locale.US, "G1 F%i\n", (int) ((double) speedInPercent * this.getLaserRate() / 100));
+      out.print("G1 F");
+      out.print((int) ((double) speedInPercent * this.getLaserRate() / 100));
+      out.print('\n');
       currentSpeed = speedInPercent;
     }
 
   }
 
-  private void setPower(PrintStream out, int powerInPercent) {
+  private void setPower(AsciiCommandWriter out, int powerInPercent) throws IOException {
     if (powerInPercent != currentPower) {
-      out.printf(Locale.US, "S%i\n", (int) (255d * powerInPercent / 100));
+      out.print('S');
+      out.print((int) (255d * powerInPercent / 100));
+      out.print('\n');
       currentPower = powerInPercent;
     }
   }
 
-  private void move(PrintStream out, int x, int y, double resolution) {
-    out.printf(Locale.US, "G0 X%f Y%f\n", Util.px2mm(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), Util.px2mm(y, resolution));
+  private void move(AsciiCommandWriter out, int x, int y) throws IOException {
+    out.print("G0 X");
+    out.printX(x);
+    out.print(" Y");
+    out.printY(y);
+    out.print('\n');
+  }
+
+  private void line(AsciiCommandWriter out, int x, int y) throws IOException {
+    out.print("G1 X");
+    out.printX(x);
+    out.print(" Y");
+    out.printY(y);
+    out.print('\n');
   }
 
-  private void line(PrintStream out, int x, int y, double resolution) {
-    out.printf(Locale.US, "G1 X%f Y%f\n", Util.px2mm(isFlipXaxis() ? Util.mm2px(bedWidth, resolution) - x : x, resolution), Util.px2mm(y, resolution));
+  private void arc(AsciiCommandWriter out, int x, int y, double i, double j, boolean counterClockwise) throws IOException {
+    //mirroring the x axis changes the direction
+    out.print(counterClockwise != out.isFlipX() ? "G3 X" : "G2 X");
+    out.printX(x);
+    out.print(" Y");
+    out.printY(y);
+    out.print(" I");
+    out.printOffsetX(i);
+    out.print(" J");
+    out.printOffsetY(j);
+    out.print('\n');
   }
 
-  private byte[] generatePseudoRaster3dGCode(Raster3dPart rp, int resolution) throws UnsupportedEncodingException {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+  private void generatePseudoRaster3dGCode(OutputStream target, Raster3dPart rp, int resolution) throws IOException {
+    AsciiCommandWriter out = createWriter(target, resolution);
+    PeepholeOptimizer motion = new PeepholeOptimizer(new MotionTarget(out, resolution, 0));
+    //keep the run-up moves around the lines
+    motion.setKeepRunUps(true);
     boolean dirRight = true;
+    RasterLine rasterLine = new RasterLine();
+    RasterRuns runs = new RasterRuns();
     for (int raster = 0; raster < rp.getRasterCount(); raster++) {
       Point rasterStart = rp.getRasterStart(raster);
       LaserProperty prop = rp.getLaserProperty(raster);
-      setSpeed(out, prop.getSpeed());
+      motion.setSpeed(prop.getSpeed());
       for (int line = 0; line < rp.getRasterHeight(raster); line++) {
-        Point lineStart = rasterStart.clone();
-        lineStart.y += line;
-        List<Byte> bytes = rp.getRasterLine(raster, line);
-        //remove heading zeroes
-        while (bytes.size() > 0 && bytes.get(0) == 0) {
-          bytes.remove(0);
-          lineStart.x += 1;
-        }
-        //remove trailing zeroes
-        while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-          bytes.remove(bytes.size() - 1);
-        }
-        if (bytes.size() > 0) {
+        checkCancelled();
+        rp.getRasterLine(raster, line, rasterLine);
+        runs.extract(rasterLine);
+        if (!runs.isEmpty()) {
           if (dirRight) {
-            //move to the first nonempyt point of the line
-            move(out, lineStart.x, lineStart.y, resolution);
-            byte old = bytes.get(0);
-            for (int pix = 0; pix < bytes.size(); pix++) {
-              if (bytes.get(pix) != old) {
-                if (old == 0) {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                } else {
-                  setPower(out, prop.getPower() * (0xFF & old) / 255);
-                  line(out, lineStart.x + pix - 1, lineStart.y, resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-            line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+            RasterRunWriter.writeRight(motion, runs, rasterStart.x, rasterStart.y + line, prop);
           } else {
-            //move to the last nonempty point of the line
-            move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-            byte old = bytes.get(bytes.size() - 1);
-            for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-              if (bytes.get(pix) != old || pix == 0) {
-                if (old == 0) {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                } else {
-                  setPower(out, prop.getPower() * (0xFF & old) / 255);
-                  line(out, lineStart.x + pix + 1, lineStart.y, resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
-            line(out, lineStart.x, lineStart.y, resolution);
+            RasterRunWriter.writeLeft(motion, runs, rasterStart.x, rasterStart.y + line, prop);
           }
         }
         dirRight = !dirRight;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    out.flush();
   }
 
-  private byte[] generatePseudoRasterGCode(RasterPart rp, int resolution) throws UnsupportedEncodingException {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+  private void generatePseudoRasterGCode(OutputStream target, RasterPart rp, int resolution) throws IOException {
+    AsciiCommandWriter out = createWriter(target, resolution);
+    PeepholeOptimizer motion = new PeepholeOptimizer(new MotionTarget(out, resolution, 0));
+    //keep the run-up moves around the lines
+    motion.setKeepRunUps(true);
     boolean dirRight = true;
+    RasterRuns runs = new RasterRuns();
+    double space = Util.mm2px(this.addSpacePerRasterLine, resolution);
+    int maxX = (int) Util.mm2px(bedWidth, resolution);
     for (int raster = 0; raster < rp.getRasterCount(); raster++) {
+      BlackWhiteRaster bwr = rp.getImages()[raster];
       Point rasterStart = rp.getRasterStart(raster);
       LaserProperty prop = rp.getLaserProperty(raster);
-      setSpeed(out, prop.getSpeed());
-      setPower(out, prop.getPower());
+      motion.setSpeed(prop.getSpeed());
+      motion.setPower(prop.getPower());
       for (int line = 0; line < rp.getRasterHeight(raster); line++) {
-        Point lineStart = rasterStart.clone();
-        lineStart.y += line;
-        //Convert BlackWhite line into line of 0 and 255 bytes
-        BlackWhiteRaster bwr = rp.getImages()[raster];
-        List<Byte> bytes = new LinkedList<Byte>();
-        boolean lookForStart = true;
-        for (int x = 0; x < bwr.getWidth(); x++) {
-          if (lookForStart) {
-            if (bwr.isBlack(x, line)) {
-              lookForStart = false;
-              bytes.add((byte) 255);
-            } else {
-              lineStart.x += 1;
-            }
-          } else {
-            bytes.add(bwr.isBlack(x, line) ? (byte) 255 : (byte) 0);
-          }
-        }
-        //remove trailing zeroes
-        while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-          bytes.remove(bytes.size() - 1);
-        }
-        if (bytes.size() > 0) {
+        checkCancelled();
+        int y = rasterStart.y + line;
+        runs.extract(bwr, line);
+        if (!runs.isEmpty()) {
+          int first = rasterStart.x + runs.getStart(0);
+          int last = rasterStart.x + runs.getEnd(runs.getCount() - 1) - 1;
           if (dirRight) {
             //add some space to the left
-            move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
-            //move to the first nonempyt point of the line
-            move(out, lineStart.x, lineStart.y, resolution);
-            byte old = bytes.get(0);
-            for (int pix = 0; pix < bytes.size(); pix++) {
-              if (bytes.get(pix) != old) {
-                if (old == 0) {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                } else {
-                  setPower(out, prop.getPower() * (0xFF & old) / 255);
-                  line(out, lineStart.x + pix - 1, lineStart.y, resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-            line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+            motion.moveto(Math.max(0, (int) (first - space)), y);
+            RasterRunWriter.writeRight(motion, runs, rasterStart.x, y, prop);
             //add some space to the right
-            move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+            motion.moveto(Math.min(maxX, (int) (last + space)), y);
           } else {
             //add some space to the right
-            move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
-            //move to the last nonempty point of the line
-            move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-            byte old = bytes.get(bytes.size() - 1);
-            for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-              if (bytes.get(pix) != old || pix == 0) {
-                if (old == 0) {
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                } else {
-                  setPower(out, prop.getPower() * (0xFF & old) / 255);
-                  line(out, lineStart.x + pix + 1, lineStart.y, resolution);
-                  move(out, lineStart.x + pix, lineStart.y, resolution);
-                }
-                old = bytes.get(pix);
-              }
-            }
-            //last point is also not "white"
-            setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
-            line(out, lineStart.x, lineStart.y, resolution);
+            motion.moveto(Math.min(maxX, (int) (last + space)), y);
+            RasterRunWriter.writeLeft(motion, runs, rasterStart.x, y, prop);
             //add some space to the left
-            move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+            motion.moveto(Math.max(0, (int) (first - space)), y);
           }
         }
         dirRight = !dirRight;
       }
     }
-    return result.toByteArray();
+    motion.flush();
+    out.flush();
   }
 
-  private byte[] generateInitializationCode() throws UnsupportedEncodingException {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+  private void generateInitializationCode(OutputStream target) throws IOException {
+    AsciiCommandWriter out = new AsciiCommandWriter(target);
     out.print("G54\n");//use table offset
     out.print("G21\n");//units to mm
     out.print("G90\n");//following coordinates are absolute
     out.print("G0 X0 Y0\n");//move to 0 0
-    return result.toByteArray();
+    out.flush();
   }
 
-  private byte[] generateShutdownCode() throws UnsupportedEncodingException {
-    ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+  private void generateShutdownCode(OutputStream target) throws IOException {
+    AsciiCommandWriter out = new AsciiCommandWriter(target);
     //back to origin and shutdown
     out.print("G0 X0 Y0\n");//move to 0 0
-    return result.toByteArray();
+    out.flush();
   }
 
-  @Override
-  public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception {
-    pl.progressChanged(this, 0);
+  private void writeJob(OutputStream out, LaserJob job, ProgressListener pl) throws IOException {
     this.currentPower = -1;
     this.currentSpeed = -1;
-    BufferedOutputStream out;
-    pl.taskChanged(this, "checking job");
-    checkJob(job);
-    pl.taskChanged(this, "connecting");
+    this.generateInitializationCode(out);
+    pl.progressChanged(this, 20);
+    if (job.contains3dRaster()) {
+      this.generatePseudoRaster3dGCode(out, job.getRaster3dPart(), job.getResolution());
+    }
+    pl.progressChanged(this, 40);
+    if (job.containsRaster()) {
+      this.generatePseudoRasterGCode(out, job.getRasterPart(), job.getResolution());
+    }
+    pl.progressChanged(this, 60);
+    if (job.containsVector()) {
+      this.generateVectorGCode(out, job.getVectorPart(), job.getResolution());
+    }
+    pl.progressChanged(this, 80);
+    this.generateShutdownCode(out);
+  }
+
+  /**
+   * Opens the configured transport or the serial port
+   */
+  private Transport openTransport() throws Exception {
+    if (transport != null) {
+      return transport.open();
+    }
+    final SerialPort port = openPort();
+    return new Transport() {
+      public InputStream getInputStream() throws IOException {
+        return port.getInputStream();
+      }
+
+      public OutputStream getOutputStream() throws IOException {
+        return port.getOutputStream();
+      }
+
+      public void close() {
+        port.close();
+      }
+    };
+  }
+
+  private SerialPort openPort() throws Exception {
     CommPortIdentifier cpi = null;
     //since the CommPortIdentifier.getPortIdentifier(String name) method
     //is not working as expected, we have to manually find our port.
@@ -416,25 +560,117 @@ public class Lasersaur extends LaserCutter {
     SerialPort port = (SerialPort) tmp;
     port.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
     port.setSerialPortParams(9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-    out = new BufferedOutputStream(port.getOutputStream());
-    pl.taskChanged(this, "sending");
-    out.write(this.generateInitializationCode());
-    pl.progressChanged(this, 20);
-    if (job.contains3dRaster()) {
-      out.write(this.generatePseudoRaster3dGCode(job.getRaster3dPart(), job.getResolution()));
+    return port;
+  }
+
+  /**
+   * A job with its generated GCode, which is either kept
+   * in memory or in a spool file
+   */
+  private static class LasersaurJob extends PreparedJob {
+
+    private ByteArrayOutputStream data = null;
+    private SpoolFile spool = null;
+
+    LasersaurJob(LaserJob job) {
+      super(job);
     }
-    pl.progressChanged(this, 40);
-    if (job.containsRaster()) {
-      out.write(this.generatePseudoRasterGCode(job.getRasterPart(), job.getResolution()));
+
+    @Override
+    public void close() {
+      if (spool != null) {
+        spool.delete();
+      }
     }
-    pl.progressChanged(this, 60);
-    if (job.containsVector()) {
-      out.write(this.generateVectorGCode(job.getVectorPart(), job.getResolution()));
+  }
+
+  /**
+   * Generates the GCode of the job into a spool file (if useSpoolFile
+   * is set) or memory, so sendPreparedJob only transmits it
+   */
+  @Override
+  public PreparedJob prepareJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception {
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    checkJob(job);
+    LasersaurJob result = new LasersaurJob(job);
+    OutputStream out;
+    if (useSpoolFile) {
+      result.spool = new SpoolFile(spoolDirectory);
+      out = result.spool.getOutputStream();
+      pl.taskChanged(this, "spooling");
+    } else {
+      result.data = new ByteArrayOutputStream();
+      out = new BufferedOutputStream(result.data);
+      pl.taskChanged(this, "buffering");
+    }
+    boolean generated = false;
+    try {
+      writeJob(out, job, pl);
+      out.flush();
+      generated = true;
+    } finally {
+      if (!generated) {
+        result.close();
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void sendPreparedJob(PreparedJob job, ProgressListener pl) throws IllegalJobException, Exception {
+    if (!(job instanceof LasersaurJob)) {
+      super.sendPreparedJob(job, pl);
+      return;
+    }
+    LasersaurJob prepared = (LasersaurJob) job;
+    pl.taskChanged(this, "connecting");
+    Transport connection = openTransport();
+    registerResource(connection);
+    try {
+      BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
+      pl.taskChanged(this, "sending");
+      if (prepared.spool != null) {
+        prepared.spool.transferTo(out);
+      } else {
+        prepared.data.writeTo(out);
+      }
+      out.close();
+    } finally {
+      unregisterResource(connection);
+      connection.close();
+    }
+    pl.taskChanged(this, "sent.");
+    pl.progressChanged(this, 100);
+  }
+
+  @Override
+  public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception {
+    if (useSpoolFile) {
+      //generate the complete job before the port is opened
+      PreparedJob prepared = prepareJob(job, pl);
+      try {
+        sendPreparedJob(prepared, pl);
+      } finally {
+        prepared.close();
+      }
+      return;
+    }
+    pl.progressChanged(this, 0);
+    pl.taskChanged(this, "checking job");
+    checkJob(job);
+    pl.taskChanged(this, "connecting");
+    Transport connection = openTransport();
+    registerResource(connection);
+    try {
+      BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
+      pl.taskChanged(this, "sending");
+      writeJob(out, job, pl);
+      out.close();
+    } finally {
+      unregisterResource(connection);
+      connection.close();
     }
-    pl.progressChanged(this, 80);
-    out.write(this.generateShutdownCode());
-    out.close();
-    port.close();
     pl.taskChanged(this, "sent.");
     pl.progressChanged(this, 100);
   }
@@ -502,6 +738,8 @@ public class Lasersaur extends LaserCutter {
       settingAttributes.add(SETTING_LASER_RATE);
       settingAttributes.add(SETTING_SEEK_RATE);
       settingAttributes.add(SETTING_RASTER_WHITESPACE);
+      settingAttributes.add(SETTING_SPOOL);
+      settingAttributes.add(SETTING_ARC_TOLERANCE);
     }
     return settingAttributes;
   }
@@ -522,6 +760,10 @@ public class Lasersaur extends LaserCutter {
       return "" + this.getBedWidth();
     } else if (SETTING_BEDHEIGHT.equals(attribute)) {
       return "" + this.getBedHeight();
+    } else if (SETTING_SPOOL.equals(attribute)) {
+      return this.isUseSpoolFile() ? "yes" : "no";
+    } else if (SETTING_ARC_TOLERANCE.equals(attribute)) {
+      return "" + this.getArcTolerance();
     }
     return null;
   }
@@ -542,6 +784,10 @@ public class Lasersaur extends LaserCutter {
       this.setBedWidth(Double.parseDouble(value));
     } else if (SETTING_BEDHEIGHT.equals(attribute)) {
       this.setBedHeight(Double.parseDouble(value));
+    } else if (SETTING_SPOOL.equals(attribute)) {
+      this.setUseSpoolFile("yes".equals(value));
+    } else if (SETTING_ARC_TOLERANCE.equals(attribute)) {
+      this.setArcTolerance(Double.parseDouble(value));
     }
   }
 
@@ -560,6 +806,10 @@ public class Lasersaur extends LaserCutter {
     clone.bedWidth = bedWidth;
     clone.flipXaxis = flipXaxis;
     clone.addSpacePerRasterLine = addSpacePerRasterLine;
+    clone.useSpoolFile = useSpoolFile;
+    clone.spoolDirectory = spoolDirectory;
+    clone.arcTolerance = arcTolerance;
+    clone.transport = transport;
     return clone;
   }
 }
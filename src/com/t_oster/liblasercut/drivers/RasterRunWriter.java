@@ -0,0 +1,97 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.RasterRuns;
+import com.t_oster.liblasercut.vectoroptimizers.PeepholeOptimizer;
+import java.io.IOException;
+
+/**
+ * Engraves the runs of a raster line as moves and lines, which are
+ * shared by the GCode drivers. The power of each line is the power of
+ * the raster scaled by the value of its run.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class RasterRunWriter
+{
+
+  private RasterRunWriter()
+  {
+  }
+
+  /**
+   * Engraves the given runs from left to right
+   * @param motion the optimizer the commands are passed to
+   * @param runs the non-empty runs of the line
+   * @param x0 the x coordinate of the first pixel of the line
+   * @param y the y coordinate of the line
+   * @param prop the properties of the raster
+   */
+  static void writeRight(PeepholeOptimizer motion, RasterRuns runs, int x0, int y, LaserProperty prop) throws IOException
+  {
+    int last = runs.getCount() - 1;
+    //move to the first nonempyt point of the line
+    motion.moveto(x0 + runs.getStart(0), y);
+    for (int i = 0; i < last; i++)
+    {
+      int end = x0 + runs.getEnd(i);
+      if (runs.getValue(i) != 0)
+      {
+        motion.setPower(prop.getPower() * runs.getValue(i) / 255);
+        motion.lineto(end - 1, y);
+      }
+      motion.moveto(end, y);
+    }
+    //last point is also not "white"
+    motion.setPower(prop.getPower() * runs.getValue(last) / 255);
+    motion.lineto(x0 + runs.getEnd(last) - 1, y);
+  }
+
+  /**
+   * Engraves the given runs from right to left
+   * @see #writeRight
+   */
+  static void writeLeft(PeepholeOptimizer motion, RasterRuns runs, int x0, int y, LaserProperty prop) throws IOException
+  {
+    int last = runs.getCount() - 1;
+    int first = x0 + runs.getStart(0);
+    //move to the last nonempty point of the line
+    motion.moveto(x0 + runs.getEnd(last) - 1, y);
+    for (int i = last; i > 0; i--)
+    {
+      int start = x0 + runs.getStart(i);
+      if (runs.getValue(i) != 0)
+      {
+        motion.setPower(prop.getPower() * runs.getValue(i) / 255);
+        motion.lineto(start, y);
+      }
+      motion.moveto(start - 1, y);
+    }
+    motion.setPower(prop.getPower() * runs.getValue(0) / 255);
+    if (last == 0 || runs.getEnd(0) - runs.getStart(0) > 1)
+    {
+      motion.lineto(first + 1, y);
+      motion.moveto(first, y);
+    }
+    //last point is also not "white"
+    motion.lineto(first, y);
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A temporary file which holds the generated data of a job, so
+ * the data does not have to be kept in memory until it is sent.
+ * The data is written through a FileChannel and sent with
+ * FileChannel.transferTo, which avoids copying it through the heap
+ * when the target is a socket or file channel.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class SpoolFile
+{
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private File file;
+  private RandomAccessFile raf;
+  private OutputStream out;
+
+  /**
+   * Creates a new, empty spool file in the given directory.
+   * It is not deleted on exit, so the caller has to call delete
+   * when the file is no longer needed
+   * @param directory the directory or null for the default temporary directory
+   * @throws IOException 
+   */
+  public SpoolFile(File directory) throws IOException
+  {
+    file = File.createTempFile("liblasercut", ".spool", directory);
+    try
+    {
+      raf = new RandomAccessFile(file, "rw");
+    }
+    catch (IOException e)
+    {
+      file.delete();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the file the data is spooled to
+   */
+  public File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Returns a buffered stream which writes to the spool file
+   * @return 
+   */
+  public OutputStream getOutputStream()
+  {
+    if (out == null)
+    {
+      out = new BufferedOutputStream(Channels.newOutputStream(raf.getChannel()), BUFFER_SIZE);
+    }
+    return out;
+  }
+
+  /**
+   * Returns the number of bytes in the spool file. Data which
+   * is still buffered in the output stream is flushed first
+   */
+  public long length() throws IOException
+  {
+    if (out != null)
+    {
+      out.flush();
+    }
+    return raf.getChannel().size();
+  }
+
+  /**
+   * Sends the complete content of the spool file to the given channel
+   * @param target
+   * @throws IOException 
+   */
+  public void transferTo(WritableByteChannel target) throws IOException
+  {
+    FileChannel channel = raf.getChannel();
+    long size = length();
+    long position = 0;
+    while (position < size)
+    {
+      position += channel.transferTo(position, size - position, target);
+    }
+  }
+
+  /**
+   * Sends the complete content of the spool file to the given stream
+   * and flushes it. 
+   * @param target
+   * @throws IOException 
+   */
+  public void transferTo(OutputStream target) throws IOException
+  {
+    target.flush();
+    transferTo(Channels.newChannel(target));
+    target.flush();
+  }
+
+  /**
+   * Opens a new InputStream which reads the spool file from the beginning
+   * @return
+   * @throws IOException 
+   */
+  public InputStream getInputStream() throws IOException
+  {
+    length();
+    return new FileInputStream(file);
+  }
+
+  /**
+   * Closes and deletes the spool file
+   */
+  public void delete()
+  {
+    try
+    {
+      raf.close();
+    }
+    catch (IOException e)
+    {
+      //nothing we can do about it
+    }
+    file.delete();
+  }
+}
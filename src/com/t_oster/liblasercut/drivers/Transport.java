@@ -0,0 +1,59 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A bidirectional byte stream to a Lasercutter, e.g. an opened serial port.
+ * Drivers which talk to a stream instead of a network protocol send their
+ * jobs through a Transport, so the physical link can be replaced.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public interface Transport extends Closeable
+{
+
+  /**
+   * Opens new Transports to a Lasercutter
+   */
+  public interface Factory
+  {
+
+    /**
+     * Opens a new connection
+     * @return the opened Transport, which has to be closed by the caller
+     * @throws Exception if the connection could not be established
+     */
+    Transport open() throws Exception;
+  }
+
+  /**
+   * Returns the stream of data sent by the Lasercutter
+   */
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * Returns the stream of data sent to the Lasercutter
+   */
+  OutputStream getOutputStream() throws IOException;
+}
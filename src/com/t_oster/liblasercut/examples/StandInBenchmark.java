@@ -0,0 +1,147 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.examples;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.ProgressListener;
+import com.t_oster.liblasercut.RasterPart;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.drivers.EpilogZing;
+import com.t_oster.liblasercut.drivers.LaosCutter;
+import com.t_oster.liblasercut.drivers.Lasersaur;
+import com.t_oster.liblasercut.platform.Point;
+import com.t_oster.liblasercut.standin.LinkProfile;
+import com.t_oster.liblasercut.standin.LpdStandIn;
+import com.t_oster.liblasercut.standin.RawTcpStandIn;
+import com.t_oster.liblasercut.standin.ReceivedJob;
+import com.t_oster.liblasercut.standin.SerialStandIn;
+import com.t_oster.liblasercut.standin.StandIn;
+import com.t_oster.liblasercut.standin.TftpStandIn;
+import com.t_oster.liblasercut.utils.BufferedImageAdapter;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Sends jobs with every driver to its StandIn and prints the
+ * end-to-end throughput and latency.
+ *
+ * Usage: StandInBenchmark [jobs] [latency in ms] [bandwidth in bytes/s]
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class StandInBenchmark
+{
+
+  private static ProgressListener pl = new ProgressListener()
+  {
+    public void progressChanged(Object source, int percent)
+    {
+    }
+
+    public void taskChanged(Object source, String taskName)
+    {
+    }
+  };
+
+  private static LaserJob createJob(int number)
+  {
+    VectorPart vp = new VectorPart(new LaserProperty(50, 100, 5000));
+    for (int i = 0; i < 50; i++)
+    {
+      vp.moveto(100 + 20 * i, 100);
+      vp.lineto(100 + 20 * i, 2000);
+      vp.lineto(110 + 20 * i, 2000);
+    }
+    BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+    Graphics g = image.getGraphics();
+    for (int x = 0; x < 400; x++)
+    {
+      g.setColor(new Color(255 * x / 400, 255 * x / 400, 255 * x / 400));
+      g.drawLine(x, 0, x, 200);
+    }
+    RasterPart rp = new RasterPart(new LaserProperty(80, 100));
+    rp.addImage(new BlackWhiteRaster(new BufferedImageAdapter(image), BlackWhiteRaster.DitherAlgorithm.FLOYD_STEINBERG), new Point(100, 2200));
+    return new LaserJob("job" + number, "" + number, "benchmark", 500, null, vp, rp);
+  }
+
+  /**
+   * Sends the jobs one after another and prints the results
+   */
+  private static void run(String name, LaserCutter cutter, StandIn standIn, int jobs) throws Exception
+  {
+    long bytes = 0;
+    long latency = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < jobs; i++)
+    {
+      long sent = System.nanoTime();
+      cutter.sendJob(createJob(i), pl);
+      List<ReceivedJob> received = standIn.waitForJobs(i + 1, 60000);
+      if (received.size() <= i)
+      {
+        throw new Exception(name + ": job " + i + " was not received");
+      }
+      ReceivedJob job = received.get(i);
+      bytes += job.getLength();
+      latency += job.getEndTime() - sent;
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format("%-12s %4d jobs %10d bytes %10.1f kB/s %8.1f ms/job",
+      name, jobs, bytes, bytes / 1024.0 / seconds, latency / 1e6 / jobs));
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    LinkProfile profile = new LinkProfile();
+    profile.setLatency(args.length > 1 ? Integer.parseInt(args[1]) : 0);
+    profile.setBandwidth(args.length > 2 ? Long.parseLong(args[2]) : 0);
+
+    LpdStandIn lpd = new LpdStandIn(profile);
+    EpilogZing epilog = new EpilogZing(lpd.getHostname());
+    epilog.setPort(lpd.getPort());
+    run("Epilog LPD", epilog, lpd, jobs);
+    lpd.close();
+
+    RawTcpStandIn tcp = new RawTcpStandIn(profile);
+    LaosCutter laos = new LaosCutter();
+    laos.setHostname(tcp.getHostname());
+    laos.setPort(tcp.getPort());
+    laos.setUseTftp(false);
+    run("LAOS TCP", laos, tcp, jobs);
+    tcp.close();
+
+    TftpStandIn tftp = new TftpStandIn(profile);
+    laos.setPort(tftp.getPort());
+    laos.setUseTftp(true);
+    run("LAOS TFTP", laos, tftp, jobs);
+    tftp.close();
+
+    SerialStandIn serial = new SerialStandIn(profile);
+    Lasersaur lasersaur = new Lasersaur();
+    lasersaur.setTransport(serial);
+    run("Lasersaur", lasersaur, serial, jobs);
+    serial.close();
+  }
+}
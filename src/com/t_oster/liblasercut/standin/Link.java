@@ -0,0 +1,130 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * The state of one simulated connection. It delays the responses,
+ * limits the bandwidth and injects the faults of a LinkProfile.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class Link
+{
+
+  private LinkProfile profile;
+  private long start = 0;
+  private long bytes = 0;
+
+  Link(LinkProfile profile)
+  {
+    this.profile = profile;
+  }
+
+  /**
+   * Waits for the latency of the link
+   */
+  void delay() throws InterruptedIOException
+  {
+    sleep(profile.getLatency() * 1000000L);
+  }
+
+  /**
+   * Returns how many of the given bytes may be received at once
+   */
+  int limit(int length)
+  {
+    return profile.getBufferSize() > 0 ? Math.min(length, profile.getBufferSize()) : length;
+  }
+
+  /**
+   * Accounts for received bytes. Blocks until they fit into the
+   * bandwidth of the link.
+   * @throws IOException if the link is configured to fail at this point
+   */
+  void pass(int count) throws IOException
+  {
+    if (start == 0)
+    {
+      start = System.nanoTime();
+    }
+    bytes += count;
+    if (profile.getFailAfterBytes() >= 0 && bytes > profile.getFailAfterBytes())
+    {
+      throw new IOException("Injected fault after " + profile.getFailAfterBytes() + " bytes");
+    }
+    if (profile.getBandwidth() > 0)
+    {
+      //the sender may be one buffer ahead of the bandwidth
+      long due = (long) ((bytes - Math.max(0, profile.getBufferSize())) * 1e9 / profile.getBandwidth());
+      sleep(due - (System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Returns a stream which receives through this link
+   */
+  InputStream wrap(InputStream in)
+  {
+    return new FilterInputStream(in)
+    {
+      @Override
+      public int read() throws IOException
+      {
+        int result = super.read();
+        if (result >= 0)
+        {
+          pass(1);
+        }
+        return result;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+        int result = super.read(b, off, limit(len));
+        if (result > 0)
+        {
+          pass(result);
+        }
+        return result;
+      }
+    };
+  }
+
+  private static void sleep(long nanos) throws InterruptedIOException
+  {
+    if (nanos > 0)
+    {
+      try
+      {
+        Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+/**
+ * Describes the simulated link between a driver and a StandIn:
+ * its latency, bandwidth and buffer size, and the faults to inject.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class LinkProfile
+{
+
+  private int latency = 0;
+
+  /**
+   * Get the value of latency
+   *
+   * @return the value of latency
+   */
+  public int getLatency()
+  {
+    return latency;
+  }
+
+  /**
+   * Set the value of latency
+   * This is the delay in milliseconds before the stand-in accepts a
+   * connection and before each of its responses.
+   *
+   * @param latency new value of latency
+   */
+  public void setLatency(int latency)
+  {
+    this.latency = latency;
+  }
+  private long bandwidth = 0;
+
+  /**
+   * Get the value of bandwidth
+   *
+   * @return the value of bandwidth
+   */
+  public long getBandwidth()
+  {
+    return bandwidth;
+  }
+
+  /**
+   * Set the value of bandwidth
+   * This is the maximum number of bytes per second the stand-in receives,
+   * 0 means unlimited.
+   *
+   * @param bandwidth new value of bandwidth
+   */
+  public void setBandwidth(long bandwidth)
+  {
+    this.bandwidth = bandwidth;
+  }
+  private int bufferSize = 8192;
+
+  /**
+   * Get the value of bufferSize
+   *
+   * @return the value of bufferSize
+   */
+  public int getBufferSize()
+  {
+    return bufferSize;
+  }
+
+  /**
+   * Set the value of bufferSize
+   * This is the size of the receive buffer of the stand-in. Not more than
+   * this is read at once and the sender may run ahead of the bandwidth by
+   * this many bytes.
+   *
+   * @param bufferSize new value of bufferSize
+   */
+  public void setBufferSize(int bufferSize)
+  {
+    this.bufferSize = bufferSize;
+  }
+  private long failAfterBytes = -1;
+
+  /**
+   * Get the value of failAfterBytes
+   *
+   * @return the value of failAfterBytes
+   */
+  public long getFailAfterBytes()
+  {
+    return failAfterBytes;
+  }
+
+  /**
+   * Set the value of failAfterBytes
+   * If it is not negative, the stand-in breaks off each connection
+   * after receiving this many bytes on it.
+   *
+   * @param failAfterBytes new value of failAfterBytes
+   */
+  public void setFailAfterBytes(long failAfterBytes)
+  {
+    this.failAfterBytes = failAfterBytes;
+  }
+  private int closeAfterJobs = 0;
+
+  /**
+   * Get the value of closeAfterJobs
+   *
+   * @return the value of closeAfterJobs
+   */
+  public int getCloseAfterJobs()
+  {
+    return closeAfterJobs;
+  }
+
+  /**
+   * Set the value of closeAfterJobs
+   * If it is bigger than 0, the stand-in closes each connection after
+   * this many complete jobs, like a cutter which only accepts one job
+   * per connection.
+   *
+   * @param closeAfterJobs new value of closeAfterJobs
+   */
+  public void setCloseAfterJobs(int closeAfterJobs)
+  {
+    this.closeAfterJobs = closeAfterJobs;
+  }
+}
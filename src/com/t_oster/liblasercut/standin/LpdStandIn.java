@@ -0,0 +1,144 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A StandIn for an LPD (RFC 1179) printer queue like the one of Epilog
+ * cutters. It acknowledges every command and file with a 0 octet and
+ * accepts several jobs per connection. Each data file is recorded as
+ * one job, the control files are skipped.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class LpdStandIn extends TcpStandIn
+{
+
+  private static final int RECEIVE_CONTROL_FILE = 2;
+  private static final int RECEIVE_DATA_FILE = 3;
+
+  public LpdStandIn(LinkProfile profile) throws IOException
+  {
+    super(profile);
+    start();
+  }
+
+  public LpdStandIn() throws IOException
+  {
+    this(new LinkProfile());
+  }
+
+  @Override
+  void receive(Socket socket, Link link) throws IOException
+  {
+    InputStream in = link.wrap(new BufferedInputStream(socket.getInputStream()));
+    OutputStream out = socket.getOutputStream();
+    int jobs = 0;
+    long start = 0;
+    String line;
+    while ((line = readLine(in)) != null)
+    {
+      if (start == 0)
+      {
+        start = System.nanoTime();
+      }
+      int command = line.length() > 0 ? line.charAt(0) : -1;
+      int space = line.indexOf(' ');
+      if ((command == RECEIVE_CONTROL_FILE || command == RECEIVE_DATA_FILE) && space > 0)
+      {
+        //subcommand: <command><length> <name>, followed by the file
+        int length = Integer.parseInt(line.substring(1, space));
+        acknowledge(out, link);
+        byte[] data = new byte[length];
+        readFully(in, data);
+        if (command == RECEIVE_CONTROL_FILE)
+        {
+          //the control file is terminated by a 0 octet
+          if (in.read() < 0)
+          {
+            throw new EOFException();
+          }
+          acknowledge(out, link);
+        }
+        else
+        {
+          acknowledge(out, link);
+          received(new ReceivedJob(line.substring(space + 1), data, start, System.nanoTime()));
+          start = 0;
+          jobs++;
+          if (getProfile().getCloseAfterJobs() > 0 && jobs >= getProfile().getCloseAfterJobs())
+          {
+            return;
+          }
+        }
+      }
+      else
+      {
+        //receive job or any other command
+        acknowledge(out, link);
+      }
+    }
+  }
+
+  private void acknowledge(OutputStream out, Link link) throws IOException
+  {
+    link.delay();
+    out.write(0);
+    out.flush();
+  }
+
+  /**
+   * Reads a line terminated by \n
+   * @return the line without the terminator or null at the end of the stream
+   */
+  private String readLine(InputStream in) throws IOException
+  {
+    StringBuilder result = new StringBuilder();
+    int b;
+    while ((b = in.read()) != '\n')
+    {
+      if (b < 0)
+      {
+        return null;
+      }
+      result.append((char) b);
+    }
+    return result.toString();
+  }
+
+  private void readFully(InputStream in, byte[] data) throws IOException
+  {
+    int done = 0;
+    while (done < data.length)
+    {
+      int read = in.read(data, done, data.length - done);
+      if (read < 0)
+      {
+        throw new EOFException();
+      }
+      done += read;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * A StandIn for cutters which receive a job as the raw data of a TCP
+ * connection, like the LAOS board. Everything received until the client
+ * closes the connection is one job.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class RawTcpStandIn extends TcpStandIn
+{
+
+  public RawTcpStandIn(LinkProfile profile) throws IOException
+  {
+    super(profile);
+    start();
+  }
+
+  public RawTcpStandIn() throws IOException
+  {
+    this(new LinkProfile());
+  }
+
+  @Override
+  void receive(Socket socket, Link link) throws IOException
+  {
+    long start = System.nanoTime();
+    InputStream in = link.wrap(socket.getInputStream());
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) >= 0)
+    {
+      data.write(buffer, 0, read);
+    }
+    received(new ReceivedJob("", data.toByteArray(), start, System.nanoTime()));
+  }
+}
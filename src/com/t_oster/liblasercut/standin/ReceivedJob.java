@@ -0,0 +1,89 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+/**
+ * A job as it was received by a StandIn
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ReceivedJob
+{
+
+  private String name;
+  private byte[] data;
+  private long startTime;
+  private long endTime;
+
+  /**
+   * @param name the name the job was sent with or an empty string
+   * if the protocol has no names
+   * @param data the received data
+   * @param startTime the System.nanoTime() when the job or its
+   * connection started
+   * @param endTime the System.nanoTime() when the job was complete
+   */
+  public ReceivedJob(String name, byte[] data, long startTime, long endTime)
+  {
+    this.name = name;
+    this.data = data;
+    this.startTime = startTime;
+    this.endTime = endTime;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public byte[] getData()
+  {
+    return data;
+  }
+
+  public int getLength()
+  {
+    return data.length;
+  }
+
+  /**
+   * Returns the System.nanoTime() when the job or its connection started
+   */
+  public long getStartTime()
+  {
+    return startTime;
+  }
+
+  /**
+   * Returns the System.nanoTime() when the job was received completely
+   */
+  public long getEndTime()
+  {
+    return endTime;
+  }
+
+  /**
+   * Returns the throughput of the transfer in bytes per second
+   */
+  public double getThroughput()
+  {
+    long duration = Math.max(1, endTime - startTime);
+    return data.length * 1e9 / duration;
+  }
+}
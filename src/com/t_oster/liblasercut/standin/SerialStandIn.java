@@ -0,0 +1,124 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import com.t_oster.liblasercut.drivers.Transport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A StandIn for a Lasercutter attached to a serial port, like the
+ * Lasersaur. It can be set as Transport.Factory of a driver instead of
+ * the real port. Everything written until the Transport is closed is one
+ * job. For a serial line with 8N1 framing, the bandwidth of the
+ * LinkProfile is the baud rate divided by 10.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class SerialStandIn extends StandIn implements Transport.Factory
+{
+
+  public SerialStandIn(LinkProfile profile)
+  {
+    super(profile);
+  }
+
+  public SerialStandIn()
+  {
+    this(new LinkProfile());
+  }
+
+  public Transport open() throws IOException
+  {
+    final Link link = connected();
+    link.delay();
+    final long start = System.nanoTime();
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    return new Transport()
+    {
+      private volatile boolean closed = false;
+      private volatile boolean failed = false;
+      private OutputStream out = new OutputStream()
+      {
+        @Override
+        public void write(int b) throws IOException
+        {
+          write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+          while (len > 0)
+          {
+            if (closed || failed)
+            {
+              throw new IOException("Port closed");
+            }
+            int count = link.limit(len);
+            try
+            {
+              link.pass(count);
+            }
+            catch (IOException e)
+            {
+              failed = true;
+              throw e;
+            }
+            data.write(b, off, count);
+            off += count;
+            len -= count;
+          }
+        }
+      };
+
+      public InputStream getInputStream()
+      {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+
+      public OutputStream getOutputStream()
+      {
+        return out;
+      }
+
+      public synchronized void close()
+      {
+        if (!closed)
+        {
+          closed = true;
+          if (!failed)
+          {
+            received(new ReceivedJob("", data.toByteArray(), start, System.nanoTime()));
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Does nothing, since there is no port to release
+   */
+  public void close()
+  {
+  }
+}
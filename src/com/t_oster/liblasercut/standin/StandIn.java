@@ -0,0 +1,128 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.Closeable;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An in-process replacement for a Lasercutter, which receives the jobs of
+ * a driver over a simulated link. It records every received job, so it
+ * can be used to test drivers and to measure their throughput and latency
+ * without a real device.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public abstract class StandIn implements Closeable
+{
+
+  private LinkProfile profile;
+  private List<ReceivedJob> jobs = new LinkedList<ReceivedJob>();
+  private int connections = 0;
+
+  StandIn(LinkProfile profile)
+  {
+    this.profile = profile;
+  }
+
+  /**
+   * Returns the profile of the simulated link
+   */
+  public LinkProfile getProfile()
+  {
+    return profile;
+  }
+
+  /**
+   * Returns the number of connections opened so far
+   */
+  public synchronized int getConnections()
+  {
+    return connections;
+  }
+
+  /**
+   * Returns the jobs received so far
+   */
+  public synchronized List<ReceivedJob> getReceivedJobs()
+  {
+    return new LinkedList<ReceivedJob>(jobs);
+  }
+
+  /**
+   * Waits until the given number of jobs is received
+   * @param count the number of jobs to wait for
+   * @param timeout the maximum time to wait in milliseconds
+   * @return the jobs received so far, which are less than count
+   * if the timeout elapsed
+   * @throws InterruptedException 
+   */
+  public synchronized List<ReceivedJob> waitForJobs(int count, long timeout) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + timeout;
+    while (jobs.size() < count)
+    {
+      long left = end - System.currentTimeMillis();
+      if (left <= 0)
+      {
+        break;
+      }
+      this.wait(left);
+    }
+    return getReceivedJobs();
+  }
+
+  /**
+   * Forgets all received jobs and connections
+   */
+  public synchronized void clear()
+  {
+    jobs.clear();
+    connections = 0;
+  }
+
+  /**
+   * Creates the state of a new connection
+   */
+  Link connected()
+  {
+    synchronized (this)
+    {
+      connections++;
+    }
+    return new Link(profile);
+  }
+
+  synchronized void received(ReceivedJob job)
+  {
+    jobs.add(job);
+    this.notifyAll();
+  }
+
+  /**
+   * Runs the given server loop in a daemon thread
+   */
+  void start(String name, Runnable server)
+  {
+    Thread t = new Thread(server, name);
+    t.setDaemon(true);
+    t.start();
+  }
+}
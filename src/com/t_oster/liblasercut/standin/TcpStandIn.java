@@ -0,0 +1,127 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A StandIn which accepts TCP connections on a local port.
+ * Like the firmware of most cutters, it serves one connection at a time.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public abstract class TcpStandIn extends StandIn
+{
+
+  private ServerSocket server;
+
+  TcpStandIn(LinkProfile profile) throws IOException
+  {
+    super(profile);
+    server = new ServerSocket();
+    if (profile.getBufferSize() > 0)
+    {
+      server.setReceiveBufferSize(profile.getBufferSize());
+    }
+    server.bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+  }
+
+  /**
+   * Returns the hostname the stand-in listens on
+   */
+  public String getHostname()
+  {
+    return "localhost";
+  }
+
+  /**
+   * Returns the port the stand-in listens on
+   */
+  public int getPort()
+  {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Starts accepting connections
+   */
+  void start()
+  {
+    start(this.getClass().getSimpleName() + " on port " + getPort(), new Runnable()
+    {
+      public void run()
+      {
+        serve();
+      }
+    });
+  }
+
+  private void serve()
+  {
+    while (true)
+    {
+      Socket socket;
+      try
+      {
+        socket = server.accept();
+      }
+      catch (IOException e)
+      {
+        //the stand-in was closed
+        return;
+      }
+      try
+      {
+        Link link = connected();
+        link.delay();
+        receive(socket, link);
+      }
+      catch (IOException e)
+      {
+        //the client went away or a fault was injected
+      }
+      finally
+      {
+        try
+        {
+          socket.close();
+        }
+        catch (IOException e)
+        {
+        }
+      }
+    }
+  }
+
+  /**
+   * Receives the jobs of one connection
+   * @param socket the accepted socket, which is closed afterwards
+   * @param link the simulated link of the connection
+   */
+  abstract void receive(Socket socket, Link link) throws IOException;
+
+  public void close() throws IOException
+  {
+    server.close();
+  }
+}
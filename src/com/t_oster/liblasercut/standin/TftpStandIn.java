@@ -0,0 +1,232 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+
+/**
+ * A StandIn for a TFTP (RFC 1350) server like the one of the LAOS board.
+ * It accepts write requests in any mode and records each written file
+ * as one job. Like a real server, it answers each transfer from a new
+ * port and serves one transfer at a time.
+ * Since a broken UDP link would only let the client wait for its
+ * timeout, injected faults are reported with an ERROR packet.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class TftpStandIn extends StandIn
+{
+
+  private static final int RRQ = 1;
+  private static final int WRQ = 2;
+  private static final int DATA = 3;
+  private static final int ACK = 4;
+  private static final int ERROR = 5;
+  private static final int ERROR_UNDEFINED = 0;
+  private static final int ERROR_ILLEGAL_OPERATION = 4;
+  private static final int ERROR_UNKNOWN_TID = 5;
+  private static final int BLOCK_SIZE = 512;
+  private static final int TIMEOUT = 5000;
+  private DatagramSocket socket;
+
+  public TftpStandIn(LinkProfile profile) throws IOException
+  {
+    super(profile);
+    socket = new DatagramSocket(0, InetAddress.getByName("localhost"));
+    start("TftpStandIn on port " + getPort(), new Runnable()
+    {
+      public void run()
+      {
+        serve();
+      }
+    });
+  }
+
+  public TftpStandIn() throws IOException
+  {
+    this(new LinkProfile());
+  }
+
+  /**
+   * Returns the hostname the stand-in listens on
+   */
+  public String getHostname()
+  {
+    return "localhost";
+  }
+
+  /**
+   * Returns the port the stand-in listens on
+   */
+  public int getPort()
+  {
+    return socket.getLocalPort();
+  }
+
+  private void serve()
+  {
+    byte[] buffer = new byte[BLOCK_SIZE + 4];
+    while (true)
+    {
+      DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+      try
+      {
+        socket.receive(request);
+        int opcode = getShort(buffer, 0);
+        if (opcode == WRQ)
+        {
+          //filename and mode, each terminated by a 0 octet
+          int end = 2;
+          while (end < request.getLength() && buffer[end] != 0)
+          {
+            end++;
+          }
+          String file = new String(buffer, 2, end - 2, "US-ASCII");
+          receive(file, request.getSocketAddress());
+        }
+        else if (opcode == RRQ)
+        {
+          sendError(socket, request.getSocketAddress(), ERROR_ILLEGAL_OPERATION, "Only write requests are supported");
+        }
+      }
+      catch (IOException e)
+      {
+        if (socket.isClosed())
+        {
+          return;
+        }
+        //the transfer failed, wait for the next one
+      }
+    }
+  }
+
+  /**
+   * Receives one file from a new transfer id
+   */
+  private void receive(String file, SocketAddress client) throws IOException
+  {
+    Link link = connected();
+    long start = System.nanoTime();
+    DatagramSocket transfer = new DatagramSocket(0, InetAddress.getByName("localhost"));
+    try
+    {
+      transfer.setSoTimeout(TIMEOUT);
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      byte[] buffer = new byte[BLOCK_SIZE + 4];
+      int block = 0;
+      link.delay();
+      sendAck(transfer, client, block);
+      while (true)
+      {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try
+        {
+          transfer.receive(packet);
+        }
+        catch (SocketTimeoutException e)
+        {
+          //the client gave up
+          return;
+        }
+        if (!client.equals(packet.getSocketAddress()))
+        {
+          sendError(transfer, packet.getSocketAddress(), ERROR_UNKNOWN_TID, "Unknown transfer ID");
+          continue;
+        }
+        if (getShort(buffer, 0) != DATA)
+        {
+          sendError(transfer, client, ERROR_ILLEGAL_OPERATION, "Expected DATA");
+          return;
+        }
+        int number = getShort(buffer, 2);
+        int length = packet.getLength() - 4;
+        //duplicates of the last block are only acknowledged again
+        if (number == ((block + 1) & 0xffff))
+        {
+          try
+          {
+            link.pass(length);
+          }
+          catch (IOException e)
+          {
+            sendError(transfer, client, ERROR_UNDEFINED, e.getMessage());
+            throw e;
+          }
+          data.write(buffer, 4, length);
+          block = number;
+          link.delay();
+          sendAck(transfer, client, block);
+          if (length < BLOCK_SIZE)
+          {
+            received(new ReceivedJob(file, data.toByteArray(), start, System.nanoTime()));
+            return;
+          }
+        }
+        else
+        {
+          sendAck(transfer, client, number);
+        }
+      }
+    }
+    finally
+    {
+      transfer.close();
+    }
+  }
+
+  private void sendAck(DatagramSocket from, SocketAddress to, int block) throws IOException
+  {
+    byte[] packet = new byte[4];
+    putShort(packet, 0, ACK);
+    putShort(packet, 2, block);
+    from.send(new DatagramPacket(packet, packet.length, to));
+  }
+
+  private void sendError(DatagramSocket from, SocketAddress to, int code, String message) throws IOException
+  {
+    byte[] text = message.getBytes("US-ASCII");
+    byte[] packet = new byte[text.length + 5];
+    putShort(packet, 0, ERROR);
+    putShort(packet, 2, code);
+    System.arraycopy(text, 0, packet, 4, text.length);
+    from.send(new DatagramPacket(packet, packet.length, to));
+  }
+
+  private static int getShort(byte[] data, int offset)
+  {
+    return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+  }
+
+  private static void putShort(byte[] data, int offset, int value)
+  {
+    data[offset] = (byte) (value >> 8);
+    data[offset + 1] = (byte) value;
+  }
+
+  public void close()
+  {
+    socket.close();
+  }
+}
@@ -22,20 +22,31 @@
  */
 package com.t_oster.liblasercut.utils;
 
-import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class BufferedImageAdapter implements GreyscaleRaster
+public class BufferedImageAdapter extends AbstractGreyscaleRaster
 {
 
   private BufferedImage img;
   private int colorShift = 0;
   private boolean invertColors = false;
+  /**
+   * Maps a luma value to the grey value with colorShift and
+   * invertColors applied
+   */
+  private int[] lut = new int[256];
+  /**
+   * For TYPE_BYTE_GRAY images: Maps a sample of the raster
+   * directly to the resulting grey value
+   */
+  private int[] greyLut = null;
 
   public BufferedImageAdapter(BufferedImage img)
   {
@@ -46,21 +57,174 @@ public class BufferedImageAdapter implements GreyscaleRaster
   {
     this.img = img;
     this.invertColors = invertColors;
+    updateLut();
   }
 
   public void setColorShift(int cs){
       this.colorShift = cs;
+      updateLut();
   }
 
   public int getColorShift(){
       return this.colorShift;
   }
 
+  private void updateLut()
+  {
+    int[] lut = new int[256];
+    for (int i = 0; i < 256; i++)
+    {
+      int value = Math.max(Math.min(colorShift + i, 255), 0);
+      lut[i] = invertColors ? 255 - value : value;
+    }
+    int[] greyLut = null;
+    if (img.getType() == BufferedImage.TYPE_BYTE_GRAY)
+    {
+      //the samples are linear grey, getRGB converts them to sRGB
+      ColorModel cm = img.getColorModel();
+      greyLut = new int[256];
+      for (int i = 0; i < 256; i++)
+      {
+        greyLut[i] = lut[luma(cm.getRGB(i))];
+      }
+    }
+    this.lut = lut;
+    this.greyLut = greyLut;
+  }
+
+  private static int luma(int rgb)
+  {
+    return (30 * ((rgb >> 16) & 0xFF) + 59 * ((rgb >> 8) & 0xFF) + 11 * (rgb & 0xFF)) / 100;
+  }
+
   public int getGreyScale(int x, int line)
   {
-    Color c = new Color(img.getRGB(x, line));
-    int value = colorShift+(int) (0.3 * c.getRed() + 0.59 * c.getGreen() + 0.11 * c.getBlue());
-    return invertColors ? 255-Math.max(Math.min(value, 255), 0) : Math.max(Math.min(value, 255), 0);
+    return lut[luma(img.getRGB(x, line))];
+  }
+
+  /**
+   * The raw data of one row. Rows may be read by several
+   * threads at once, so every thread has its own buffer
+   */
+  private static class RowBuffer
+  {
+
+    private int[] ints = null;
+    private byte[] bytes = null;
+  }
+  private final ThreadLocal<RowBuffer> rowBuffer = new ThreadLocal<RowBuffer>()
+  {
+
+    @Override
+    protected RowBuffer initialValue()
+    {
+      return new RowBuffer();
+    }
+  };
+
+  /**
+   * Returns the packed pixels of the given row of a TYPE_INT_RGB image
+   * or the sRGB values of other images in a reused buffer
+   */
+  private int[] getIntRow(int y)
+  {
+    int width = img.getWidth();
+    RowBuffer buffer = rowBuffer.get();
+    if (buffer.ints == null || buffer.ints.length < width)
+    {
+      buffer.ints = new int[width];
+    }
+    if (img.getType() == BufferedImage.TYPE_INT_RGB)
+    {
+      return (int[]) img.getRaster().getDataElements(0, y, width, 1, buffer.ints);
+    }
+    return img.getRGB(0, y, width, 1, buffer.ints, 0, width);
+  }
+
+  /**
+   * Returns the samples of the given row of a TYPE_BYTE_GRAY
+   * or TYPE_3BYTE_BGR image in a reused buffer
+   */
+  private byte[] getByteRow(int y, int samplesPerPixel)
+  {
+    int width = img.getWidth();
+    RowBuffer buffer = rowBuffer.get();
+    if (buffer.bytes == null || buffer.bytes.length < width * samplesPerPixel)
+    {
+      buffer.bytes = new byte[width * samplesPerPixel];
+    }
+    return (byte[]) img.getRaster().getDataElements(0, y, width, 1, buffer.bytes);
+  }
+
+  @Override
+  public void getRow(int y, int[] target)
+  {
+    int width = img.getWidth();
+    switch (img.getType())
+    {
+      case BufferedImage.TYPE_BYTE_GRAY:
+      {
+        byte[] row = getByteRow(y, 1);
+        for (int x = 0; x < width; x++)
+        {
+          target[x] = greyLut[row[x] & 0xFF];
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      {
+        //the data elements are in band order, which is R, G, B
+        byte[] row = getByteRow(y, 3);
+        for (int x = 0, i = 0; x < width; x++, i += 3)
+        {
+          target[x] = lut[(30 * (row[i] & 0xFF) + 59 * (row[i + 1] & 0xFF) + 11 * (row[i + 2] & 0xFF)) / 100];
+        }
+        break;
+      }
+      default:
+      {
+        int[] row = getIntRow(y);
+        for (int x = 0; x < width; x++)
+        {
+          target[x] = lut[luma(row[x])];
+        }
+      }
+    }
+  }
+
+  @Override
+  public void getRow(int y, byte[] target)
+  {
+    int width = img.getWidth();
+    switch (img.getType())
+    {
+      case BufferedImage.TYPE_BYTE_GRAY:
+      {
+        byte[] row = getByteRow(y, 1);
+        for (int x = 0; x < width; x++)
+        {
+          target[x] = (byte) greyLut[row[x] & 0xFF];
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      {
+        byte[] row = getByteRow(y, 3);
+        for (int x = 0, i = 0; x < width; x++, i += 3)
+        {
+          target[x] = (byte) lut[(30 * (row[i] & 0xFF) + 59 * (row[i + 1] & 0xFF) + 11 * (row[i + 2] & 0xFF)) / 100];
+        }
+        break;
+      }
+      default:
+      {
+        int[] row = getIntRow(y);
+        for (int x = 0; x < width; x++)
+        {
+          target[x] = (byte) lut[luma(row[x])];
+        }
+      }
+    }
   }
 
   public void setGreyScale(int x, int y, int grey)
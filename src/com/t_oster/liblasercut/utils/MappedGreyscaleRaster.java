@@ -0,0 +1,257 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.AbstractGreyscaleRaster;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A GreyscaleRaster backed by a memory mapped file with one byte
+ * per pixel, stored row by row. This allows working on images which
+ * are bigger than the heap.
+ * 
+ * Raw files can be opened with the constructor, binary PGM (P5) files
+ * with openPgm and createPgm.
+ * The raster may be read from several threads at once.
+ * 
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class MappedGreyscaleRaster extends AbstractGreyscaleRaster
+{
+
+  private int width;
+  private int height;
+  private RandomAccessFile file;
+  /**
+   * A single mapping is limited to 2GB, so the file is mapped
+   * in chunks of rowsPerChunk rows
+   */
+  private MappedByteBuffer[] chunks;
+  private int rowsPerChunk;
+
+  /**
+   * Maps a raw file with one byte per pixel
+   * @param file
+   * @param width
+   * @param height
+   * @param offset the position of the first pixel in the file
+   * @param writable if false, setGreyScale will throw
+   * a ReadOnlyBufferException
+   * @throws IOException 
+   */
+  public MappedGreyscaleRaster(File file, int width, int height, long offset, boolean writable) throws IOException
+  {
+    if (width <= 0 || height <= 0)
+    {
+      throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.file = new RandomAccessFile(file, writable ? "rw" : "r");
+    try
+    {
+      long size = offset + (long) width * height;
+      if (this.file.length() < size)
+      {
+        if (!writable)
+        {
+          throw new IOException("File " + file + " is too short for a raster of " + width + "x" + height + " pixels");
+        }
+        this.file.setLength(size);
+      }
+      FileChannel channel = this.file.getChannel();
+      rowsPerChunk = Math.max(1, Math.min(height, Integer.MAX_VALUE / width));
+      chunks = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+      for (int i = 0; i < chunks.length; i++)
+      {
+        int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+        chunks[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+          offset + (long) i * rowsPerChunk * width, (long) rows * width);
+      }
+    }
+    catch (IOException e)
+    {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Maps a binary 8 bit PGM (P5) file
+   * @param file
+   * @param writable
+   * @return
+   * @throws IOException if the file is no PGM file or has a maxval other than 255
+   */
+  public static MappedGreyscaleRaster openPgm(File file, boolean writable) throws IOException
+  {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try
+    {
+      if (in.read() != 'P' || in.read() != '5')
+      {
+        throw new IOException(file + " is no binary PGM file");
+      }
+      int[] header = new int[3];
+      long position = 2;
+      int c = in.read();
+      for (int i = 0; i < header.length; i++)
+      {
+        //skip whitespace and comments
+        while (c == '#' || Character.isWhitespace(c))
+        {
+          if (c == '#')
+          {
+            while (c != '\n' && c != '\r' && c != -1)
+            {
+              c = in.read();
+              position++;
+            }
+          }
+          else
+          {
+            c = in.read();
+            position++;
+          }
+        }
+        if (c < '0' || c > '9')
+        {
+          throw new IOException("Invalid PGM header in " + file);
+        }
+        while (c >= '0' && c <= '9')
+        {
+          header[i] = header[i] * 10 + (c - '0');
+          c = in.read();
+          position++;
+        }
+      }
+      if (!Character.isWhitespace(c))
+      {
+        throw new IOException("Invalid PGM header in " + file);
+      }
+      if (header[2] != 255)
+      {
+        throw new IOException("Only PGM files with a maxval of 255 are supported");
+      }
+      //position points to the single whitespace after maxval
+      return new MappedGreyscaleRaster(file, header[0], header[1], position + 1, writable);
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  /**
+   * Creates a new binary PGM file of the given size and maps it
+   * @param file
+   * @param width
+   * @param height
+   * @return
+   * @throws IOException 
+   */
+  public static MappedGreyscaleRaster createPgm(File file, int width, int height) throws IOException
+  {
+    byte[] header = ("P5\n" + width + " " + height + "\n255\n").getBytes("US-ASCII");
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try
+    {
+      out.setLength(0);
+      out.write(header);
+    }
+    finally
+    {
+      out.close();
+    }
+    return new MappedGreyscaleRaster(file, width, height, header.length, true);
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getGreyScale(int x, int y)
+  {
+    return chunks[y / rowsPerChunk].get((y % rowsPerChunk) * width + x) & 0xFF;
+  }
+
+  public void setGreyScale(int x, int y, int grey)
+  {
+    chunks[y / rowsPerChunk].put((y % rowsPerChunk) * width + x, (byte) grey);
+  }
+
+  @Override
+  public void getRow(int y, byte[] target)
+  {
+    //a duplicate has its own position, so other threads are not affected
+    ByteBuffer row = chunks[y / rowsPerChunk].duplicate();
+    row.position((y % rowsPerChunk) * width);
+    row.get(target, 0, width);
+  }
+
+  @Override
+  public void getRow(int y, int[] target)
+  {
+    ByteBuffer chunk = chunks[y / rowsPerChunk];
+    int offset = (y % rowsPerChunk) * width;
+    for (int x = 0; x < width; x++)
+    {
+      target[x] = chunk.get(offset + x) & 0xFF;
+    }
+  }
+
+  /**
+   * Writes all changes to the file
+   */
+  public void flush()
+  {
+    for (MappedByteBuffer chunk : chunks)
+    {
+      if (!chunk.isReadOnly())
+      {
+        chunk.force();
+      }
+    }
+  }
+
+  /**
+   * Closes the file. The mapping stays valid until this
+   * object is garbage collected.
+   * @throws IOException 
+   */
+  public void close() throws IOException
+  {
+    flush();
+    file.close();
+  }
+}
@@ -19,8 +19,9 @@
 package com.t_oster.liblasercut.utils;
 
 import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.PolylineSimplifier;
 import java.awt.Shape;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 
 /**
@@ -33,39 +34,91 @@ import java.awt.geom.PathIterator;
 public class ShapeConverter
 {
 
+  private double tolerance = 0;
+  private double resolution = 500;
+
+  /**
+   * Get the value of tolerance
+   *
+   * @return the value of tolerance
+   */
+  public double getTolerance()
+  {
+    return tolerance;
+  }
+
+  /**
+   * Set the maximal distance in mm the lines may differ from the shape.
+   * Curves are flattened with half of it (but at least 1 pixel) and the
+   * resulting polylines are simplified with the other half.
+   * With 0 only points lying on a straight line are removed.
+   *
+   * @param tolerance new value of tolerance
+   */
+  public void setTolerance(double tolerance)
+  {
+    this.tolerance = Math.max(0, tolerance);
+  }
+
+  /**
+   * Get the value of resolution
+   *
+   * @return the value of resolution
+   */
+  public double getResolution()
+  {
+    return resolution;
+  }
+
+  /**
+   * Set the resolution in DPI of the VectorPart the shapes
+   * are added to
+   *
+   * @param resolution new value of resolution
+   */
+  public void setResolution(double resolution)
+  {
+    this.resolution = resolution;
+  }
+
   /**
    * Adds the given Shape to the given VectorPart by converting it to
    * lineto and moveto commands, whose lines differs not more than
-   * 1 pixel from the original shape.
+   * the tolerance (at least 1 pixel) from the original shape.
    * 
    * @param shape the Shape to be added
    * @param vectorpart the Vectorpart the shape shall be added to
    */
   public void addShape(Shape shape, VectorPart vectorpart)
   {
-    AffineTransform scale = AffineTransform.getScaleInstance(1, 1);
-    PathIterator iter = shape.getPathIterator(scale, 1);
+    double flatness = Math.max(1, Util.mm2px(tolerance, resolution) / 2);
+    PolylineSimplifier simplifier = new PolylineSimplifier();
+    simplifier.setResolution(resolution);
+    simplifier.setTolerance(tolerance / 2);
+    simplifier.begin(vectorpart);
+    PathIterator iter = shape.getPathIterator(null, flatness);
+    double[] coords = new double[6];
     int startx = 0;
     int starty = 0;
     while (!iter.isDone())
     {
-      double[] test = new double[8];
-      int result = iter.currentSegment(test);
+      int result = iter.currentSegment(coords);
       if (result == PathIterator.SEG_MOVETO)
       {
-        vectorpart.moveto((int) test[0], (int) test[1]);
-        startx = (int) test[0];
-        starty = (int) test[1];
+        startx = (int) coords[0];
+        starty = (int) coords[1];
+        simplifier.moveto(startx, starty);
       }
       else if (result == PathIterator.SEG_LINETO)
       {
-        vectorpart.lineto((int) test[0], (int) test[1]);
+        simplifier.lineto((int) coords[0], (int) coords[1]);
       }
       else if (result == PathIterator.SEG_CLOSE)
       {
-        vectorpart.lineto(startx, starty);
+        simplifier.lineto(startx, starty);
       }
       iter.next();
     }
+    simplifier.end();
   }
 }
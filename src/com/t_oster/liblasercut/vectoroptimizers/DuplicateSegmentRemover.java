@@ -0,0 +1,307 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes lines which are cut more than once with the same properties,
+ * e.g. the shared edges of nested parts. Segments are hashed by the
+ * line they lie on, so overlapping collinear segments end up in the
+ * same bucket, where they are merged by sorting them along the line.
+ * The remaining segments are joined into polylines again.
+ * 
+ * Apart from sorting the segments of each line this runs in linear time.
+ * Note that lines which are deliberately cut twice with the same
+ * properties are cut only once afterwards.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class DuplicateSegmentRemover extends VectorOptimizer
+{
+
+  private double removedLength = 0;
+  private List<LaserProperty> properties;
+  //the merged segments
+  private int[] x1;
+  private int[] y1;
+  private int[] x2;
+  private int[] y2;
+  private int[] propertyOf;
+  private int segmentCount;
+
+  /**
+   * Returns the length in pixels which was cut twice by the
+   * VectorPart passed to the last call of optimize
+   * @return 
+   */
+  public double getRemovedLength()
+  {
+    return removedLength;
+  }
+
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    double before = getCutLength(vp);
+    PathList paths = PathList.split(vp);
+    mergeSegments(paths);
+    setProgress(50);
+    PathList joined = joinSegments(vp.getInitialCuttingProperty());
+    int[] order = new int[joined.size()];
+    int[] entries = new int[joined.size()];
+    for (int i = 0; i < order.length; i++)
+    {
+      order[i] = i;
+      entries[i] = joined.getStart(i);
+    }
+    VectorPart result = joined.toVectorPart(order, entries, new boolean[order.length]);
+    removedLength = Math.max(0, before - getCutLength(result));
+    properties = null;
+    x1 = y1 = x2 = y2 = propertyOf = null;
+    setProgress(100);
+    return result;
+  }
+
+  private static long gcd(long a, long b)
+  {
+    while (b != 0)
+    {
+      long t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  /**
+   * Collects all segments of the paths, groups them by property and
+   * the line they lie on and merges overlapping or touching segments of
+   * the same group.
+   */
+  private void mergeSegments(PathList paths)
+  {
+    int count = paths.getPointCount() - paths.size();
+    int[] ax = new int[count];
+    int[] ay = new int[count];
+    int[] bx = new int[count];
+    int[] by = new int[count];
+    int[] lineOf = new int[count];
+    properties = new ArrayList<LaserProperty>();
+    TupleIndex propertyIndex = new TupleIndex(4, 16);
+    TupleIndex lines = new TupleIndex(5, count);
+    int[] key = new int[5];
+    int s = 0;
+    LaserProperty lastProperty = null;
+    int property = -1;
+    for (int path = 0; path < paths.size(); path++)
+    {
+      LaserProperty p = paths.getProperty(path);
+      if (p != lastProperty)
+      {
+        key[0] = p.getPower();
+        key[1] = p.getSpeed();
+        key[2] = p.getFrequency();
+        key[3] = Float.floatToIntBits(p.getFocus());
+        property = propertyIndex.getId(key);
+        if (property == properties.size())
+        {
+          properties.add(p);
+        }
+        lastProperty = p;
+      }
+      for (int point = paths.getStart(path); point < paths.getEnd(path) - 1; point++, s++)
+      {
+        ax[s] = paths.getX(point);
+        ay[s] = paths.getY(point);
+        bx[s] = paths.getX(point + 1);
+        by[s] = paths.getY(point + 1);
+        long dx = (long) bx[s] - ax[s];
+        long dy = (long) by[s] - ay[s];
+        if (dx < 0 || (dx == 0 && dy < 0))
+        {
+          //orient all segments of a line the same way
+          int t = ax[s];
+          ax[s] = bx[s];
+          bx[s] = t;
+          t = ay[s];
+          ay[s] = by[s];
+          by[s] = t;
+          dx = -dx;
+          dy = -dy;
+        }
+        key[0] = property;
+        if (dx == 0 && dy == 0)
+        {
+          key[1] = 0;
+          key[2] = 0;
+          key[3] = ax[s];
+          key[4] = ay[s];
+        }
+        else
+        {
+          long g = gcd(dx, Math.abs(dy));
+          dx /= g;
+          dy /= g;
+          long c = dy * ax[s] - dx * ay[s];
+          key[1] = (int) dx;
+          key[2] = (int) dy;
+          key[3] = (int) (c >>> 32);
+          key[4] = (int) c;
+        }
+        lineOf[s] = lines.getId(key);
+      }
+    }
+    //sort the segments by line and by their start along the line
+    int lineCount = lines.size();
+    int[] lineStart = new int[lineCount + 1];
+    for (int i = 0; i < count; i++)
+    {
+      lineStart[lineOf[i] + 1]++;
+    }
+    for (int i = 0; i < lineCount; i++)
+    {
+      lineStart[i + 1] += lineStart[i];
+    }
+    int[] fill = Arrays.copyOf(lineStart, lineCount);
+    long[] sorted = new long[count];
+    for (int i = 0; i < count; i++)
+    {
+      boolean vertical = lines.getKey(lineOf[i], 1) == 0;
+      long t = vertical ? ay[i] : ax[i];
+      sorted[fill[lineOf[i]]++] = (t << 32) | i;
+    }
+    x1 = new int[count];
+    y1 = new int[count];
+    x2 = new int[count];
+    y2 = new int[count];
+    propertyOf = new int[count];
+    segmentCount = 0;
+    for (int line = 0; line < lineCount; line++)
+    {
+      Arrays.sort(sorted, lineStart[line], lineStart[line + 1]);
+      boolean vertical = lines.getKey(line, 1) == 0;
+      int current = -1;
+      long end = 0;
+      for (int i = lineStart[line]; i < lineStart[line + 1]; i++)
+      {
+        int segment = (int) sorted[i];
+        long from = vertical ? ay[segment] : ax[segment];
+        long to = vertical ? by[segment] : bx[segment];
+        if (current >= 0 && from <= end)
+        {
+          if (to > end)
+          {
+            x2[current] = bx[segment];
+            y2[current] = by[segment];
+            end = to;
+          }
+          continue;
+        }
+        current = segmentCount++;
+        x1[current] = ax[segment];
+        y1[current] = ay[segment];
+        x2[current] = bx[segment];
+        y2[current] = by[segment];
+        propertyOf[current] = lines.getKey(line, 0);
+        end = to;
+      }
+    }
+  }
+
+  /**
+   * Joins the merged segments into polylines by walking along
+   * unused segments as long as possible. Walks start at points
+   * with an odd number of segments first, so each of them ends
+   * a polyline only once.
+   */
+  private PathList joinSegments(LaserProperty initialProperty)
+  {
+    TupleIndex points = new TupleIndex(3, segmentCount);
+    int[] key = new int[3];
+    int[] from = new int[segmentCount];
+    int[] to = new int[segmentCount];
+    for (int s = 0; s < segmentCount; s++)
+    {
+      key[0] = propertyOf[s];
+      key[1] = x1[s];
+      key[2] = y1[s];
+      from[s] = points.getId(key);
+      key[1] = x2[s];
+      key[2] = y2[s];
+      to[s] = points.getId(key);
+    }
+    int pointCount = points.size();
+    int[] remaining = new int[pointCount];
+    int[] adjacencyStart = new int[pointCount + 1];
+    for (int s = 0; s < segmentCount; s++)
+    {
+      remaining[from[s]]++;
+      remaining[to[s]]++;
+    }
+    for (int p = 0; p < pointCount; p++)
+    {
+      adjacencyStart[p + 1] = adjacencyStart[p] + remaining[p];
+    }
+    int[] next = Arrays.copyOf(adjacencyStart, pointCount);
+    int[] adjacency = new int[2 * segmentCount];
+    for (int s = 0; s < segmentCount; s++)
+    {
+      adjacency[next[from[s]]++] = s;
+      adjacency[next[to[s]]++] = s;
+    }
+    System.arraycopy(adjacencyStart, 0, next, 0, pointCount);
+    boolean[] used = new boolean[segmentCount];
+    PathList result = new PathList(initialProperty);
+    for (int pass = 0; pass < 2; pass++)
+    {
+      for (int p = 0; p < pointCount; p++)
+      {
+        while (pass == 0 ? remaining[p] % 2 == 1 : remaining[p] > 0)
+        {
+          result.startPath(properties.get(points.getKey(p, 0)), points.getKey(p, 1), points.getKey(p, 2));
+          int current = p;
+          while (true)
+          {
+            while (next[current] < adjacencyStart[current + 1] && used[adjacency[next[current]]])
+            {
+              next[current]++;
+            }
+            if (next[current] == adjacencyStart[current + 1])
+            {
+              break;
+            }
+            int s = adjacency[next[current]];
+            used[s] = true;
+            int other = from[s] == current ? to[s] : from[s];
+            remaining[current]--;
+            remaining[other]--;
+            result.addPoint(points.getKey(other, 1), points.getKey(other, 2));
+            current = other;
+          }
+        }
+      }
+    }
+    return result;
+  }
+}
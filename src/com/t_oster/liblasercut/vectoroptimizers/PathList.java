@@ -0,0 +1,273 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Arrays;
+
+/**
+ * The cutting lines of a VectorPart split into polylines, which are
+ * cut with constant properties. The points of all paths are stored
+ * in two shared arrays, path i consists of the points
+ * [getStart(i), getEnd(i)). Every path has at least two points.
+ * 
+ * Paths can be written back to a VectorPart in any order and
+ * direction, the properties of each path are restored before it is cut.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class PathList
+{
+
+  private final LaserProperty initialProperty;
+  private int[] xs = new int[64];
+  private int[] ys = new int[64];
+  private int pointCount = 0;
+  private int[] starts = new int[16];
+  private LaserProperty[] properties = new LaserProperty[16];
+  private int pathCount = 0;
+
+  PathList(LaserProperty initialProperty)
+  {
+    this.initialProperty = initialProperty.clone();
+  }
+
+  /**
+   * Splits the given VectorPart into paths. A path ends at every
+   * MOVETO and at every property change. MOVETOs which are not followed
+   * by a LINETO are dropped, as well as property changes at the end.
+   * 
+   * @param vp
+   * @return 
+   */
+  static PathList split(VectorPart vp)
+  {
+    LaserProperty current = vp.getInitialCuttingProperty();
+    PathList result = new PathList(current);
+    int x = 0;
+    int y = 0;
+    boolean open = false;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          x = c.getX();
+          y = c.getY();
+          open = false;
+          break;
+        case LINETO:
+          if (!open)
+          {
+            result.startPath(current, x, y);
+            open = true;
+          }
+          x = c.getX();
+          y = c.getY();
+          result.addPoint(x, y);
+          break;
+        case SETPOWER:
+          if (c.getPower() != current.getPower())
+          {
+            current = new LaserProperty(c.getPower(), current.getSpeed(), current.getFrequency(), current.getFocus());
+            open = false;
+          }
+          break;
+        case SETSPEED:
+          if (c.getSpeed() != current.getSpeed())
+          {
+            current = new LaserProperty(current.getPower(), c.getSpeed(), current.getFrequency(), current.getFocus());
+            open = false;
+          }
+          break;
+        case SETFREQUENCY:
+          if (c.getFrequency() != current.getFrequency())
+          {
+            current = new LaserProperty(current.getPower(), current.getSpeed(), c.getFrequency(), current.getFocus());
+            open = false;
+          }
+          break;
+        case SETFOCUS:
+          if (c.getFocus() != current.getFocus())
+          {
+            current = new LaserProperty(current.getPower(), current.getSpeed(), current.getFrequency(), c.getFocus());
+            open = false;
+          }
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts a new path at the given point. The LaserProperty
+   * is not copied, so it must not be modified afterwards
+   */
+  void startPath(LaserProperty property, int x, int y)
+  {
+    if (pathCount == starts.length)
+    {
+      starts = Arrays.copyOf(starts, pathCount * 2);
+      properties = Arrays.copyOf(properties, pathCount * 2);
+    }
+    starts[pathCount] = pointCount;
+    properties[pathCount] = property;
+    pathCount++;
+    addPoint(x, y);
+  }
+
+  void addPoint(int x, int y)
+  {
+    if (pointCount == xs.length)
+    {
+      xs = Arrays.copyOf(xs, pointCount * 2);
+      ys = Arrays.copyOf(ys, pointCount * 2);
+    }
+    xs[pointCount] = x;
+    ys[pointCount] = y;
+    pointCount++;
+  }
+
+  int size()
+  {
+    return pathCount;
+  }
+
+  int getPointCount()
+  {
+    return pointCount;
+  }
+
+  int getStart(int path)
+  {
+    return starts[path];
+  }
+
+  int getEnd(int path)
+  {
+    return path + 1 < pathCount ? starts[path + 1] : pointCount;
+  }
+
+  int getX(int point)
+  {
+    return xs[point];
+  }
+
+  int getY(int point)
+  {
+    return ys[point];
+  }
+
+  LaserProperty getProperty(int path)
+  {
+    return properties[path];
+  }
+
+  /**
+   * A path is closed if it has at least three points and
+   * ends where it starts. A closed path can be entered at every point
+   */
+  boolean isClosed(int path)
+  {
+    int start = getStart(path);
+    int last = getEnd(path) - 1;
+    return last - start >= 2 && xs[start] == xs[last] && ys[start] == ys[last];
+  }
+
+  /**
+   * Returns the point where a path entered at the given point
+   * is left
+   */
+  int getExit(int path, int entry)
+  {
+    if (isClosed(path))
+    {
+      return entry;
+    }
+    return entry == getStart(path) ? getEnd(path) - 1 : getStart(path);
+  }
+
+  /**
+   * Creates a VectorPart, which cuts the given paths in the given order.
+   * Every path is entered at the point entries[i] (an index of one of its
+   * points, for open paths either its first or its last point).
+   * Closed paths are cut backwards if reversed[i] is true, open paths
+   * are cut backwards if they are entered at their last point.
+   * 
+   * @param order the indices of the paths to cut
+   * @param entries the entry point of each path (indexed by path)
+   * @param reversed the direction of each closed path (indexed by path)
+   * @return 
+   */
+  VectorPart toVectorPart(int[] order, int[] entries, boolean[] reversed)
+  {
+    VectorPart result = new VectorPart(initialProperty);
+    boolean positioned = false;
+    int x = 0;
+    int y = 0;
+    for (int path : order)
+    {
+      result.setCurrentCuttingProperty(properties[path]);
+      int start = getStart(path);
+      int end = getEnd(path);
+      int entry = entries[path];
+      if (!positioned || x != xs[entry] || y != ys[entry])
+      {
+        result.moveto(xs[entry], ys[entry]);
+        positioned = true;
+      }
+      if (isClosed(path))
+      {
+        //the last point equals the first, so the ring has end - start - 1 points
+        int ring = end - start - 1;
+        int step = reversed[path] ? ring - 1 : 1;
+        int i = entry - start;
+        for (int k = 0; k < ring; k++)
+        {
+          i = (i + step) % ring;
+          result.lineto(xs[start + i], ys[start + i]);
+        }
+        x = xs[entry];
+        y = ys[entry];
+      }
+      else if (entry == start)
+      {
+        for (int i = start + 1; i < end; i++)
+        {
+          result.lineto(xs[i], ys[i]);
+        }
+        x = xs[end - 1];
+        y = ys[end - 1];
+      }
+      else
+      {
+        for (int i = end - 2; i >= start; i--)
+        {
+          result.lineto(xs[i], ys[i]);
+        }
+        x = xs[start];
+        y = ys[start];
+      }
+    }
+    return result;
+  }
+}
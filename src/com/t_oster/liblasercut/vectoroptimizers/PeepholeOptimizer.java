@@ -0,0 +1,357 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.io.IOException;
+
+/**
+ * A peephole optimizer for streams of motion commands. It
+ * <ul>
+ * <li>drops moves to the current position</li>
+ * <li>collapses consecutive moves</li>
+ * <li>merges lines continuing in the same direction with the same properties</li>
+ * <li>drops zero-length lines inside of a cut</li>
+ * <li>sends property changes only right before the next line and only
+ * if they differ from the last sent value</li>
+ * </ul>
+ * Because a move or line may be merged with the next one, every
+ * command is held back until the next one arrives, so flush has to
+ * be called at the end and before writing anything else to the output.
+ * 
+ * Drivers can use it as a stage in front of their encoder by implementing
+ * Target, or it can be applied to a whole VectorPart with optimize.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PeepholeOptimizer extends VectorOptimizer
+{
+
+  /**
+   * The receiver of the optimized commands
+   */
+  public interface Target
+  {
+
+    void moveto(int x, int y) throws IOException;
+
+    void lineto(int x, int y) throws IOException;
+
+    void setPower(int power) throws IOException;
+
+    void setSpeed(int speed) throws IOException;
+
+    void setFrequency(int frequency) throws IOException;
+
+    void setFocus(float focus) throws IOException;
+  }
+  private static final int NONE = 0;
+  private static final int MOVE = 1;
+  private static final int LINE = 2;
+  private Target target;
+  private boolean keepRunUps = false;
+  private int received = 0;
+  private int sent = 0;
+  //the position after all received commands
+  private boolean positionKnown = false;
+  private int x;
+  private int y;
+  //the command held back and the position before it
+  private int pending = NONE;
+  private boolean fromKnown = false;
+  private int fromX;
+  private int fromY;
+  //the requested and the last sent properties, UNSET if there is none
+  private static final int UNSET = Integer.MIN_VALUE;
+  private int power = UNSET;
+  private int speed = UNSET;
+  private int frequency = UNSET;
+  private boolean focusSet = false;
+  private float focus;
+  private int sentPower = UNSET;
+  private int sentSpeed = UNSET;
+  private int sentFrequency = UNSET;
+  private boolean focusSent = false;
+  private float sentFocus;
+
+  public PeepholeOptimizer()
+  {
+  }
+
+  public PeepholeOptimizer(Target target)
+  {
+    this.target = target;
+  }
+
+  /**
+   * Get the value of keepRunUps
+   *
+   * @return the value of keepRunUps
+   */
+  public boolean isKeepRunUps()
+  {
+    return keepRunUps;
+  }
+
+  /**
+   * Set the value of keepRunUps
+   * If true, consecutive moves are only collapsed if they continue in
+   * the same direction, so the head still travels over every move target.
+   * Raster generators need this for the space they add for acceleration.
+   *
+   * @param keepRunUps new value of keepRunUps
+   */
+  public void setKeepRunUps(boolean keepRunUps)
+  {
+    this.keepRunUps = keepRunUps;
+  }
+
+  /**
+   * Returns the number of received commands, which were not sent
+   * @return 
+   */
+  public int getRemovedCommands()
+  {
+    return received - sent;
+  }
+
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    final VectorPart result = new VectorPart(vp.getInitialCuttingProperty());
+    PeepholeOptimizer stage = new PeepholeOptimizer(new Target()
+    {
+      public void moveto(int x, int y)
+      {
+        result.moveto(x, y);
+      }
+
+      public void lineto(int x, int y)
+      {
+        result.lineto(x, y);
+      }
+
+      public void setPower(int power)
+      {
+        result.setPower(power);
+      }
+
+      public void setSpeed(int speed)
+      {
+        result.setSpeed(speed);
+      }
+
+      public void setFrequency(int frequency)
+      {
+        result.setFrequency(frequency);
+      }
+
+      public void setFocus(float focus)
+      {
+        result.setFocus(focus);
+      }
+    });
+    stage.setKeepRunUps(keepRunUps);
+    try
+    {
+      VectorCommandCursor c = vp.getCommandCursor();
+      while (c.next())
+      {
+        switch (c.getType())
+        {
+          case MOVETO:
+            stage.moveto(c.getX(), c.getY());
+            break;
+          case LINETO:
+            stage.lineto(c.getX(), c.getY());
+            break;
+          case SETPOWER:
+            stage.setPower(c.getPower());
+            break;
+          case SETSPEED:
+            stage.setSpeed(c.getSpeed());
+            break;
+          case SETFREQUENCY:
+            stage.setFrequency(c.getFrequency());
+            break;
+          case SETFOCUS:
+            stage.setFocus(c.getFocus());
+            break;
+        }
+      }
+      stage.flush();
+    }
+    catch (IOException e)
+    {
+      //the VectorPart target does not throw
+      throw new RuntimeException(e);
+    }
+    received = vp.getCommandCount();
+    sent = result.getCommandCount();
+    return result;
+  }
+
+  /**
+   * Returns true if the line from (ax, ay) over (bx, by) to (cx, cy)
+   * continues in the same direction
+   */
+  private static boolean continues(int ax, int ay, int bx, int by, int cx, int cy)
+  {
+    long ux = (long) bx - ax;
+    long uy = (long) by - ay;
+    long vx = (long) cx - bx;
+    long vy = (long) cy - by;
+    return ux * vy - uy * vx == 0 && ux * vx + uy * vy > 0;
+  }
+
+  private boolean propertiesChanged()
+  {
+    return (power != UNSET && power != sentPower)
+      || (speed != UNSET && speed != sentSpeed)
+      || (frequency != UNSET && frequency != sentFrequency)
+      || (focusSet && (!focusSent || focus != sentFocus));
+  }
+
+  public void moveto(int x, int y) throws IOException
+  {
+    received++;
+    if (positionKnown && x == this.x && y == this.y)
+    {
+      return;
+    }
+    if (pending == MOVE && (!keepRunUps || (fromKnown && continues(fromX, fromY, this.x, this.y, x, y))))
+    {
+      this.x = x;
+      this.y = y;
+      return;
+    }
+    flushPending();
+    pending = MOVE;
+    fromKnown = positionKnown;
+    fromX = this.x;
+    fromY = this.y;
+    positionKnown = true;
+    this.x = x;
+    this.y = y;
+  }
+
+  public void lineto(int x, int y) throws IOException
+  {
+    received++;
+    boolean changed = propertiesChanged();
+    if (pending == LINE && !changed
+      && ((x == this.x && y == this.y) || continues(fromX, fromY, this.x, this.y, x, y)))
+    {
+      this.x = x;
+      this.y = y;
+      return;
+    }
+    flushPending();
+    if (changed)
+    {
+      sendProperties();
+    }
+    pending = LINE;
+    fromKnown = positionKnown;
+    fromX = this.x;
+    fromY = this.y;
+    positionKnown = true;
+    this.x = x;
+    this.y = y;
+  }
+
+  public void setPower(int power)
+  {
+    received++;
+    this.power = power;
+  }
+
+  public void setSpeed(int speed)
+  {
+    received++;
+    this.speed = speed;
+  }
+
+  public void setFrequency(int frequency)
+  {
+    received++;
+    this.frequency = frequency;
+  }
+
+  public void setFocus(float focus)
+  {
+    received++;
+    this.focus = focus;
+    this.focusSet = true;
+  }
+
+  /**
+   * Sends the held back command. Property changes without a line
+   * afterwards are not sent.
+   */
+  public void flush() throws IOException
+  {
+    flushPending();
+  }
+
+  private void flushPending() throws IOException
+  {
+    if (pending == MOVE)
+    {
+      target.moveto(x, y);
+      sent++;
+    }
+    else if (pending == LINE)
+    {
+      target.lineto(x, y);
+      sent++;
+    }
+    pending = NONE;
+  }
+
+  private void sendProperties() throws IOException
+  {
+    if (power != UNSET && power != sentPower)
+    {
+      target.setPower(power);
+      sentPower = power;
+      sent++;
+    }
+    if (speed != UNSET && speed != sentSpeed)
+    {
+      target.setSpeed(speed);
+      sentSpeed = speed;
+      sent++;
+    }
+    if (frequency != UNSET && frequency != sentFrequency)
+    {
+      target.setFrequency(frequency);
+      sentFrequency = frequency;
+      sent++;
+    }
+    if (focusSet && (!focusSent || focus != sentFocus))
+    {
+      target.setFocus(focus);
+      sentFocus = focus;
+      focusSent = true;
+      sent++;
+    }
+  }
+}
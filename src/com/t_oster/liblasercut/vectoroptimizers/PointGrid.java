@@ -0,0 +1,174 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the points of a PathList, which finds the
+ * nearest of the currently added points. The cell size is chosen so
+ * that there is about one point per cell.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class PointGrid
+{
+
+  private final PathList paths;
+  private final int minX;
+  private final int minY;
+  private final int cellSize;
+  private final int columns;
+  private final int rows;
+  private final int[][] cells;
+  private final int[] cellSizes;
+  private int size = 0;
+
+  PointGrid(PathList paths)
+  {
+    this.paths = paths;
+    int count = paths.getPointCount();
+    int x0 = Integer.MAX_VALUE;
+    int y0 = Integer.MAX_VALUE;
+    int x1 = Integer.MIN_VALUE;
+    int y1 = Integer.MIN_VALUE;
+    for (int p = 0; p < count; p++)
+    {
+      x0 = Math.min(x0, paths.getX(p));
+      y0 = Math.min(y0, paths.getY(p));
+      x1 = Math.max(x1, paths.getX(p));
+      y1 = Math.max(y1, paths.getY(p));
+    }
+    if (count == 0)
+    {
+      x0 = 0;
+      y0 = 0;
+      x1 = 0;
+      y1 = 0;
+    }
+    double width = (double) x1 - x0 + 1;
+    double height = (double) y1 - y0 + 1;
+    double size = Math.max(Math.sqrt(width * height / Math.max(1, count)), Math.max(width, height) / Math.max(1, count));
+    this.minX = x0;
+    this.minY = y0;
+    this.cellSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, Math.ceil(size)));
+    this.columns = (int) Math.ceil(width / cellSize);
+    this.rows = (int) Math.ceil(height / cellSize);
+    this.cells = new int[columns * rows][];
+    this.cellSizes = new int[columns * rows];
+  }
+
+  private int column(int x)
+  {
+    long c = ((long) x - minX) / cellSize;
+    return (int) Math.max(0, Math.min(columns - 1, c));
+  }
+
+  private int row(int y)
+  {
+    long r = ((long) y - minY) / cellSize;
+    return (int) Math.max(0, Math.min(rows - 1, r));
+  }
+
+  void add(int point)
+  {
+    int cell = row(paths.getY(point)) * columns + column(paths.getX(point));
+    if (cells[cell] == null)
+    {
+      cells[cell] = new int[2];
+    }
+    else if (cellSizes[cell] == cells[cell].length)
+    {
+      cells[cell] = Arrays.copyOf(cells[cell], cellSizes[cell] * 2);
+    }
+    cells[cell][cellSizes[cell]++] = point;
+    size++;
+  }
+
+  void remove(int point)
+  {
+    int cell = row(paths.getY(point)) * columns + column(paths.getX(point));
+    int[] content = cells[cell];
+    for (int i = 0; i < cellSizes[cell]; i++)
+    {
+      if (content[i] == point)
+      {
+        content[i] = content[--cellSizes[cell]];
+        size--;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the point nearest to (x, y) or -1 if the grid is empty.
+   * The cells are searched in growing rings around the cell of (x, y)
+   * until no point in the next ring can be nearer than the best one found.
+   */
+  int nearest(int x, int y)
+  {
+    if (size == 0)
+    {
+      return -1;
+    }
+    int cx = column(x);
+    int cy = row(y);
+    int maxRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+    int best = -1;
+    double bestDistance = Double.MAX_VALUE;
+    for (int ring = 0; ring <= maxRing; ring++)
+    {
+      //every point in this ring is at least (ring - 1) cells away
+      double bound = (double) (ring - 1) * cellSize;
+      if (best >= 0 && bound * bound >= bestDistance)
+      {
+        break;
+      }
+      for (int r = cy - ring; r <= cy + ring; r++)
+      {
+        if (r < 0 || r >= rows)
+        {
+          continue;
+        }
+        int step = r == cy - ring || r == cy + ring ? 1 : 2 * ring;
+        for (int c = cx - ring; c <= cx + ring; c += Math.max(1, step))
+        {
+          if (c < 0 || c >= columns)
+          {
+            continue;
+          }
+          int cell = r * columns + c;
+          int[] content = cells[cell];
+          for (int i = 0; i < cellSizes[cell]; i++)
+          {
+            double dx = paths.getX(content[i]) - (double) x;
+            double dy = paths.getY(content[i]) - (double) y;
+            double d = dx * dx + dy * dy;
+            if (d < bestDistance)
+            {
+              best = content[i];
+              bestDistance = d;
+            }
+          }
+        }
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,304 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import java.util.Arrays;
+
+/**
+ * Removes points of polylines which deviate less than the tolerance
+ * from the simplified line (Douglas-Peucker). Points lying exactly on
+ * the line between their neighbours are always removed.
+ * 
+ * It can be used as an optimizer for a whole VectorPart or as a
+ * streaming stage: After begin(target), the moveto and lineto calls
+ * are buffered per polyline and written simplified to the target.
+ * At most MAX_POINTS points are buffered, longer polylines are
+ * simplified in pieces.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PolylineSimplifier extends VectorOptimizer
+{
+
+  private static final int MAX_POINTS = 8192;
+  private double tolerance = 0.025;
+  private double resolution = 500;
+  private VectorPart target;
+  private boolean moved = false;
+  private int count = 0;
+  private int[] xs = new int[64];
+  private int[] ys = new int[64];
+  private boolean[] keep = new boolean[64];
+  private int[] stack = new int[64];
+
+  /**
+   * Get the value of tolerance
+   *
+   * @return the value of tolerance
+   */
+  public double getTolerance()
+  {
+    return tolerance;
+  }
+
+  /**
+   * Set the maximal distance in mm the simplified lines may
+   * differ from the original ones
+   *
+   * @param tolerance new value of tolerance
+   */
+  public void setTolerance(double tolerance)
+  {
+    this.tolerance = Math.max(0, tolerance);
+  }
+
+  /**
+   * Get the value of resolution
+   *
+   * @return the value of resolution
+   */
+  public double getResolution()
+  {
+    return resolution;
+  }
+
+  /**
+   * Set the resolution in DPI of the coordinates, which is
+   * needed to convert the tolerance to pixels
+   *
+   * @param resolution new value of resolution
+   */
+  public void setResolution(double resolution)
+  {
+    this.resolution = resolution;
+  }
+
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    VectorPart result = new VectorPart(vp.getInitialCuttingProperty());
+    begin(result);
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          moveto(c.getX(), c.getY());
+          break;
+        case LINETO:
+          lineto(c.getX(), c.getY());
+          break;
+        case SETPOWER:
+          flush();
+          result.setPower(c.getPower());
+          break;
+        case SETSPEED:
+          flush();
+          result.setSpeed(c.getSpeed());
+          break;
+        case SETFREQUENCY:
+          flush();
+          result.setFrequency(c.getFrequency());
+          break;
+        case SETFOCUS:
+          flush();
+          result.setFocus(c.getFocus());
+          break;
+      }
+    }
+    end();
+    return result;
+  }
+
+  /**
+   * Starts writing simplified polylines to the given VectorPart
+   * 
+   * @param target 
+   */
+  public void begin(VectorPart target)
+  {
+    this.target = target;
+    this.count = 0;
+    this.moved = false;
+  }
+
+  public void moveto(int x, int y)
+  {
+    if (count > 1)
+    {
+      flush();
+    }
+    //a moveto without a lineto afterwards is replaced
+    count = 0;
+    add(x, y);
+    moved = true;
+  }
+
+  public void lineto(int x, int y)
+  {
+    if (count == 0)
+    {
+      //continue at the origin like the drivers do
+      add(0, 0);
+    }
+    add(x, y);
+    if (count == MAX_POINTS)
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Writes the buffered polyline to the target. The polyline
+   * continues at its last point, so this has to be called before
+   * the properties of the target are changed.
+   */
+  public void flush()
+  {
+    if (count < 2)
+    {
+      return;
+    }
+    if (moved)
+    {
+      target.moveto(xs[0], ys[0]);
+      moved = false;
+    }
+    simplify();
+    for (int i = 1; i < count; i++)
+    {
+      if (keep[i])
+      {
+        target.lineto(xs[i], ys[i]);
+      }
+    }
+    xs[0] = xs[count - 1];
+    ys[0] = ys[count - 1];
+    count = 1;
+  }
+
+  /**
+   * Flushes the buffered polyline and stops writing to the target
+   */
+  public void end()
+  {
+    flush();
+    if (moved)
+    {
+      target.moveto(xs[0], ys[0]);
+    }
+    target = null;
+    count = 0;
+    moved = false;
+  }
+
+  private void add(int x, int y)
+  {
+    if (count == xs.length)
+    {
+      xs = Arrays.copyOf(xs, count * 2);
+      ys = Arrays.copyOf(ys, count * 2);
+      keep = new boolean[count * 2];
+    }
+    xs[count] = x;
+    ys[count] = y;
+    count++;
+  }
+
+  /**
+   * Marks the points to keep in the buffer. The ranges still to
+   * check are kept on an explicit stack instead of recursing.
+   */
+  private void simplify()
+  {
+    double tol = Util.mm2px(tolerance, resolution);
+    double tol2 = tol * tol;
+    Arrays.fill(keep, 0, count, false);
+    keep[0] = true;
+    keep[count - 1] = true;
+    int top = 0;
+    stack = push(stack, top, 0, count - 1);
+    top += 2;
+    while (top > 0)
+    {
+      int to = stack[--top];
+      int from = stack[--top];
+      int farthest = -1;
+      double max = tol2;
+      for (int i = from + 1; i < to; i++)
+      {
+        double d = segmentDistance2(xs[i], ys[i], xs[from], ys[from], xs[to], ys[to]);
+        if (d > max)
+        {
+          max = d;
+          farthest = i;
+        }
+      }
+      if (farthest >= 0)
+      {
+        keep[farthest] = true;
+        stack = push(stack, top, from, farthest);
+        top += 2;
+        stack = push(stack, top, farthest, to);
+        top += 2;
+      }
+    }
+  }
+
+  private static int[] push(int[] stack, int top, int from, int to)
+  {
+    if (top + 2 > stack.length)
+    {
+      stack = Arrays.copyOf(stack, stack.length * 2);
+    }
+    stack[top] = from;
+    stack[top + 1] = to;
+    return stack;
+  }
+
+  /**
+   * Returns the squared distance of (x, y) to the segment from (ax, ay)
+   * to (bx, by)
+   */
+  private static double segmentDistance2(int x, int y, int ax, int ay, int bx, int by)
+  {
+    double dx = (double) bx - ax;
+    double dy = (double) by - ay;
+    double px = (double) x - ax;
+    double py = (double) y - ay;
+    double length2 = dx * dx + dy * dy;
+    double t = length2 == 0 ? 0 : (px * dx + py * dy) / length2;
+    if (t <= 0)
+    {
+      return px * px + py * py;
+    }
+    if (t >= 1)
+    {
+      double qx = (double) x - bx;
+      double qy = (double) y - by;
+      return qx * qx + qy * qy;
+    }
+    double cross = px * dy - py * dx;
+    return cross * cross / length2;
+  }
+}
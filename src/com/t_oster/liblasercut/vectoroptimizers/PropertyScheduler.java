@@ -0,0 +1,391 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reorders the paths of a VectorPart, so that all paths with the same
+ * LaserProperty are cut together. This minimizes the number of power,
+ * speed, frequency and focus changes. The groups are sorted by their
+ * focus, so the Z axis sweeps the focus range only once, and the
+ * paths of each group are ordered with a TravelOptimizer.
+ * 
+ * The caller can require that all paths of one property are cut before
+ * the paths of another one (e.g. engrave before cut). If innerFirst is
+ * set, paths lying inside a closed path are cut before it, even if they
+ * use a different property. If the constraints contradict each other,
+ * the contradicting ones are dropped.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PropertyScheduler extends VectorOptimizer
+{
+
+  private boolean innerFirst = false;
+  private List<LaserProperty[]> constraints = new ArrayList<LaserProperty[]>();
+  private int changesBefore = 0;
+  private int changesAfter = 0;
+  private double focusTravelBefore = 0;
+  private double focusTravelAfter = 0;
+
+  /**
+   * Get the value of innerFirst
+   *
+   * @return the value of innerFirst
+   */
+  public boolean isInnerFirst()
+  {
+    return innerFirst;
+  }
+
+  /**
+   * Set the value of innerFirst
+   *
+   * @param innerFirst new value of innerFirst
+   */
+  public void setInnerFirst(boolean innerFirst)
+  {
+    this.innerFirst = innerFirst;
+  }
+
+  /**
+   * Requires that all paths cut with the property first are cut
+   * before the paths cut with the property then. Properties are
+   * compared by their power, speed, frequency and focus.
+   * 
+   * @param first
+   * @param then 
+   */
+  public void addOrderConstraint(LaserProperty first, LaserProperty then)
+  {
+    constraints.add(new LaserProperty[]{first.clone(), then.clone()});
+  }
+
+  /**
+   * Removes all constraints added with addOrderConstraint
+   */
+  public void clearOrderConstraints()
+  {
+    constraints.clear();
+  }
+
+  /**
+   * Returns the number of property changes of the VectorPart
+   * passed to the last call of optimize
+   * @return 
+   */
+  public int getChangesBefore()
+  {
+    return changesBefore;
+  }
+
+  /**
+   * Returns the number of property changes of the VectorPart
+   * returned by the last call of optimize
+   * @return 
+   */
+  public int getChangesAfter()
+  {
+    return changesAfter;
+  }
+
+  /**
+   * Returns the sum of all focus changes in mm of the VectorPart
+   * passed to the last call of optimize
+   * @return 
+   */
+  public double getFocusTravelBefore()
+  {
+    return focusTravelBefore;
+  }
+
+  /**
+   * Returns the sum of all focus changes in mm of the VectorPart
+   * returned by the last call of optimize
+   * @return 
+   */
+  public double getFocusTravelAfter()
+  {
+    return focusTravelAfter;
+  }
+
+  private static boolean sameProperty(LaserProperty a, LaserProperty b)
+  {
+    return a.getPower() == b.getPower() && a.getSpeed() == b.getSpeed()
+      && a.getFrequency() == b.getFrequency() && a.getFocus() == b.getFocus();
+  }
+
+  private static int indexOf(List<LaserProperty> properties, LaserProperty p)
+  {
+    for (int i = 0; i < properties.size(); i++)
+    {
+      if (sameProperty(properties.get(i), p))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    LaserProperty initial = vp.getInitialCuttingProperty();
+    changesBefore = countChanges(vp);
+    focusTravelBefore = getFocusTravel(vp);
+    PathList paths = PathList.split(vp);
+    int count = paths.size();
+    //group the paths by property in order of their first appearance
+    List<LaserProperty> properties = new ArrayList<LaserProperty>();
+    int[] groupOfPath = new int[count];
+    int[] groupSizes = new int[count];
+    LaserProperty last = null;
+    for (int path = 0; path < count; path++)
+    {
+      LaserProperty p = paths.getProperty(path);
+      if (p == last)
+      {
+        groupOfPath[path] = groupOfPath[path - 1];
+      }
+      else
+      {
+        int group = indexOf(properties, p);
+        if (group < 0)
+        {
+          group = properties.size();
+          properties.add(p);
+        }
+        groupOfPath[path] = group;
+        last = p;
+      }
+      groupSizes[groupOfPath[path]]++;
+    }
+    int groupCount = properties.size();
+    boolean[][] before = new boolean[groupCount][groupCount];
+    for (LaserProperty[] c : constraints)
+    {
+      int first = indexOf(properties, c[0]);
+      int then = indexOf(properties, c[1]);
+      if (first >= 0 && then >= 0 && first != then)
+      {
+        before[first][then] = true;
+      }
+    }
+    if (innerFirst)
+    {
+      int[][] containers = TravelOptimizer.findContainers(paths);
+      for (int path = 0; path < count; path++)
+      {
+        for (int c : containers[path])
+        {
+          if (groupOfPath[c] != groupOfPath[path])
+          {
+            before[groupOfPath[path]][groupOfPath[c]] = true;
+          }
+        }
+      }
+    }
+    int[] groupOrder = orderGroups(properties, before, initial.getFocus());
+    setProgress(10);
+    //collect the paths of each group in their original order
+    int[][] members = new int[groupCount][];
+    for (int group = 0; group < groupCount; group++)
+    {
+      members[group] = new int[groupSizes[group]];
+      groupSizes[group] = 0;
+    }
+    int[] entries = new int[count];
+    for (int path = 0; path < count; path++)
+    {
+      members[groupOfPath[path]][groupSizes[groupOfPath[path]]++] = path;
+      entries[path] = paths.getStart(path);
+    }
+    boolean[] reversed = new boolean[count];
+    VectorPart result = new VectorPart(initial);
+    int x = 0;
+    int y = 0;
+    for (int i = 0; i < groupCount; i++)
+    {
+      TravelOptimizer travel = new TravelOptimizer();
+      travel.setInnerFirst(innerFirst);
+      travel.setStart(x, y);
+      VectorPart group = travel.optimize(paths.toVectorPart(members[groupOrder[i]], entries, reversed));
+      //all paths of the group have the same property, so only
+      //the moves and lines of the group part are copied
+      result.setCurrentCuttingProperty(properties.get(groupOrder[i]));
+      VectorCommandCursor c = group.getCommandCursor();
+      while (c.next())
+      {
+        switch (c.getType())
+        {
+          case MOVETO:
+            x = c.getX();
+            y = c.getY();
+            result.moveto(x, y);
+            break;
+          case LINETO:
+            x = c.getX();
+            y = c.getY();
+            result.lineto(x, y);
+            break;
+          default:
+            break;
+        }
+      }
+      setProgress(10 + (i + 1) * 90 / groupCount);
+    }
+    changesAfter = countChanges(result);
+    focusTravelAfter = getFocusTravel(result);
+    setProgress(100);
+    return result;
+  }
+
+  /**
+   * Orders the groups by focus. Without constraints the focus range is
+   * swept once, starting at the end nearer to the initial focus.
+   * Constraints are kept by always taking the first group in that
+   * order, which has no pending predecessors. If all remaining groups
+   * have pending predecessors, the constraints form a cycle and the
+   * first remaining group is taken anyway.
+   */
+  private int[] orderGroups(List<LaserProperty> properties, boolean[][] before, float initialFocus)
+  {
+    final int count = properties.size();
+    Integer[] sweep = new Integer[count];
+    float min = initialFocus;
+    float max = initialFocus;
+    for (int group = 0; group < count; group++)
+    {
+      sweep[group] = group;
+      min = Math.min(min, properties.get(group).getFocus());
+      max = Math.max(max, properties.get(group).getFocus());
+    }
+    final float[] focus = new float[count];
+    final int direction = initialFocus - min <= max - initialFocus ? 1 : -1;
+    for (int group = 0; group < count; group++)
+    {
+      focus[group] = direction * properties.get(group).getFocus();
+    }
+    //stable, so groups with the same focus keep their order
+    Arrays.sort(sweep, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        return Float.compare(focus[a], focus[b]);
+      }
+    });
+    int[] pending = new int[count];
+    for (int a = 0; a < count; a++)
+    {
+      for (int b = 0; b < count; b++)
+      {
+        if (before[a][b])
+        {
+          pending[b]++;
+        }
+      }
+    }
+    boolean[] done = new boolean[count];
+    int[] result = new int[count];
+    for (int i = 0; i < count; i++)
+    {
+      int next = -1;
+      for (int k = 0; k < count && next < 0; k++)
+      {
+        if (!done[sweep[k]] && pending[sweep[k]] == 0)
+        {
+          next = sweep[k];
+        }
+      }
+      for (int k = 0; k < count && next < 0; k++)
+      {
+        if (!done[sweep[k]])
+        {
+          next = sweep[k];
+        }
+      }
+      done[next] = true;
+      result[i] = next;
+      for (int b = 0; b < count; b++)
+      {
+        if (before[next][b])
+        {
+          pending[b]--;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of property commands of the VectorPart
+   * after its first LINETO
+   */
+  public static int countChanges(VectorPart vp)
+  {
+    int result = 0;
+    boolean cutting = false;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          break;
+        case LINETO:
+          cutting = true;
+          break;
+        default:
+          if (cutting)
+          {
+            result++;
+          }
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the sum of all focus changes in mm of the VectorPart
+   */
+  public static double getFocusTravel(VectorPart vp)
+  {
+    double result = 0;
+    float focus = vp.getInitialCuttingProperty().getFocus();
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      if (c.getType() == VectorCommand.CmdType.SETFOCUS)
+      {
+        result += Math.abs(c.getFocus() - focus);
+        focus = c.getFocus();
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,506 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Arrays;
+
+/**
+ * Reorders the paths of a VectorPart to reduce the distance the head
+ * travels with the laser off. The paths are first chained greedily
+ * (always continuing with the nearest free path end, found with a grid
+ * index) and the order is then improved with a windowed 2-opt.
+ * Open paths may be cut backwards and closed paths may be entered
+ * at any of their points.
+ * 
+ * If innerFirst is set, every path lying inside a closed path is cut
+ * before the closed path, so parts do not move before their holes
+ * are cut.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class TravelOptimizer extends VectorOptimizer
+{
+
+  private static final int[] NO_CONTAINERS = new int[0];
+  private boolean innerFirst = false;
+  private int twoOptWindow = 100;
+  private int twoOptPasses = 5;
+  private double travelBefore = 0;
+  private double travelAfter = 0;
+  private int startX = 0;
+  private int startY = 0;
+  private PathList paths;
+  private int[] entries;
+  private boolean[] reversed;
+  private int[][] containers;
+
+  /**
+   * Get the value of innerFirst
+   *
+   * @return the value of innerFirst
+   */
+  public boolean isInnerFirst()
+  {
+    return innerFirst;
+  }
+
+  /**
+   * Set the value of innerFirst
+   *
+   * @param innerFirst new value of innerFirst
+   */
+  public void setInnerFirst(boolean innerFirst)
+  {
+    this.innerFirst = innerFirst;
+  }
+
+  /**
+   * Get the value of twoOptWindow
+   *
+   * @return the value of twoOptWindow
+   */
+  public int getTwoOptWindow()
+  {
+    return twoOptWindow;
+  }
+
+  /**
+   * Set the maximum number of consecutive paths the 2-opt pass
+   * reverses at once. The 2-opt pass takes O(paths * twoOptWindow)
+   * per iteration.
+   *
+   * @param twoOptWindow new value of twoOptWindow
+   */
+  public void setTwoOptWindow(int twoOptWindow)
+  {
+    this.twoOptWindow = Math.max(1, twoOptWindow);
+  }
+
+  /**
+   * Get the value of twoOptPasses
+   *
+   * @return the value of twoOptPasses
+   */
+  public int getTwoOptPasses()
+  {
+    return twoOptPasses;
+  }
+
+  /**
+   * Set the maximum number of 2-opt iterations. 0 disables 2-opt
+   *
+   * @param twoOptPasses new value of twoOptPasses
+   */
+  public void setTwoOptPasses(int twoOptPasses)
+  {
+    this.twoOptPasses = Math.max(0, twoOptPasses);
+  }
+
+  /**
+   * Returns the travel length in pixels of the VectorPart
+   * passed to the last call of optimize
+   * @return 
+   */
+  public double getTravelBefore()
+  {
+    return travelBefore;
+  }
+
+  /**
+   * Returns the travel length in pixels of the VectorPart
+   * returned by the last call of optimize
+   * @return 
+   */
+  public double getTravelAfter()
+  {
+    return travelAfter;
+  }
+
+  /**
+   * Sets the position of the head before the first path.
+   * The default is (0,0)
+   */
+  void setStart(int x, int y)
+  {
+    this.startX = x;
+    this.startY = y;
+  }
+
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    travelBefore = getTravelLength(vp);
+    paths = PathList.split(vp);
+    int count = paths.size();
+    entries = new int[count];
+    reversed = new boolean[count];
+    containers = innerFirst ? findContainers(paths) : null;
+    int[] order = chainNearest();
+    setProgress(50);
+    improve(order);
+    VectorPart result = paths.toVectorPart(order, entries, reversed);
+    travelAfter = getTravelLength(result);
+    paths = null;
+    containers = null;
+    setProgress(100);
+    if (!innerFirst && travelAfter >= travelBefore)
+    {
+      travelAfter = travelBefore;
+      return vp;
+    }
+    return result;
+  }
+
+  private int exitOf(int path)
+  {
+    return paths.getExit(path, entries[path]);
+  }
+
+  private double distance(int x, int y, int point)
+  {
+    return distance(x, y, paths.getX(point), paths.getY(point));
+  }
+
+  private double distance(int pointA, int pointB)
+  {
+    return distance(paths.getX(pointA), paths.getY(pointA), paths.getX(pointB), paths.getY(pointB));
+  }
+
+  /**
+   * Adds (or removes) all points a path can be entered at to the grid
+   */
+  private void index(PointGrid grid, int path, boolean add)
+  {
+    int start = paths.getStart(path);
+    int end = paths.getEnd(path);
+    if (paths.isClosed(path))
+    {
+      for (int p = start; p < end - 1; p++)
+      {
+        if (add)
+        {
+          grid.add(p);
+        }
+        else
+        {
+          grid.remove(p);
+        }
+      }
+    }
+    else
+    {
+      for (int p : new int[]{start, end - 1})
+      {
+        if (add)
+        {
+          grid.add(p);
+        }
+        else
+        {
+          grid.remove(p);
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds the initial order by always continuing with the path
+   * whose entry point is nearest to the current position.
+   * Paths with uncut inner paths are not added to the grid until
+   * all of their inner paths are cut.
+   */
+  private int[] chainNearest()
+  {
+    int count = paths.size();
+    int[] pathOfPoint = new int[paths.getPointCount()];
+    int[] pending = new int[count];
+    for (int path = 0; path < count; path++)
+    {
+      Arrays.fill(pathOfPoint, paths.getStart(path), paths.getEnd(path), path);
+      if (containers != null)
+      {
+        for (int c : containers[path])
+        {
+          pending[c]++;
+        }
+      }
+    }
+    PointGrid grid = new PointGrid(paths);
+    for (int path = 0; path < count; path++)
+    {
+      if (pending[path] == 0)
+      {
+        index(grid, path, true);
+      }
+    }
+    int[] order = new int[count];
+    int x = startX;
+    int y = startY;
+    for (int i = 0; i < count; i++)
+    {
+      int point = grid.nearest(x, y);
+      int path = pathOfPoint[point];
+      index(grid, path, false);
+      entries[path] = point;
+      order[i] = path;
+      int exit = exitOf(path);
+      x = paths.getX(exit);
+      y = paths.getY(exit);
+      if (containers != null)
+      {
+        for (int c : containers[path])
+        {
+          if (--pending[c] == 0)
+          {
+            index(grid, c, true);
+          }
+        }
+      }
+      setProgress(i * 50 / count);
+    }
+    return order;
+  }
+
+  /**
+   * Improves the order with 2-opt moves: Reversing the sequence
+   * order[i..j] also reverses the direction of each of its paths,
+   * so only the two connections at its ends change.
+   */
+  private void improve(int[] order)
+  {
+    int count = order.length;
+    int[] position = new int[count];
+    for (int i = 0; i < count; i++)
+    {
+      position[order[i]] = i;
+    }
+    for (int pass = 0; pass < twoOptPasses; pass++)
+    {
+      boolean improved = false;
+      for (int i = 0; i < count; i++)
+      {
+        int prevExit = i > 0 ? exitOf(order[i - 1]) : -1;
+        int last = Math.min(count - 1, i + twoOptWindow - 1);
+        for (int j = i; j <= last; j++)
+        {
+          int entryI = entries[order[i]];
+          int exitJ = exitOf(order[j]);
+          double before;
+          double after;
+          if (prevExit < 0)
+          {
+            before = distance(startX, startY, entryI);
+            after = distance(startX, startY, exitJ);
+          }
+          else
+          {
+            before = distance(prevExit, entryI);
+            after = distance(prevExit, exitJ);
+          }
+          if (j + 1 < count)
+          {
+            int nextEntry = entries[order[j + 1]];
+            before += distance(exitJ, nextEntry);
+            after += distance(entryI, nextEntry);
+          }
+          if (after < before - 1e-9 && canReverse(order, position, i, j))
+          {
+            reverse(order, position, i, j);
+            improved = true;
+          }
+        }
+      }
+      setProgress(50 + (pass + 1) * 50 / twoOptPasses);
+      if (!improved)
+      {
+        break;
+      }
+    }
+  }
+
+  private boolean canReverse(int[] order, int[] position, int i, int j)
+  {
+    if (containers == null)
+    {
+      return true;
+    }
+    for (int k = i; k <= j; k++)
+    {
+      for (int c : containers[order[k]])
+      {
+        if (position[c] >= i && position[c] <= j)
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void reverse(int[] order, int[] position, int i, int j)
+  {
+    for (int k = i; k <= j; k++)
+    {
+      int path = order[k];
+      entries[path] = exitOf(path);
+      reversed[path] = !reversed[path];
+    }
+    while (i < j)
+    {
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+      position[order[i]] = i;
+      position[order[j]] = j;
+      i++;
+      j--;
+    }
+    if (i == j)
+    {
+      position[order[i]] = i;
+    }
+  }
+
+  /**
+   * For every path returns the closed paths it lies inside of.
+   * A closed path contains another path if its bounding box contains
+   * the bounding box of the other one and the first point of the other
+   * path lies inside of it. Of two paths with equal bounding boxes
+   * only the one with the bigger index can contain the other, so the
+   * relation has no cycles.
+   */
+  static int[][] findContainers(PathList paths)
+  {
+    int count = paths.size();
+    int[] minX = new int[count];
+    int[] minY = new int[count];
+    int[] maxX = new int[count];
+    int[] maxY = new int[count];
+    int closedCount = 0;
+    int[] closed = new int[count];
+    for (int path = 0; path < count; path++)
+    {
+      minX[path] = Integer.MAX_VALUE;
+      minY[path] = Integer.MAX_VALUE;
+      maxX[path] = Integer.MIN_VALUE;
+      maxY[path] = Integer.MIN_VALUE;
+      for (int p = paths.getStart(path); p < paths.getEnd(path); p++)
+      {
+        minX[path] = Math.min(minX[path], paths.getX(p));
+        minY[path] = Math.min(minY[path], paths.getY(p));
+        maxX[path] = Math.max(maxX[path], paths.getX(p));
+        maxY[path] = Math.max(maxY[path], paths.getY(p));
+      }
+      if (paths.isClosed(path))
+      {
+        closed[closedCount++] = path;
+      }
+    }
+    //split the x range into strips and register every closed path in
+    //all strips its bounding box overlaps, so only the closed paths of the
+    //strip of its first point have to be checked for each path
+    int left = Integer.MAX_VALUE;
+    int right = Integer.MIN_VALUE;
+    for (int k = 0; k < closedCount; k++)
+    {
+      left = Math.min(left, minX[closed[k]]);
+      right = Math.max(right, maxX[closed[k]]);
+    }
+    int stripCount = (int) Math.max(1, Math.min(1024, Math.sqrt(closedCount)));
+    double stripWidth = ((double) right - left + 1) / stripCount;
+    int[][] strips = new int[stripCount][];
+    int[] stripSizes = new int[stripCount];
+    for (int k = 0; k < closedCount; k++)
+    {
+      int c = closed[k];
+      int to = (int) ((maxX[c] - (double) left) / stripWidth);
+      for (int strip = (int) ((minX[c] - (double) left) / stripWidth); strip <= to; strip++)
+      {
+        if (strips[strip] == null)
+        {
+          strips[strip] = new int[4];
+        }
+        else if (stripSizes[strip] == strips[strip].length)
+        {
+          strips[strip] = Arrays.copyOf(strips[strip], stripSizes[strip] * 2);
+        }
+        strips[strip][stripSizes[strip]++] = c;
+      }
+    }
+    int[][] result = new int[count][];
+    int[] found = new int[closedCount];
+    for (int path = 0; path < count; path++)
+    {
+      int n = 0;
+      int x = paths.getX(paths.getStart(path));
+      if (closedCount > 0 && x >= left && x <= right)
+      {
+        int strip = (int) ((x - (double) left) / stripWidth);
+        for (int k = 0; k < stripSizes[strip]; k++)
+        {
+          int c = strips[strip][k];
+          if (c == path
+            || minX[c] > minX[path] || minY[c] > minY[path]
+            || maxX[c] < maxX[path] || maxY[c] < maxY[path])
+          {
+            continue;
+          }
+          boolean sameBox = minX[c] == minX[path] && minY[c] == minY[path]
+            && maxX[c] == maxX[path] && maxY[c] == maxY[path];
+          if ((!sameBox || c > path) && contains(paths, c, paths.getStart(path)))
+          {
+            found[n++] = c;
+          }
+        }
+      }
+      result[path] = n == 0 ? NO_CONTAINERS : Arrays.copyOf(found, n);
+    }
+    return result;
+  }
+
+  /**
+   * Even-odd test, if the given point lies inside of the closed path
+   */
+  private static boolean contains(PathList paths, int path, int point)
+  {
+    long x = paths.getX(point);
+    long y = paths.getY(point);
+    boolean inside = false;
+    int end = paths.getEnd(path);
+    for (int a = paths.getStart(path), b = a + 1; b < end; a++, b++)
+    {
+      long ax = paths.getX(a);
+      long ay = paths.getY(a);
+      long bx = paths.getX(b);
+      long by = paths.getY(b);
+      if ((ay > y) != (by > y))
+      {
+        //x coordinate of the intersection is ax + (y - ay) * (bx - ax) / (by - ay)
+        long lhs = (x - ax) * (by - ay);
+        long rhs = (y - ay) * (bx - ax);
+        if (by > ay ? lhs < rhs : lhs > rhs)
+        {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive ids to tuples of ints. It is an open addressing
+ * hash table which stores the keys in one flat array, so it does not
+ * create an object per key and can hold millions of them.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+class TupleIndex
+{
+
+  private final int arity;
+  private int[] keys;
+  private int[] table;
+  private int size = 0;
+
+  TupleIndex(int arity, int expectedSize)
+  {
+    this.arity = arity;
+    int capacity = 16;
+    while (capacity < 2L * expectedSize && capacity < (1 << 30))
+    {
+      capacity <<= 1;
+    }
+    table = new int[capacity];
+    keys = new int[Math.max(16, expectedSize) * arity];
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Returns the i-th int of the key with the given id
+   */
+  int getKey(int id, int i)
+  {
+    return keys[id * arity + i];
+  }
+
+  private int hash(int[] key, int offset)
+  {
+    int h = 0;
+    for (int i = 0; i < arity; i++)
+    {
+      h = (h + key[offset + i]) * 0x9E3779B9;
+      h ^= h >>> 16;
+    }
+    return h;
+  }
+
+  private boolean matches(int id, int[] key)
+  {
+    int offset = id * arity;
+    for (int i = 0; i < arity; i++)
+    {
+      if (keys[offset + i] != key[i])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the id of the given key, which has to have arity ints.
+   * Unknown keys get the next free id.
+   */
+  int getId(int[] key)
+  {
+    int mask = table.length - 1;
+    int slot = hash(key, 0) & mask;
+    while (table[slot] != 0)
+    {
+      int id = table[slot] - 1;
+      if (matches(id, key))
+      {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int id = size++;
+    if (keys.length < size * arity)
+    {
+      keys = Arrays.copyOf(keys, keys.length * 2);
+    }
+    System.arraycopy(key, 0, keys, id * arity, arity);
+    table[slot] = id + 1;
+    if (2L * size > table.length)
+    {
+      rehash();
+    }
+    return id;
+  }
+
+  private void rehash()
+  {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int id = 0; id < size; id++)
+    {
+      int slot = hash(keys, id * arity) & mask;
+      while (table[slot] != 0)
+      {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = id + 1;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * This file is part of VisiCut.
+ * Copyright (C) 2011 Thomas Oster <thomas.oster@rwth-aachen.de>
+ * RWTH Aachen University - 52062 Aachen, Germany
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.TimeIntensiveOperation;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+
+/**
+ * A VectorOptimizer transforms a VectorPart into a new VectorPart,
+ * which cuts the same lines with the same properties, but can be
+ * executed faster. Because the result is a plain VectorPart it can
+ * be sent with every driver.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public abstract class VectorOptimizer extends TimeIntensiveOperation
+{
+
+  /**
+   * Returns the optimized version of the given VectorPart.
+   * The given VectorPart is not modified, but it may be returned
+   * if it can not be improved.
+   * 
+   * @param vp
+   * @return 
+   */
+  public abstract VectorPart optimize(VectorPart vp);
+
+  /**
+   * Returns the distance in pixels the head travels with the laser
+   * off, when executing the given VectorPart from the origin
+   * 
+   * @param vp
+   * @return 
+   */
+  public static double getTravelLength(VectorPart vp)
+  {
+    double result = 0;
+    int x = 0;
+    int y = 0;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          result += distance(x, y, c.getX(), c.getY());
+          x = c.getX();
+          y = c.getY();
+          break;
+        case LINETO:
+          x = c.getX();
+          y = c.getY();
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the length in pixels of all lines cut by the given VectorPart
+   * 
+   * @param vp
+   * @return 
+   */
+  public static double getCutLength(VectorPart vp)
+  {
+    double result = 0;
+    int x = 0;
+    int y = 0;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          x = c.getX();
+          y = c.getY();
+          break;
+        case LINETO:
+          result += distance(x, y, c.getX(), c.getY());
+          x = c.getX();
+          y = c.getY();
+          break;
+      }
+    }
+    return result;
+  }
+
+  protected static double distance(int x1, int y1, int x2, int y2)
+  {
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+}
@@ -102,4 +102,78 @@ public class BlackWhiteRasterTest
       }
     }
   }
+
+  @Test
+  public void testRowOperations()
+  {
+    BlackWhiteRaster ras = new BlackWhiteRaster(21, 3);
+    assertEquals(3, ras.getBytesPerRow());
+    assertTrue(ras.isRowEmpty(0));
+    assertEquals(-1, ras.getFirstBlackPixel(0));
+    assertEquals(-1, ras.getLastBlackPixel(0));
+    ras.setBlack(3, 1, true);
+    ras.setBlack(9, 1, true);
+    ras.setBlack(20, 1, true);
+    assertEquals(3, ras.getFirstBlackPixel(1));
+    assertEquals(20, ras.getLastBlackPixel(1));
+    assertEquals(3, ras.countBlackPixels(1));
+    byte[] row = new byte[4];
+    ras.getRow(1, row, 1);
+    assertEquals((byte) 0x10, row[1]);
+    assertEquals((byte) 0x40, row[2]);
+    assertEquals((byte) 0x08, row[3]);
+    //padding bits beyond the width must not become black
+    ras.setRow(2, new byte[]{0, 0, (byte) 0xFF}, 0);
+    assertEquals(20, ras.getLastBlackPixel(2));
+    assertEquals(5, ras.countBlackPixels(2));
+    ras.orRow(2, ras, 1);
+    assertEquals(3, ras.getFirstBlackPixel(2));
+    assertEquals(7, ras.countBlackPixels(2));
+    assertTrue(ras.isBlack(9, 2));
+  }
+
+  @Test
+  public void testIndexAndCrop()
+  {
+    BlackWhiteRaster r = new BlackWhiteRaster(30, 10);
+    assertTrue(r.isEmpty());
+    assertEquals(10, r.getNextNonEmptyRow(0));
+    r.setBlack(5, 3, true);
+    r.setBlack(21, 3, true);
+    r.setBlack(11, 7, true);
+    assertFalse(r.isEmpty());
+    assertEquals(5, r.getFirstBlackPixel(3));
+    assertEquals(21, r.getLastBlackPixel(3));
+    assertTrue(r.isRowEmpty(4));
+    assertEquals(3, r.getNextNonEmptyRow(0));
+    assertEquals(7, r.getNextNonEmptyRow(4));
+    assertEquals(10, r.getNextNonEmptyRow(8));
+    assertEquals(5, r.getContentLeft());
+    assertEquals(3, r.getContentTop());
+    assertEquals(22, r.getContentRight());
+    assertEquals(8, r.getContentBottom());
+    //the index has to be updated after modifications
+    r.setBlack(21, 3, false);
+    assertEquals(5, r.getLastBlackPixel(3));
+    assertEquals(12, r.getContentRight());
+    r.setBlack(21, 3, true);
+
+    BlackWhiteRaster c = r.cropToContent();
+    assertEquals(17, c.getWidth());
+    assertEquals(5, c.getHeight());
+    for (int y = 0; y < c.getHeight(); y++)
+    {
+      for (int x = 0; x < c.getWidth(); x++)
+      {
+        assertEquals(r.isBlack(x + 5, y + 3), c.isBlack(x, y));
+      }
+    }
+
+    RasterPart rp = new RasterPart(new LaserProperty());
+    rp.setAutoCrop(true);
+    rp.addImage(r, new com.t_oster.liblasercut.platform.Point(100, 200));
+    assertEquals(105, rp.getRasterStart(0).x);
+    assertEquals(203, rp.getRasterStart(0).y);
+    assertEquals(17, rp.getRasterWidth(0));
+  }
 }
@@ -0,0 +1,55 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ByteGreyscaleRasterTest
+{
+
+  @Test
+  public void testPixelsAndRows()
+  {
+    ByteGreyscaleRaster r = new ByteGreyscaleRaster(13, 7);
+    for (int y = 0; y < r.getHeight(); y++)
+    {
+      for (int x = 0; x < r.getWidth(); x++)
+      {
+        r.setGreyScale(x, y, (x * 31 + y * 17) % 256);
+      }
+    }
+    ByteGreyscaleRaster copy = new ByteGreyscaleRaster(r);
+    int[] row = new int[13];
+    byte[] bytes = new byte[13];
+    for (int y = 0; y < r.getHeight(); y++)
+    {
+      copy.getRow(y, row);
+      copy.getRow(y, bytes);
+      for (int x = 0; x < r.getWidth(); x++)
+      {
+        assertEquals((x * 31 + y * 17) % 256, r.getGreyScale(x, y));
+        assertEquals(r.getGreyScale(x, y), row[x]);
+        assertEquals(r.getGreyScale(x, y), bytes[x] & 0xFF);
+      }
+    }
+  }
+}
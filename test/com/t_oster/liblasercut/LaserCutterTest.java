@@ -0,0 +1,242 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class LaserCutterTest
+{
+
+  /**
+   * Connects to the given port and waits until the peer sends something
+   */
+  private static class BlockingCutter extends LaserCutter
+  {
+
+    private int port;
+    private CountDownLatch connected = new CountDownLatch(1);
+    private CountDownLatch finished = new CountDownLatch(1);
+    private Socket socket;
+
+    BlockingCutter(int port)
+    {
+      this.port = port;
+    }
+
+    @Override
+    public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+    {
+      try
+      {
+        if (job == null)
+        {
+          throw new IllegalJobException("no job");
+        }
+        socket = new Socket("localhost", port);
+        registerResource(new Closeable()
+        {
+
+          public void close() throws IOException
+          {
+            socket.close();
+          }
+        });
+        connected.countDown();
+        InputStream in = socket.getInputStream();
+        in.read();
+        checkCancelled();
+        pl.taskChanged(this, "sent");
+      }
+      finally
+      {
+        finished.countDown();
+      }
+    }
+
+    @Override
+    public List<Integer> getResolutions()
+    {
+      return new ArrayList<Integer>();
+    }
+
+    @Override
+    public double getBedWidth()
+    {
+      return 0;
+    }
+
+    @Override
+    public double getBedHeight()
+    {
+      return 0;
+    }
+
+    @Override
+    public List<String> getSettingAttributes()
+    {
+      return new ArrayList<String>();
+    }
+
+    @Override
+    public String getSettingValue(String attribute)
+    {
+      return null;
+    }
+
+    @Override
+    public void setSettingValue(String attribute, String value)
+    {
+    }
+
+    @Override
+    public int estimateJobDuration(LaserJob job)
+    {
+      return 0;
+    }
+
+    @Override
+    public String getModelName()
+    {
+      return "Blocking";
+    }
+
+    @Override
+    public LaserCutter clone()
+    {
+      return new BlockingCutter(port);
+    }
+  }
+
+  private static class TaskRecorder implements ProgressListener
+  {
+
+    private List<String> tasks = new ArrayList<String>();
+
+    public void progressChanged(Object source, int percent)
+    {
+    }
+
+    public synchronized void taskChanged(Object source, String taskName)
+    {
+      tasks.add(taskName);
+    }
+  }
+
+  @Test
+  public void testSendJobAsync() throws Exception
+  {
+    ServerSocket server = new ServerSocket(0);
+    try
+    {
+      BlockingCutter instance = new BlockingCutter(server.getLocalPort());
+      TaskRecorder pl = new TaskRecorder();
+      Future<Void> result = instance.sendJobAsync(new LaserJob("test", "1", "user", 500, null, null, null), pl);
+      Socket peer = server.accept();
+      peer.getOutputStream().write(0);
+      assertNull(result.get(5, TimeUnit.SECONDS));
+      assertTrue(pl.tasks.contains("sent"));
+      peer.close();
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testException() throws Exception
+  {
+    BlockingCutter instance = new BlockingCutter(0);
+    try
+    {
+      instance.sendJobAsync(null, new TaskRecorder()).get(5, TimeUnit.SECONDS);
+      fail("no exception");
+    }
+    catch (ExecutionException e)
+    {
+      assertTrue(e.getCause() instanceof IllegalJobException);
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception
+  {
+    ServerSocket server = new ServerSocket(0);
+    try
+    {
+      BlockingCutter instance = new BlockingCutter(server.getLocalPort());
+      Future<Void> result = instance.sendJobAsync(new LaserJob("test", "1", "user", 500, null, null, null), new TaskRecorder());
+      Socket peer = server.accept();
+      assertTrue(instance.connected.await(5, TimeUnit.SECONDS));
+      assertTrue(result.cancel(true));
+      //the blocking read returns as the socket is closed
+      assertTrue(instance.finished.await(5, TimeUnit.SECONDS));
+      assertTrue(instance.socket.isClosed());
+      try
+      {
+        result.get();
+        fail("not cancelled");
+      }
+      catch (CancellationException e)
+      {
+      }
+      peer.close();
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testExecutor() throws Exception
+  {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    BlockingCutter instance = new BlockingCutter(0);
+    instance.setExecutor(new Executor()
+    {
+
+      public void execute(Runnable command)
+      {
+        tasks.add(command);
+      }
+    });
+    Future<Void> result = instance.sendJobAsync(null, new TaskRecorder());
+    assertEquals(1, tasks.size());
+    assertFalse(result.isDone());
+    tasks.get(0).run();
+    assertTrue(result.isDone());
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class RasterRunsTest
+{
+
+  /**
+   * Checks that the runs cover exactly the pixels between the first
+   * and last non-white pixel and that neighbouring runs differ
+   */
+  private void assertRuns(RasterRuns runs, int[] pixels)
+  {
+    int first = 0;
+    while (first < pixels.length && pixels[first] == 0)
+    {
+      first++;
+    }
+    if (first == pixels.length)
+    {
+      assertTrue(runs.isEmpty());
+      return;
+    }
+    int x = first;
+    for (int i = 0; i < runs.getCount(); i++)
+    {
+      assertEquals(x, runs.getStart(i));
+      assertTrue(runs.getEnd(i) > runs.getStart(i));
+      if (i > 0)
+      {
+        assertTrue(runs.getValue(i) != runs.getValue(i - 1));
+      }
+      for (; x < runs.getEnd(i); x++)
+      {
+        assertEquals(pixels[x], runs.getValue(i));
+      }
+    }
+    assertTrue(runs.getValue(0) != 0);
+    assertTrue(runs.getValue(runs.getCount() - 1) != 0);
+    for (; x < pixels.length; x++)
+    {
+      assertEquals(0, pixels[x]);
+    }
+  }
+
+  @Test
+  public void testBlackWhiteRuns()
+  {
+    java.util.Random r = new java.util.Random(7);
+    RasterRuns runs = new RasterRuns();
+    for (int width = 1; width < 150; width += 7)
+    {
+      BlackWhiteRaster bwr = new BlackWhiteRaster(width, 20);
+      for (int y = 0; y < bwr.getHeight(); y++)
+      {
+        //rows with short and long runs
+        int runLength = 1 + y * 5;
+        boolean black = r.nextBoolean();
+        int[] pixels = new int[width];
+        for (int x = 0; x < width; x++)
+        {
+          if (r.nextInt(runLength) == 0)
+          {
+            black = !black;
+          }
+          bwr.setBlack(x, y, black);
+          pixels[x] = black ? 255 : 0;
+        }
+        runs.extract(bwr, y);
+        assertRuns(runs, pixels);
+      }
+    }
+  }
+
+  @Test
+  public void testGreyscaleRuns()
+  {
+    RasterRuns runs = new RasterRuns();
+    byte[] line = new byte[]
+    {
+      0, 0, 5, 5, 5, (byte) 200, 0, 0, 5, 0, 0
+    };
+    runs.extract(line, 0, line.length);
+    int[] pixels = new int[line.length];
+    for (int i = 0; i < line.length; i++)
+    {
+      pixels[i] = line[i] & 0xFF;
+    }
+    assertRuns(runs, pixels);
+    assertEquals(4, runs.getCount());
+    runs.extract(new byte[4], 0, 4);
+    assertTrue(runs.isEmpty());
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class VectorPartTest
+{
+
+  @Test
+  public void testCommandCursor()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty(50, 60, 1000));
+    vp.moveto(10, 20);
+    vp.setFocus(2.5f);
+    vp.lineto(-30, 40);
+    vp.setPower(70);
+    assertEquals(7, vp.getCommandCount());
+    VectorCommandCursor c = vp.getCommandCursor();
+    assertTrue(c.next());
+    assertEquals(VectorCommand.CmdType.SETPOWER, c.getType());
+    assertEquals(50, c.getPower());
+    assertTrue(c.next());
+    assertEquals(60, c.getSpeed());
+    assertTrue(c.next());
+    assertEquals(1000, c.getFrequency());
+    assertTrue(c.next());
+    assertEquals(VectorCommand.CmdType.MOVETO, c.getType());
+    assertEquals(10, c.getX());
+    assertEquals(20, c.getY());
+    assertTrue(c.next());
+    assertEquals(2.5f, c.getFocus(), 0);
+    assertTrue(c.next());
+    assertEquals(VectorCommand.CmdType.LINETO, c.getType());
+    assertEquals(-30, c.getX());
+    assertEquals(40, c.getY());
+    assertTrue(c.next());
+    assertEquals(70, c.getPower());
+    assertFalse(c.next());
+  }
+
+  @Test
+  public void testCommandList()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    for (int i = 0; i < 1000; i++)
+    {
+      vp.lineto(i, 2 * i);
+    }
+    VectorCommand[] cmds = vp.getCommandList();
+    assertEquals(1003, cmds.length);
+    assertEquals(VectorCommand.CmdType.LINETO, cmds[502].getType());
+    assertEquals(499, cmds[502].getX());
+    assertEquals(998, cmds[502].getY());
+  }
+}
@@ -0,0 +1,376 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.dispatch;
+
+import com.t_oster.liblasercut.IllegalJobException;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.PreparedJob;
+import com.t_oster.liblasercut.ProgressListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class JobDispatcherTest
+{
+
+  /**
+   * A Lasercutter model with the given resolution, which estimates
+   * the name of a job as its duration in seconds. The estimation
+   * takes estimateDelay milliseconds
+   */
+  private static class Model extends LaserCutter
+  {
+
+    private int resolution;
+    private int estimateDelay;
+
+    Model(int resolution, int estimateDelay)
+    {
+      this.resolution = resolution;
+      this.estimateDelay = estimateDelay;
+    }
+
+    Model(int resolution)
+    {
+      this(resolution, 0);
+    }
+
+    @Override
+    public void sendJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Integer> getResolutions()
+    {
+      return Arrays.asList(new Integer[]{resolution});
+    }
+
+    @Override
+    public double getBedWidth()
+    {
+      return 600;
+    }
+
+    @Override
+    public double getBedHeight()
+    {
+      return 300;
+    }
+
+    @Override
+    public List<String> getSettingAttributes()
+    {
+      return new ArrayList<String>();
+    }
+
+    @Override
+    public String getSettingValue(String attribute)
+    {
+      return null;
+    }
+
+    @Override
+    public void setSettingValue(String attribute, String value)
+    {
+    }
+
+    @Override
+    public int estimateJobDuration(LaserJob job)
+    {
+      if (estimateDelay > 0)
+      {
+        try
+        {
+          Thread.sleep(estimateDelay);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return Integer.parseInt(job.getName());
+    }
+
+    @Override
+    public String getModelName()
+    {
+      return "Model " + resolution;
+    }
+
+    @Override
+    public LaserCutter clone()
+    {
+      return new Model(resolution, estimateDelay);
+    }
+  }
+
+  /**
+   * A Lasercutter model, which records the threads preparing
+   * and sending the jobs and the closed jobs
+   */
+  private static class PreparingModel extends Model
+  {
+
+    private List<Thread> preparing;
+    private List<Thread> sending;
+    private List<PreparedJob> closed;
+
+    PreparingModel(int resolution, List<Thread> preparing, List<Thread> sending, List<PreparedJob> closed)
+    {
+      super(resolution);
+      this.preparing = preparing;
+      this.sending = sending;
+      this.closed = closed;
+    }
+
+    @Override
+    public PreparedJob prepareJob(LaserJob job, ProgressListener pl) throws IllegalJobException, Exception
+    {
+      checkJob(job);
+      preparing.add(Thread.currentThread());
+      return new PreparedJob(job)
+      {
+
+        @Override
+        public void close()
+        {
+          closed.add(this);
+        }
+      };
+    }
+
+    @Override
+    public void sendPreparedJob(PreparedJob job, ProgressListener pl) throws IllegalJobException, Exception
+    {
+      sending.add(Thread.currentThread());
+    }
+
+    @Override
+    public LaserCutter clone()
+    {
+      return new PreparingModel(getResolutions().get(0), preparing, sending, closed);
+    }
+  }
+
+  private static final ProgressListener NO_PROGRESS = new ProgressListener()
+  {
+
+    public void progressChanged(Object source, int percent)
+    {
+    }
+
+    public void taskChanged(Object source, String taskName)
+    {
+    }
+  };
+
+  /**
+   * A job of the given resolution, which takes the given number of
+   * milliseconds on a SimulatedLaserCutter with time scale 0.001
+   */
+  private static LaserJob job(int resolution, int millis)
+  {
+    return new LaserJob("job", "" + millis, "user", resolution, null, null, null);
+  }
+
+  @Test
+  public void testPlacement() throws Exception
+  {
+    JobDispatcher instance = new JobDispatcher(16, 1);
+    SimulatedLaserCutter a = new SimulatedLaserCutter(new Model(500), 0.001);
+    SimulatedLaserCutter b = new SimulatedLaserCutter(new Model(500), 0.001);
+    instance.addCutter(a);
+    instance.addCutter(b);
+    List<Future<LaserCutter>> results = new ArrayList<Future<LaserCutter>>();
+    //a long job and three short ones, which fit next to it
+    results.add(instance.submit(job(500, 300), NO_PROGRESS));
+    for (int i = 0; i < 3; i++)
+    {
+      results.add(instance.submit(job(500, 50), NO_PROGRESS));
+    }
+    LaserCutter first = results.get(0).get(5, TimeUnit.SECONDS);
+    for (int i = 1; i < results.size(); i++)
+    {
+      assertNotSame(first, results.get(i).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, instance.getFinishedJobs(first));
+    assertEquals(3, instance.getFinishedJobs(first == a ? b : a));
+    //the jobs are sent by clones, which share the counter
+    assertEquals(instance.getFinishedJobs(a), a.getSentJobs());
+    assertEquals(instance.getFinishedJobs(b), b.getSentJobs());
+    assertEquals(0, instance.getQueuedJobs());
+    assertEquals(0, instance.getPendingJobs(a));
+    assertEquals(0, instance.getBacklog(a), 1e-9);
+    assertTrue(instance.getUtilisation(first) > 0);
+    instance.shutdown();
+  }
+
+  @Test
+  public void testConcurrentPlacement() throws Exception
+  {
+    //all workers estimate at the same time and must still
+    //see the jobs placed by each other
+    JobDispatcher instance = new JobDispatcher(16, 8);
+    List<LaserCutter> cutters = new ArrayList<LaserCutter>();
+    for (int i = 0; i < 4; i++)
+    {
+      LaserCutter c = new SimulatedLaserCutter(new Model(500, 20), 0.001);
+      cutters.add(c);
+      instance.addCutter(c);
+    }
+    List<Future<LaserCutter>> results = new ArrayList<Future<LaserCutter>>();
+    for (int i = 0; i < 8; i++)
+    {
+      results.add(instance.submit(job(500, 300), NO_PROGRESS));
+    }
+    for (Future<LaserCutter> f : results)
+    {
+      f.get(10, TimeUnit.SECONDS);
+    }
+    for (LaserCutter c : cutters)
+    {
+      assertEquals(2, instance.getFinishedJobs(c));
+    }
+    instance.shutdown();
+  }
+
+  @Test
+  public void testCompatibility() throws Exception
+  {
+    JobDispatcher instance = new JobDispatcher(16, 2);
+    LaserCutter low = new SimulatedLaserCutter(new Model(250), 0.001);
+    LaserCutter high = new SimulatedLaserCutter(new Model(1000), 0.001);
+    instance.addCutter(low);
+    instance.addCutter(high);
+    assertSame(high, instance.submit(job(1000, 10), NO_PROGRESS).get(5, TimeUnit.SECONDS));
+    assertSame(low, instance.submit(job(250, 10), NO_PROGRESS).get(5, TimeUnit.SECONDS));
+    try
+    {
+      instance.submit(job(500, 10), NO_PROGRESS).get(5, TimeUnit.SECONDS);
+      fail("no exception");
+    }
+    catch (ExecutionException e)
+    {
+      assertTrue(e.getCause() instanceof IllegalJobException);
+    }
+    assertEquals(0, instance.getQueuedJobs());
+    instance.shutdown();
+  }
+
+  @Test
+  public void testBoundedQueue() throws Exception
+  {
+    JobDispatcher instance = new JobDispatcher(1, 1);
+    instance.addCutter(new SimulatedLaserCutter(new Model(500), 0.001));
+    Future<LaserCutter> result = instance.offer(job(500, 200), NO_PROGRESS);
+    assertNotNull(result);
+    assertNull(instance.offer(job(500, 10), NO_PROGRESS));
+    result.get(5, TimeUnit.SECONDS);
+    result = instance.offer(job(500, 10), NO_PROGRESS);
+    assertNotNull(result);
+    result.get(5, TimeUnit.SECONDS);
+    instance.shutdown();
+  }
+
+  @Test
+  public void testCancel() throws Exception
+  {
+    JobDispatcher instance = new JobDispatcher(4, 1);
+    SimulatedLaserCutter cutter = new SimulatedLaserCutter(new Model(500), 0.001);
+    instance.addCutter(cutter);
+    Future<LaserCutter> result = instance.submit(job(500, 60000), NO_PROGRESS);
+    //wait until it is sent
+    while (instance.getUtilisation(cutter) == 0)
+    {
+      Thread.sleep(10);
+    }
+    assertTrue(result.cancel(true));
+    assertTrue(result.isCancelled());
+    try
+    {
+      result.get(5, TimeUnit.SECONDS);
+      fail("not cancelled");
+    }
+    catch (CancellationException e)
+    {
+    }
+    //the Lasercutter is free again
+    assertSame(cutter, instance.submit(job(500, 10), NO_PROGRESS).get(5, TimeUnit.SECONDS));
+    assertEquals(2, instance.getFinishedJobs(cutter));
+    instance.shutdown();
+  }
+
+  @Test
+  public void testPreparer() throws Exception
+  {
+    JobDispatcher instance = new JobDispatcher(4, 1);
+    SimulatedLaserCutter cutter = new SimulatedLaserCutter(new Model(500), 0.001);
+    instance.addCutter(cutter);
+    instance.setPreparer(new JobDispatcher.JobPreparer()
+    {
+
+      public LaserJob prepare(LaserJob job, LaserCutter cutter)
+      {
+        return job(job.getResolution(), 1);
+      }
+    });
+    assertSame(cutter, instance.submit(job(500, 60000), NO_PROGRESS).get(5, TimeUnit.SECONDS));
+    instance.shutdown();
+  }
+
+  @Test
+  public void testPrepareOnWorkers() throws Exception
+  {
+    List<Thread> preparing = Collections.synchronizedList(new ArrayList<Thread>());
+    List<Thread> sending = Collections.synchronizedList(new ArrayList<Thread>());
+    List<PreparedJob> closed = Collections.synchronizedList(new ArrayList<PreparedJob>());
+    JobDispatcher instance = new JobDispatcher(4, 2);
+    instance.addCutter(new PreparingModel(500, preparing, sending, closed));
+    List<Future<LaserCutter>> results = new ArrayList<Future<LaserCutter>>();
+    for (int i = 0; i < 4; i++)
+    {
+      results.add(instance.submit(job(500, 10), NO_PROGRESS));
+    }
+    for (Future<LaserCutter> f : results)
+    {
+      f.get(5, TimeUnit.SECONDS);
+    }
+    assertEquals(4, preparing.size());
+    assertEquals(4, sending.size());
+    assertEquals(4, closed.size());
+    //the thread of the Lasercutter only sends
+    for (Thread t : sending)
+    {
+      assertFalse(preparing.contains(t));
+    }
+    instance.shutdown();
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.dithering;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.GreyscaleRaster;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class DitheringAlgorithmTest
+{
+
+  private static class TestRaster implements GreyscaleRaster
+  {
+
+    private int[][] grey;
+
+    public TestRaster(int width, int height)
+    {
+      grey = new int[width][height];
+      for (int x = 0; x < width; x++)
+      {
+        for (int y = 0; y < height; y++)
+        {
+          grey[x][y] = (x * 7 + y * 13 + (x * y) % 17) % 256;
+        }
+      }
+    }
+
+    public int getWidth()
+    {
+      return grey.length;
+    }
+
+    public int getGreyScale(int x, int y)
+    {
+      return grey[x][y];
+    }
+
+    public void setGreyScale(int x, int y, int value)
+    {
+      grey[x][y] = value;
+    }
+
+    public int getHeight()
+    {
+      return grey[0].length;
+    }
+  }
+
+  private void assertSameResult(DitheringAlgorithm a, DitheringAlgorithm b)
+  {
+    TestRaster src = new TestRaster(131, 301);
+    a.setThreadCount(1);
+    b.setThreadCount(4);
+    BlackWhiteRaster ra = a.dither(src);
+    BlackWhiteRaster rb = b.dither(src);
+    for (int y = 0; y < src.getHeight(); y++)
+    {
+      for (int x = 0; x < src.getWidth(); x++)
+      {
+        assertEquals(ra.isBlack(x, y), rb.isBlack(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testOrdered()
+  {
+    assertSameResult(new Ordered(), new Ordered());
+  }
+
+  @Test
+  public void testAverage()
+  {
+    assertSameResult(new Average(), new Average());
+    assertSameResult(new Grid(), new Grid());
+  }
+
+  @Test
+  public void testRandom()
+  {
+    Random a = new Random();
+    Random b = new Random();
+    a.setSeed(42);
+    b.setSeed(42);
+    assertSameResult(a, b);
+  }
+
+  @Test
+  public void testFloydSteinberg()
+  {
+    assertSameResult(new FloydSteinberg(), new FloydSteinberg());
+    //compare with the original sequential implementation
+    TestRaster src = new TestRaster(131, 301);
+    FloydSteinberg fs = new FloydSteinberg();
+    fs.setThreadCount(3);
+    BlackWhiteRaster result = fs.dither(src);
+    int width = src.getWidth();
+    int height = src.getHeight();
+    int[][] input = new int[width][height];
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        input[x][y] = src.getGreyScale(x, y);
+      }
+    }
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        boolean black = input[x][y] <= 127;
+        assertEquals(black, result.isBlack(x, y));
+        int error = input[x][y] - (black ? 0 : 255);
+        if (x + 1 < width)
+        {
+          input[x + 1][y] += 7 * error / 16;
+          if (y + 1 < height)
+          {
+            input[x + 1][y + 1] += 1 * error / 16;
+          }
+        }
+        if (y + 1 < height)
+        {
+          input[x][y + 1] += 5 * error / 16;
+          if (x > 0)
+          {
+            input[x - 1][y + 1] += 3 * error / 16;
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDefaultThreadCount()
+  {
+    assertEquals(1, new FloydSteinberg().getThreadCount());
+    assertEquals(1, new Ordered().getThreadCount());
+  }
+
+  @Test
+  public void testSharedExecutor() throws Exception
+  {
+    //fewer threads than tasks, so Floyd-Steinberg must not
+    //wait for rows, which are not taken yet
+    ExecutorService shared = Executors.newFixedThreadPool(2);
+    try
+    {
+      TestRaster src = new TestRaster(131, 301);
+      DitheringAlgorithm[] algorithms = new DitheringAlgorithm[]
+      {
+        new FloydSteinberg(), new Ordered(), new Average()
+      };
+      for (DitheringAlgorithm a : algorithms)
+      {
+        BlackWhiteRaster expected = a.dither(src);
+        a.setThreadCount(4);
+        a.setExecutor(shared);
+        BlackWhiteRaster result = a.dither(src);
+        for (int y = 0; y < src.getHeight(); y++)
+        {
+          for (int x = 0; x < src.getWidth(); x++)
+          {
+            assertEquals(expected.isBlack(x, y), result.isBlack(x, y));
+          }
+        }
+      }
+      //the pool is still usable by other algorithms
+      assertFalse(shared.isShutdown());
+    }
+    finally
+    {
+      shared.shutdown();
+    }
+  }
+}
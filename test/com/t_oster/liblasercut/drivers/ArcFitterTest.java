@@ -0,0 +1,116 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ArcFitterTest
+{
+
+  /**
+   * Records the commands and checks that every arc ends on its circle
+   */
+  private static class Recorder implements ArcFitter.Target
+  {
+
+    List<String> commands = new ArrayList<String>();
+    int x;
+    int y;
+
+    public void lineto(int x, int y) throws IOException
+    {
+      commands.add("L" + x + "," + y);
+      this.x = x;
+      this.y = y;
+    }
+
+    public void arcto(int x, int y, double i, double j, boolean counterClockwise) throws IOException
+    {
+      double cx = this.x + i;
+      double cy = this.y + j;
+      assertEquals(Math.hypot(i, j), Math.hypot(x - cx, y - cy), 1e-6);
+      commands.add((counterClockwise ? "CCW" : "CW") + x + "," + y);
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @Test
+  public void testCircle() throws IOException
+  {
+    Recorder r = new Recorder();
+    ArcFitter f = new ArcFitter(r, 1);
+    int radius = 2000;
+    f.moveto(radius, 0);
+    r.x = radius;
+    for (int i = 1; i <= 720; i++)
+    {
+      double a = i * 2 * Math.PI / 720;
+      f.lineto((int) Math.round(radius * Math.cos(a)), (int) Math.round(radius * Math.sin(a)));
+    }
+    f.flush();
+    assertTrue(r.commands.toString(), r.commands.size() <= 3);
+    assertTrue(r.commands.get(0).startsWith("CCW"));
+    assertEquals("CCW2000,0", r.commands.get(r.commands.size() - 1));
+  }
+
+  @Test
+  public void testRoundedCornerAndLines() throws IOException
+  {
+    Recorder r = new Recorder();
+    ArcFitter f = new ArcFitter(r, 1);
+    f.moveto(0, 0);
+    f.lineto(1000, 0);
+    //a quarter circle from the -y to the x direction
+    for (int i = 1; i <= 30; i++)
+    {
+      double a = Math.PI / 2 - i * Math.PI / 60;
+      f.lineto(1000 + (int) Math.round(500 * Math.cos(a)), 500 - (int) Math.round(500 * Math.sin(a)));
+    }
+    f.lineto(1500, 1500);
+    f.flush();
+    assertEquals("L1000,0", r.commands.get(0));
+    assertEquals("CCW1500,500", r.commands.get(1));
+    assertEquals("L1500,1500", r.commands.get(2));
+    assertEquals(3, r.commands.size());
+  }
+
+  @Test
+  public void testKeepsPolygons() throws IOException
+  {
+    Recorder r = new Recorder();
+    ArcFitter f = new ArcFitter(r, 1);
+    //without a known position lines are passed on
+    f.lineto(5, 5);
+    f.moveto(0, 0);
+    f.lineto(100, 0);
+    f.lineto(100, 100);
+    f.lineto(0, 100);
+    f.lineto(0, 0);
+    f.moveto(7, 7);
+    f.flush();
+    assertEquals("[L5,5, L100,0, L100,100, L0,100, L0,0]", r.commands.toString());
+  }
+}
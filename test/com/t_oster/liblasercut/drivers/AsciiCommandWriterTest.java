@@ -0,0 +1,96 @@
+package com.t_oster.liblasercut.drivers;
+
+import com.t_oster.liblasercut.platform.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class AsciiCommandWriterTest
+{
+
+  @Test
+  public void testNumbers() throws IOException
+  {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    AsciiCommandWriter w = new AsciiCommandWriter(result);
+    w.print("G1 X");
+    w.printFixed(12345678, 6);
+    w.print(' ');
+    w.printFixed(-5, 3);
+    w.print(' ');
+    w.print(0);
+    w.print(' ');
+    w.print(-1234567890123L);
+    w.print(' ');
+    w.printFixed(7, 0);
+    w.print('\n');
+    w.flush();
+    assertEquals("G1 X12.345678 -0.005 0 -1234567890123 7\n", result.toString("US-ASCII"));
+  }
+
+  @Test
+  public void testTransform() throws IOException
+  {
+    for (int dpi : new int[]{250, 333, 500, 1000})
+    {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      AsciiCommandWriter w = new AsciiCommandWriter(result);
+      w.setTransform(dpi, 1, 4, true, false, 250);
+      StringBuilder expected = new StringBuilder();
+      for (int x = 0; x < 20000; x += 7)
+      {
+        w.printX(x);
+        w.print('\n');
+        expected.append(String.format(Locale.US, "%.4f\n", Util.px2mm(x, dpi)));
+      }
+      w.flush();
+      assertEquals(expected.toString(), result.toString("US-ASCII"));
+    }
+    //mirrored x axis and steps
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    AsciiCommandWriter w = new AsciiCommandWriter(result);
+    w.setTransform(500, 0.001, 0, false, true, 250);
+    w.printX(0);
+    w.print(' ');
+    w.printX(500);
+    w.print(' ');
+    w.printY(600);
+    w.flush();
+    w.print(' ');
+    w.printOffsetX(1.5);
+    w.print(' ');
+    w.printOffsetY(-1.5);
+    w.flush();
+    assertEquals("250000 224600 30480 -76 -76", result.toString("US-ASCII"));
+  }
+
+  @Test
+  public void testPaddedNumbersAndBytes() throws IOException
+  {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    AsciiCommandWriter w = new AsciiCommandWriter(result);
+    StringBuilder expected = new StringBuilder();
+    for (int v : new int[]{0, 7, 42, 999, 1000, 12345, -5, -123})
+    {
+      w.print("XR");
+      w.print(v, 4);
+      w.print(';');
+      expected.append(String.format("XR%04d;", v));
+    }
+    w.print("\u00e4\ud83d\ude00!");
+    expected.append("??!");
+    byte[] big = new byte[20000];
+    Arrays.fill(big, (byte) 'a');
+    w.write(big, 10, 19990);
+    expected.append(new String(big, 10, 19990, "US-ASCII"));
+    w.flush();
+    assertEquals(expected.toString(), result.toString("US-ASCII"));
+  }
+}
@@ -27,6 +27,7 @@ import java.awt.image.BufferedImage;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.*;
 import java.awt.Color;
+import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 import org.junit.Test;
@@ -63,6 +64,123 @@ public class EpilogCutterTest
     assertEquals((byte) -128, (byte) 0x80);
   }
 
+  @Test
+  public void testEncodeDecode()
+  {
+    EpilogCutter instance = new EpilogZing(null);
+    java.util.Random r = new java.util.Random(42);
+    for (int n = 0; n < 50; n++)
+    {
+      List<Byte> in = new LinkedList<Byte>();
+      int len = r.nextInt(1000);
+      while (in.size() < len)
+      {
+        byte b = (byte) r.nextInt(4);
+        int count = r.nextBoolean() ? 1 : r.nextInt(300);
+        for (int k = 0; k < count; k++)
+        {
+          in.add(b);
+        }
+      }
+      List<Byte> enc = instance.encode(in);
+      List<Byte> dec = new LinkedList<Byte>();
+      int i = 0;
+      while (i < enc.size())
+      {
+        int h = enc.get(i++);
+        if (h >= 0)
+        {
+          for (int k = 0; k <= h; k++)
+          {
+            dec.add(enc.get(i++));
+          }
+        }
+        else if (h != -128)
+        {
+          byte b = enc.get(i++);
+          for (int k = 0; k < 1 - h; k++)
+          {
+            dec.add(b);
+          }
+        }
+      }
+      assertEquals(in, dec);
+    }
+  }
+
+  @Test
+  public void testEncodeWorstCase()
+  {
+    EpilogCutter instance = new EpilogZing(null);
+    //single bytes alternating with runs of two need a header per three bytes
+    List<Byte> in = new LinkedList<Byte>();
+    for (int k = 0; k < 99; k++)
+    {
+      in.add((byte) (k % 3 == 0 ? 1 : 2 + k / 3 % 2));
+    }
+    assertEquals(132, instance.encode(in).size());
+  }
+
+  @Test
+  public void testSpoolFileDeletedOnFailure() throws Exception
+  {
+    File directory = File.createTempFile("liblasercut", "test");
+    directory.delete();
+    directory.mkdir();
+    try
+    {
+      EpilogCutter instance = new EpilogZing("localhost");
+      instance.setUseSpoolFile(true);
+      instance.setSpoolDirectory(directory);
+      //a raster of the application, which fails with a RuntimeException
+      //after some of the data was spooled
+      Raster3dPart r3p = new Raster3dPart(new LaserProperty(80, 100));
+      r3p.addImage(new GreyscaleRaster()
+      {
+
+        public int getWidth()
+        {
+          return 1000;
+        }
+
+        public int getGreyScale(int x, int y)
+        {
+          if (y >= 90)
+          {
+            throw new IllegalStateException("broken raster");
+          }
+          return (x + y) % 256;
+        }
+
+        public void setGreyScale(int x, int y, int grey)
+        {
+        }
+
+        public int getHeight()
+        {
+          return 100;
+        }
+      }, new Point(0, 0));
+      try
+      {
+        instance.sendJob(new LaserJob("broken", "1", "test", 500, r3p, null, null));
+        fail("The broken raster was not reported");
+      }
+      catch (IllegalStateException e)
+      {
+      }
+      assertEquals(0, directory.list().length);
+    }
+    finally
+    {
+      for (File f : directory.listFiles())
+      {
+        f.delete();
+      }
+      directory.delete();
+    }
+  }
+
   private BufferedImage getTestImage()
     {
       BufferedImage testbild = new BufferedImage(300,300, BufferedImage.TYPE_INT_RGB);
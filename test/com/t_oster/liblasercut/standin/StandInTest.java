@@ -0,0 +1,408 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.standin;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PreparedJob;
+import com.t_oster.liblasercut.ProgressListener;
+import com.t_oster.liblasercut.RasterPart;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.drivers.EpilogZing;
+import com.t_oster.liblasercut.drivers.LaosCutter;
+import com.t_oster.liblasercut.drivers.Lasersaur;
+import com.t_oster.liblasercut.platform.Point;
+import com.t_oster.liblasercut.utils.BufferedImageAdapter;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class StandInTest
+{
+
+  private static final long TIMEOUT = 10000;
+
+  private static ProgressListener pl = new ProgressListener()
+  {
+    public void progressChanged(Object source, int percent)
+    {
+    }
+
+    public void taskChanged(Object source, String taskName)
+    {
+    }
+  };
+
+  private static LaserJob createJob(String name)
+  {
+    VectorPart vp = new VectorPart(new LaserProperty(50, 100, 5000));
+    vp.moveto(10, 10);
+    vp.lineto(300, 10);
+    vp.lineto(300, 300);
+    vp.lineto(10, 300);
+    vp.lineto(10, 10);
+    BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+    Graphics g = image.getGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, 100, 50);
+    g.setColor(Color.BLACK);
+    g.fillOval(10, 10, 60, 30);
+    RasterPart rp = new RasterPart(new LaserProperty(80, 100));
+    rp.addImage(new BlackWhiteRaster(new BufferedImageAdapter(image), BlackWhiteRaster.DitherAlgorithm.FLOYD_STEINBERG), new Point(20, 400));
+    return new LaserJob(name, name, "test", 500, null, vp, rp);
+  }
+
+  private static LaosCutter createLaos(String hostname, int port, boolean useTftp)
+  {
+    LaosCutter result = new LaosCutter();
+    result.setHostname(hostname);
+    result.setPort(port);
+    result.setUseTftp(useTftp);
+    return result;
+  }
+
+  @Test
+  public void testEpilogJobsOverOneConnection() throws Exception
+  {
+    LpdStandIn lpd = new LpdStandIn();
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      cutter.sendJobs(Arrays.asList(createJob("a"), createJob("b"), createJob("c")), pl);
+      List<ReceivedJob> jobs = lpd.waitForJobs(3, TIMEOUT);
+      assertEquals(3, jobs.size());
+      assertEquals(1, lpd.getConnections());
+      for (ReceivedJob job : jobs)
+      {
+        assertTrue(job.getLength() > 0);
+      }
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testEpilogReconnectsWhenQueueClosesConnection() throws Exception
+  {
+    LinkProfile profile = new LinkProfile();
+    profile.setCloseAfterJobs(1);
+    LpdStandIn lpd = new LpdStandIn(profile);
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      cutter.sendJobs(Arrays.asList(createJob("a"), createJob("b"), createJob("c")), pl);
+      assertEquals(3, lpd.waitForJobs(3, TIMEOUT).size());
+      assertEquals(3, lpd.getConnections());
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testEpilogDoesNotResendAfterDataStarted() throws Exception
+  {
+    LpdStandIn lpd = new LpdStandIn();
+    int length;
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      cutter.sendJob(createJob("a"), pl);
+      length = lpd.waitForJobs(1, TIMEOUT).get(0).getLength();
+    }
+    finally
+    {
+      lpd.close();
+    }
+    //break the connection in the middle of the data of the second job.
+    //The commands and control files take less than 1000 bytes
+    LinkProfile profile = new LinkProfile();
+    profile.setFailAfterBytes(length + 1000 + length / 2);
+    lpd = new LpdStandIn(profile);
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      try
+      {
+        cutter.sendJobs(Arrays.asList(createJob("a"), createJob("a")), pl);
+        fail("The broken connection was not reported");
+      }
+      catch (IOException e)
+      {
+        //the second job may already be complete, so it must not be resent
+      }
+      assertEquals(1, lpd.waitForJobs(2, 500).size());
+      assertEquals(1, lpd.getConnections());
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testEpilogSpoolThreshold() throws Exception
+  {
+    LpdStandIn lpd = new LpdStandIn();
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      //kept in memory unless a threshold is set
+      assertEquals(Long.MAX_VALUE, cutter.getSpoolThreshold());
+      cutter.sendJob(createJob("a"), pl);
+      //bigger than the threshold, so it is moved to a spool file
+      cutter.setSpoolThreshold(1024);
+      cutter.sendJob(createJob("a"), pl);
+      List<ReceivedJob> jobs = lpd.waitForJobs(2, TIMEOUT);
+      assertEquals(2, jobs.size());
+      assertTrue(jobs.get(0).getLength() > 1024);
+      assertArrayEquals(jobs.get(0).getData(), jobs.get(1).getData());
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testEpilogPreparedJob() throws Exception
+  {
+    LpdStandIn lpd = new LpdStandIn();
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      cutter.sendJob(createJob("a"), pl);
+      PreparedJob prepared = cutter.prepareJob(createJob("a"), pl);
+      try
+      {
+        cutter.sendPreparedJob(prepared, pl);
+      }
+      finally
+      {
+        prepared.close();
+      }
+      List<ReceivedJob> jobs = lpd.waitForJobs(2, TIMEOUT);
+      assertEquals(2, jobs.size());
+      assertArrayEquals(jobs.get(0).getData(), jobs.get(1).getData());
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testLatency() throws Exception
+  {
+    LinkProfile profile = new LinkProfile();
+    profile.setLatency(20);
+    LpdStandIn lpd = new LpdStandIn(profile);
+    try
+    {
+      EpilogZing cutter = new EpilogZing(lpd.getHostname());
+      cutter.setPort(lpd.getPort());
+      long start = System.nanoTime();
+      cutter.sendJob(createJob("a"), pl);
+      //connection, receive job, control file and data file are delayed
+      assertTrue(System.nanoTime() - start >= 6 * 20 * 1000000L);
+      assertEquals(1, lpd.waitForJobs(1, TIMEOUT).size());
+    }
+    finally
+    {
+      lpd.close();
+    }
+  }
+
+  @Test
+  public void testLaosTcpAndTftpReceiveTheSameData() throws Exception
+  {
+    RawTcpStandIn tcp = new RawTcpStandIn();
+    TftpStandIn tftp = new TftpStandIn();
+    try
+    {
+      createLaos(tcp.getHostname(), tcp.getPort(), false).sendJob(createJob("a"), pl);
+      createLaos(tftp.getHostname(), tftp.getPort(), true).sendJob(createJob("a"), pl);
+      List<ReceivedJob> overTcp = tcp.waitForJobs(1, TIMEOUT);
+      List<ReceivedJob> overTftp = tftp.waitForJobs(1, TIMEOUT);
+      assertEquals(1, overTcp.size());
+      assertEquals(1, overTftp.size());
+      assertEquals("a.lgc", overTftp.get(0).getName());
+      assertTrue(overTcp.get(0).getLength() > 0);
+      assertArrayEquals(overTcp.get(0).getData(), overTftp.get(0).getData());
+    }
+    finally
+    {
+      tcp.close();
+      tftp.close();
+    }
+  }
+
+  @Test
+  public void testLaosSpoolFile() throws Exception
+  {
+    RawTcpStandIn tcp = new RawTcpStandIn();
+    try
+    {
+      LaosCutter cutter = createLaos(tcp.getHostname(), tcp.getPort(), false);
+      cutter.sendJob(createJob("a"), pl);
+      cutter.setUseSpoolFile(true);
+      cutter.sendJob(createJob("a"), pl);
+      List<ReceivedJob> jobs = tcp.waitForJobs(2, TIMEOUT);
+      assertEquals(2, jobs.size());
+      assertArrayEquals(jobs.get(0).getData(), jobs.get(1).getData());
+    }
+    finally
+    {
+      tcp.close();
+    }
+  }
+
+  @Test
+  public void testLaosPreparedJob() throws Exception
+  {
+    RawTcpStandIn tcp = new RawTcpStandIn();
+    try
+    {
+      LaosCutter cutter = createLaos(tcp.getHostname(), tcp.getPort(), false);
+      cutter.sendJob(createJob("a"), pl);
+      PreparedJob prepared = cutter.prepareJob(createJob("a"), pl);
+      try
+      {
+        cutter.sendPreparedJob(prepared, pl);
+      }
+      finally
+      {
+        prepared.close();
+      }
+      List<ReceivedJob> jobs = tcp.waitForJobs(2, TIMEOUT);
+      assertEquals(2, jobs.size());
+      assertArrayEquals(jobs.get(0).getData(), jobs.get(1).getData());
+    }
+    finally
+    {
+      tcp.close();
+    }
+  }
+
+  @Test
+  public void testTftpFault() throws Exception
+  {
+    LinkProfile profile = new LinkProfile();
+    profile.setFailAfterBytes(1000);
+    TftpStandIn tftp = new TftpStandIn(profile);
+    try
+    {
+      createLaos(tftp.getHostname(), tftp.getPort(), true).sendJob(createJob("a"), pl);
+      fail("The injected fault was not reported");
+    }
+    catch (IOException e)
+    {
+      assertEquals(0, tftp.getReceivedJobs().size());
+    }
+    finally
+    {
+      tftp.close();
+    }
+  }
+
+  @Test
+  public void testLasersaurOverSerial() throws Exception
+  {
+    SerialStandIn serial = new SerialStandIn();
+    Lasersaur cutter = new Lasersaur();
+    cutter.setTransport(serial);
+    cutter.sendJob(createJob("a"), pl);
+    List<ReceivedJob> jobs = serial.getReceivedJobs();
+    assertEquals(1, jobs.size());
+    assertTrue(new String(jobs.get(0).getData(), "US-ASCII").contains("G1"));
+    assertEquals(1, serial.getConnections());
+  }
+
+  @Test
+  public void testLasersaurPreparedJob() throws Exception
+  {
+    SerialStandIn serial = new SerialStandIn();
+    Lasersaur cutter = new Lasersaur();
+    cutter.setTransport(serial);
+    cutter.sendJob(createJob("a"), pl);
+    PreparedJob prepared = cutter.prepareJob(createJob("a"), pl);
+    try
+    {
+      cutter.sendPreparedJob(prepared, pl);
+    }
+    finally
+    {
+      prepared.close();
+    }
+    List<ReceivedJob> jobs = serial.getReceivedJobs();
+    assertEquals(2, jobs.size());
+    assertArrayEquals(jobs.get(0).getData(), jobs.get(1).getData());
+  }
+
+  @Test
+  public void testBandwidth() throws Exception
+  {
+    LinkProfile profile = new LinkProfile();
+    profile.setBandwidth(100000);
+    profile.setBufferSize(1024);
+    SerialStandIn serial = new SerialStandIn(profile);
+    Lasersaur cutter = new Lasersaur();
+    cutter.setTransport(serial);
+    cutter.sendJob(createJob("a"), pl);
+    ReceivedJob job = serial.getReceivedJobs().get(0);
+    long minimum = (long) ((job.getLength() - 1024) * 1e9 / 100000);
+    assertTrue(job.getEndTime() - job.getStartTime() >= minimum);
+  }
+
+  @Test
+  public void testSerialFault() throws Exception
+  {
+    LinkProfile profile = new LinkProfile();
+    profile.setFailAfterBytes(100);
+    SerialStandIn serial = new SerialStandIn(profile);
+    Lasersaur cutter = new Lasersaur();
+    cutter.setTransport(serial);
+    try
+    {
+      cutter.sendJob(createJob("a"), pl);
+      fail("The injected fault was not reported");
+    }
+    catch (IOException e)
+    {
+      assertEquals(0, serial.getReceivedJobs().size());
+    }
+  }
+}
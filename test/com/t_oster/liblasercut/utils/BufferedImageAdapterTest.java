@@ -0,0 +1,136 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class BufferedImageAdapterTest
+{
+
+  private void assertRowsMatchPixels(int type)
+  {
+    BufferedImage img = new BufferedImage(37, 11, type);
+    for (int y = 0; y < img.getHeight(); y++)
+    {
+      for (int x = 0; x < img.getWidth(); x++)
+      {
+        img.setRGB(x, y, new Color((x * 7) % 256, (y * 23) % 256, (x * y) % 256).getRGB());
+      }
+    }
+    for (int shift = -50; shift <= 50; shift += 50)
+    {
+      for (int invert = 0; invert < 2; invert++)
+      {
+        BufferedImageAdapter a = new BufferedImageAdapter(img, invert == 1);
+        a.setColorShift(shift);
+        int[] row = new int[img.getWidth()];
+        byte[] bytes = new byte[img.getWidth()];
+        for (int y = 0; y < img.getHeight(); y++)
+        {
+          a.getRow(y, row);
+          a.getRow(y, bytes);
+          for (int x = 0; x < img.getWidth(); x++)
+          {
+            assertEquals(a.getGreyScale(x, y), row[x]);
+            assertEquals(a.getGreyScale(x, y), bytes[x] & 0xFF);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGetRow()
+  {
+    assertRowsMatchPixels(BufferedImage.TYPE_INT_RGB);
+    assertRowsMatchPixels(BufferedImage.TYPE_BYTE_GRAY);
+    assertRowsMatchPixels(BufferedImage.TYPE_3BYTE_BGR);
+    assertRowsMatchPixels(BufferedImage.TYPE_INT_ARGB);
+  }
+
+  @Test
+  public void testGreyValues()
+  {
+    BufferedImage img = new BufferedImage(256, 1, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < 256; x++)
+    {
+      img.setRGB(x, 0, new Color(x, x, x).getRGB());
+    }
+    BufferedImageAdapter a = new BufferedImageAdapter(img);
+    for (int x = 0; x < 256; x++)
+    {
+      assertEquals(x, a.getGreyScale(x, 0));
+    }
+  }
+
+  @Test
+  public void testConcurrentRows() throws Exception
+  {
+    //every thread reads the rows into its own buffer
+    final BufferedImage img = new BufferedImage(301, 64, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < img.getHeight(); y++)
+    {
+      for (int x = 0; x < img.getWidth(); x++)
+      {
+        img.setRGB(x, y, new Color((x * 7) % 256, (y * 23) % 256, (x * y) % 256).getRGB());
+      }
+    }
+    final BufferedImageAdapter a = new BufferedImageAdapter(img);
+    final AtomicInteger mismatches = new AtomicInteger(0);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++)
+    {
+      threads[t] = new Thread()
+      {
+
+        @Override
+        public void run()
+        {
+          byte[] row = new byte[img.getWidth()];
+          for (int i = 0; i < 50; i++)
+          {
+            for (int y = 0; y < img.getHeight(); y++)
+            {
+              a.getRow(y, row);
+              for (int x = 0; x < img.getWidth(); x++)
+              {
+                if ((row[x] & 0xFF) != a.getGreyScale(x, y))
+                {
+                  mismatches.incrementAndGet();
+                }
+              }
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads)
+    {
+      t.join();
+    }
+    assertEquals(0, mismatches.get());
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class MappedGreyscaleRasterTest
+{
+
+  @Test
+  public void testPgm() throws IOException
+  {
+    File f = File.createTempFile("raster", ".pgm");
+    try
+    {
+      MappedGreyscaleRaster r = MappedGreyscaleRaster.createPgm(f, 21, 9);
+      for (int y = 0; y < r.getHeight(); y++)
+      {
+        for (int x = 0; x < r.getWidth(); x++)
+        {
+          r.setGreyScale(x, y, x * y);
+        }
+      }
+      r.close();
+      r = MappedGreyscaleRaster.openPgm(f, false);
+      assertEquals(21, r.getWidth());
+      assertEquals(9, r.getHeight());
+      int[] row = new int[21];
+      byte[] bytes = new byte[21];
+      for (int y = 0; y < r.getHeight(); y++)
+      {
+        r.getRow(y, row);
+        r.getRow(y, bytes);
+        for (int x = 0; x < r.getWidth(); x++)
+        {
+          assertEquals(x * y, r.getGreyScale(x, y));
+          assertEquals(x * y, row[x]);
+          assertEquals(x * y, bytes[x] & 0xFF);
+        }
+      }
+      r.close();
+    }
+    finally
+    {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void testPgmComments() throws IOException
+  {
+    File f = File.createTempFile("raster", ".pgm");
+    try
+    {
+      FileOutputStream out = new FileOutputStream(f);
+      out.write("P5\n# a comment\n3 2\n# another\n255\n".getBytes("US-ASCII"));
+      out.write(new byte[]
+        {
+          1, 2, 3, 4, 5, (byte) 200
+        });
+      out.close();
+      MappedGreyscaleRaster r = MappedGreyscaleRaster.openPgm(f, false);
+      assertEquals(3, r.getWidth());
+      assertEquals(2, r.getHeight());
+      assertEquals(1, r.getGreyScale(0, 0));
+      assertEquals(200, r.getGreyScale(2, 1));
+      r.close();
+    }
+    finally
+    {
+      f.delete();
+    }
+  }
+}
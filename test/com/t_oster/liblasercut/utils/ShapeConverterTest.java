@@ -0,0 +1,59 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ShapeConverterTest
+{
+
+  @Test
+  public void testRectangle()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    new ShapeConverter().addShape(new Rectangle2D.Double(10, 20, 30, 40), vp);
+    //3 property commands, moveto, 4 lineto
+    assertEquals(8, vp.getCommandCount());
+    assertEquals(40, vp.getWidth());
+    assertEquals(60, vp.getHeight());
+  }
+
+  @Test
+  public void testTolerance()
+  {
+    Ellipse2D circle = new Ellipse2D.Double(0, 0, 20000, 20000);
+    ShapeConverter c = new ShapeConverter();
+    c.setResolution(1000);
+    VectorPart exact = new VectorPart(new LaserProperty());
+    c.addShape(circle, exact);
+    c.setTolerance(0.2);
+    VectorPart simplified = new VectorPart(new LaserProperty());
+    c.addShape(circle, simplified);
+    assertTrue(simplified.getCommandCount() * 2 < exact.getCommandCount());
+    assertEquals(exact.getWidth(), simplified.getWidth(), 10);
+    assertEquals(exact.getHeight(), simplified.getHeight(), 10);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class DuplicateSegmentRemoverTest
+{
+
+  private int countMoves(VectorPart vp)
+  {
+    int result = 0;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      if (c.getType() == VectorCommand.CmdType.MOVETO)
+      {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testSharedEdges()
+  {
+    int n = 100;
+    int size = 10;
+    VectorPart vp = new VectorPart(new LaserProperty());
+    for (int i = 0; i < n; i++)
+    {
+      for (int j = 0; j < n; j++)
+      {
+        vp.moveto(i * size, j * size);
+        vp.lineto(i * size + size, j * size);
+        vp.lineto(i * size + size, j * size + size);
+        vp.lineto(i * size, j * size + size);
+        vp.lineto(i * size, j * size);
+      }
+    }
+    DuplicateSegmentRemover r = new DuplicateSegmentRemover();
+    VectorPart result = r.optimize(vp);
+    assertEquals(2.0 * n * (n + 1) * size, VectorOptimizer.getCutLength(result), 1e-6);
+    assertEquals(4.0 * n * n * size - 2.0 * n * (n + 1) * size, r.getRemovedLength(), 1e-6);
+    //collinear segments are merged, so only the 2 * (n + 1) grid lines remain
+    assertEquals(2 * (n + 1) + 3, result.getCommandCount() - countMoves(result));
+  }
+
+  @Test
+  public void testOverlaps()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty(50, 60, 1000));
+    vp.moveto(0, 0);
+    vp.lineto(100, 50);
+    vp.moveto(300, 150);
+    vp.lineto(50, 25);
+    //a different power is kept
+    vp.setPower(20);
+    vp.moveto(0, 0);
+    vp.lineto(100, 50);
+    //a parallel line is kept
+    vp.setPower(50);
+    vp.moveto(0, 1);
+    vp.lineto(100, 51);
+    //a dot
+    vp.moveto(7, 7);
+    vp.lineto(7, 7);
+    vp.moveto(7, 7);
+    vp.lineto(7, 7);
+    DuplicateSegmentRemover r = new DuplicateSegmentRemover();
+    VectorPart result = r.optimize(vp);
+    assertEquals(Arrays.asList(
+      "20/60/1000/0.0:0,0-100,50",
+      "50/60/1000/0.0:0,0-300,150",
+      "50/60/1000/0.0:0,1-100,51",
+      "50/60/1000/0.0:7,7-7,7"), TravelOptimizerTest.getCutSegments(result));
+    assertEquals(Math.sqrt(50 * 50 + 25 * 25), r.getRemovedLength(), 1e-6);
+  }
+
+  @Test
+  public void testJoinsPolylines()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    //a square drawn as four separate lines in random directions
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.moveto(10, 10);
+    vp.lineto(10, 0);
+    vp.moveto(10, 10);
+    vp.lineto(0, 10);
+    vp.moveto(0, 0);
+    vp.lineto(0, 10);
+    VectorPart result = new DuplicateSegmentRemover().optimize(vp);
+    assertEquals(1, countMoves(result));
+    assertEquals(TravelOptimizerTest.getCutSegments(vp), TravelOptimizerTest.getCutSegments(result));
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PeepholeOptimizerTest
+{
+
+  /**
+   * Records the received commands as a string
+   */
+  private static class Recorder implements PeepholeOptimizer.Target
+  {
+
+    private StringBuilder commands = new StringBuilder();
+
+    public void moveto(int x, int y)
+    {
+      commands.append("M").append(x).append(",").append(y).append(" ");
+    }
+
+    public void lineto(int x, int y)
+    {
+      commands.append("L").append(x).append(",").append(y).append(" ");
+    }
+
+    public void setPower(int power)
+    {
+      commands.append("P").append(power).append(" ");
+    }
+
+    public void setSpeed(int speed)
+    {
+      commands.append("S").append(speed).append(" ");
+    }
+
+    public void setFrequency(int frequency)
+    {
+      commands.append("F").append(frequency).append(" ");
+    }
+
+    public void setFocus(float focus)
+    {
+      commands.append("Z").append(focus).append(" ");
+    }
+
+    @Override
+    public String toString()
+    {
+      return commands.toString().trim();
+    }
+  }
+
+  @Test
+  public void testMoves() throws Exception
+  {
+    Recorder r = new Recorder();
+    PeepholeOptimizer instance = new PeepholeOptimizer(r);
+    instance.moveto(0, 0);
+    instance.moveto(0, 0);
+    instance.moveto(10, 0);
+    instance.moveto(10, 10);
+    instance.setPower(50);
+    instance.lineto(20, 10);
+    instance.flush();
+    assertEquals("M10,10 P50 L20,10", r.toString());
+    assertEquals(3, instance.getRemovedCommands());
+  }
+
+  @Test
+  public void testKeepRunUps() throws Exception
+  {
+    Recorder r = new Recorder();
+    PeepholeOptimizer instance = new PeepholeOptimizer(r);
+    instance.setKeepRunUps(true);
+    instance.moveto(0, 0);
+    instance.moveto(5, 0);
+    instance.moveto(10, 0);
+    instance.moveto(10, 10);
+    instance.setPower(50);
+    instance.lineto(20, 10);
+    instance.flush();
+    //the start position is unknown, so the first move stays
+    assertEquals("M0,0 M10,0 M10,10 P50 L20,10", r.toString());
+    assertEquals(1, instance.getRemovedCommands());
+  }
+
+  @Test
+  public void testCollinearLines() throws Exception
+  {
+    Recorder r = new Recorder();
+    PeepholeOptimizer instance = new PeepholeOptimizer(r);
+    instance.setPower(50);
+    instance.moveto(0, 0);
+    instance.lineto(10, 0);
+    instance.lineto(10, 0);
+    instance.lineto(20, 0);
+    instance.lineto(30, 0);
+    //turning back is not collinear
+    instance.lineto(25, 0);
+    //a changed power is not merged
+    instance.setPower(60);
+    instance.lineto(20, 0);
+    instance.flush();
+    assertEquals("M0,0 P50 L30,0 L25,0 P60 L20,0", r.toString());
+  }
+
+  @Test
+  public void testDots() throws Exception
+  {
+    Recorder r = new Recorder();
+    PeepholeOptimizer instance = new PeepholeOptimizer(r);
+    instance.setPower(50);
+    instance.moveto(5, 5);
+    instance.lineto(5, 5);
+    instance.lineto(10, 5);
+    instance.flush();
+    assertEquals("M5,5 P50 L5,5 L10,5", r.toString());
+  }
+
+  @Test
+  public void testRedundantProperties() throws Exception
+  {
+    Recorder r = new Recorder();
+    PeepholeOptimizer instance = new PeepholeOptimizer(r);
+    instance.setPower(50);
+    instance.setSpeed(20);
+    instance.setFrequency(500);
+    instance.setFocus(1.5f);
+    instance.moveto(0, 0);
+    instance.lineto(0, 10);
+    instance.setPower(80);
+    instance.setPower(50);
+    instance.setSpeed(20);
+    instance.lineto(10, 10);
+    instance.setSpeed(30);
+    instance.lineto(20, 10);
+    //trailing changes are not sent
+    instance.setPower(0);
+    instance.moveto(0, 0);
+    instance.setPower(10);
+    instance.flush();
+    assertEquals("M0,0 P50 S20 F500 Z1.5 L0,10 L10,10 S30 L20,10 M0,0", r.toString());
+    assertEquals(5, instance.getRemovedCommands());
+  }
+
+  @Test
+  public void testOptimize()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    vp.moveto(0, 0);
+    vp.moveto(10, 0);
+    vp.lineto(20, 0);
+    vp.lineto(30, 0);
+    vp.lineto(30, 10);
+    PeepholeOptimizer instance = new PeepholeOptimizer();
+    VectorPart result = instance.optimize(vp);
+    List<String> segments = TravelOptimizerTest.getCutSegments(result);
+    assertEquals(2, segments.size());
+    assertTrue(segments.get(0).endsWith(":10,0-30,0"));
+    assertTrue(segments.get(1).endsWith(":30,0-30,10"));
+    assertEquals(2, instance.getRemovedCommands());
+    assertEquals(vp.getCommandCount() - 2, result.getCommandCount());
+  }
+}
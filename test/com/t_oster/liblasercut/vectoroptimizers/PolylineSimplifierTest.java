@@ -0,0 +1,121 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PolylineSimplifierTest
+{
+
+  private String toString(VectorPart vp)
+  {
+    StringBuilder result = new StringBuilder();
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case MOVETO:
+          result.append("M").append(c.getX()).append(",").append(c.getY()).append(" ");
+          break;
+        case LINETO:
+          result.append("L").append(c.getX()).append(",").append(c.getY()).append(" ");
+          break;
+        case SETPOWER:
+          result.append("P").append(c.getPower()).append(" ");
+          break;
+        default:
+          break;
+      }
+    }
+    return result.toString().trim();
+  }
+
+  @Test
+  public void testCollinearPoints()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty(10, 100));
+    vp.moveto(0, 0);
+    for (int i = 1; i <= 100; i++)
+    {
+      vp.lineto(i, 2 * i);
+    }
+    //going back along the same line must be kept
+    vp.lineto(50, 100);
+    vp.lineto(50, 100);
+    vp.lineto(50, 0);
+    vp.setPower(20);
+    vp.lineto(50, -10);
+    vp.lineto(50, -20);
+    vp.moveto(1, 1);
+    vp.moveto(2, 2);
+    vp.lineto(3, 3);
+    PolylineSimplifier s = new PolylineSimplifier();
+    s.setTolerance(0);
+    assertEquals("P10 M0,0 L100,200 L50,100 L50,0 P20 L50,-20 M2,2 L3,3", toString(s.optimize(vp)));
+  }
+
+  @Test
+  public void testTolerance()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    int r = 1000;
+    vp.moveto(r, 0);
+    for (int i = 1; i <= 1000; i++)
+    {
+      double a = i * 2 * Math.PI / 1000;
+      vp.lineto((int) Math.round(r * Math.cos(a)), (int) Math.round(r * Math.sin(a)));
+    }
+    PolylineSimplifier s = new PolylineSimplifier();
+    s.setResolution(1000);
+    s.setTolerance(0.1);
+    VectorPart result = s.optimize(vp);
+    assertTrue(result.getCommandCount() < 100);
+    //every original point is near the simplified line
+    double tolerance = 0.1 / 25.4 * 1000;
+    VectorCommand[] cmds = result.getCommandList();
+    for (VectorCommand o : vp.getCommandList())
+    {
+      if (o.getType() != VectorCommand.CmdType.LINETO)
+      {
+        continue;
+      }
+      double min = Double.MAX_VALUE;
+      for (int i = 4; i < cmds.length; i++)
+      {
+        min = Math.min(min, distance(o.getX(), o.getY(), cmds[i - 1], cmds[i]));
+      }
+      assertTrue(min <= tolerance);
+    }
+    assertEquals(Arrays.asList(cmds[cmds.length - 1].getX(), cmds[cmds.length - 1].getY()), Arrays.asList(r, 0));
+  }
+
+  private double distance(int x, int y, VectorCommand a, VectorCommand b)
+  {
+    return java.awt.geom.Line2D.ptSegDist(a.getX(), a.getY(), b.getX(), b.getY(), x, y);
+  }
+}
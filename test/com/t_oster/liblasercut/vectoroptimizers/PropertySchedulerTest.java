@@ -0,0 +1,153 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class PropertySchedulerTest
+{
+
+  private static void square(VectorPart vp, LaserProperty p, int x, int y, int size)
+  {
+    vp.setCurrentCuttingProperty(p);
+    vp.moveto(x, y);
+    vp.lineto(x + size, y);
+    vp.lineto(x + size, y + size);
+    vp.lineto(x, y + size);
+    vp.lineto(x, y);
+  }
+
+  /**
+   * Returns the sequence of distinct powers the lines are cut with
+   */
+  private static List<Integer> getPowers(VectorPart vp)
+  {
+    List<Integer> result = new ArrayList<Integer>();
+    int power = vp.getInitialCuttingProperty().getPower();
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case SETPOWER:
+          power = c.getPower();
+          break;
+        case LINETO:
+          if (result.isEmpty() || result.get(result.size() - 1) != power)
+          {
+            result.add(power);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testGrouping()
+  {
+    LaserProperty a = new LaserProperty(10, 100, 500, 2);
+    LaserProperty b = new LaserProperty(20, 100, 500, 0);
+    LaserProperty c = new LaserProperty(30, 100, 500, 1);
+    VectorPart vp = new VectorPart(new LaserProperty());
+    for (int i = 0; i < 4; i++)
+    {
+      square(vp, a, i * 100, 0, 10);
+      square(vp, b, i * 100, 100, 10);
+      square(vp, c, i * 100, 200, 10);
+    }
+    PropertyScheduler instance = new PropertyScheduler();
+    VectorPart result = instance.optimize(vp);
+    assertEquals(TravelOptimizerTest.getCutSegments(vp), TravelOptimizerTest.getCutSegments(result));
+    //the focus is swept upwards from the initial focus 0
+    List<Integer> powers = new ArrayList<Integer>();
+    powers.add(20);
+    powers.add(30);
+    powers.add(10);
+    assertEquals(powers, getPowers(result));
+    assertEquals(2.0, instance.getFocusTravelAfter(), 1e-6);
+    assertTrue(instance.getFocusTravelBefore() > instance.getFocusTravelAfter());
+    assertTrue(instance.getChangesAfter() < instance.getChangesBefore());
+  }
+
+  @Test
+  public void testOrderConstraint()
+  {
+    LaserProperty engrave = new LaserProperty(10, 100, 500, 1);
+    LaserProperty cut = new LaserProperty(100, 10, 500, 0);
+    VectorPart vp = new VectorPart(new LaserProperty());
+    square(vp, engrave, 0, 0, 10);
+    square(vp, cut, 100, 0, 10);
+    square(vp, engrave, 200, 0, 10);
+    PropertyScheduler instance = new PropertyScheduler();
+    List<Integer> powers = new ArrayList<Integer>();
+    powers.add(100);
+    powers.add(10);
+    assertEquals(powers, getPowers(instance.optimize(vp)));
+    instance.addOrderConstraint(engrave, cut);
+    VectorPart result = instance.optimize(vp);
+    powers.clear();
+    powers.add(10);
+    powers.add(100);
+    assertEquals(powers, getPowers(result));
+    assertEquals(TravelOptimizerTest.getCutSegments(vp), TravelOptimizerTest.getCutSegments(result));
+  }
+
+  @Test
+  public void testInnerFirst()
+  {
+    LaserProperty hole = new LaserProperty(50, 100, 500, 1);
+    LaserProperty outline = new LaserProperty(100, 10, 500, 0);
+    VectorPart vp = new VectorPart(new LaserProperty());
+    square(vp, outline, 0, 0, 100);
+    square(vp, hole, 40, 40, 20);
+    PropertyScheduler instance = new PropertyScheduler();
+    instance.setInnerFirst(true);
+    List<Integer> powers = new ArrayList<Integer>();
+    powers.add(50);
+    powers.add(100);
+    assertEquals(powers, getPowers(instance.optimize(vp)));
+  }
+
+  @Test
+  public void testContradictingConstraints()
+  {
+    LaserProperty a = new LaserProperty(10, 100, 500, 0);
+    LaserProperty b = new LaserProperty(20, 100, 500, 0);
+    VectorPart vp = new VectorPart(new LaserProperty());
+    square(vp, a, 0, 0, 10);
+    square(vp, b, 100, 0, 10);
+    PropertyScheduler instance = new PropertyScheduler();
+    instance.addOrderConstraint(a, b);
+    instance.addOrderConstraint(b, a);
+    VectorPart result = instance.optimize(vp);
+    assertEquals(TravelOptimizerTest.getCutSegments(vp), TravelOptimizerTest.getCutSegments(result));
+    assertEquals(2, getPowers(result).size());
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * This file is part of VisiCut.
+ * 
+ *     VisiCut is free software: you can redistribute it and/or modify
+ *     it under the terms of the Lesser GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ * 
+ *    VisiCut is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     Lesser GNU General Public License for more details.
+ * 
+ *     You should have received a copy of the GNU General Public License
+ *     along with VisiCut.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandCursor;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class TravelOptimizerTest
+{
+
+  /**
+   * Returns a sorted list of all cut segments (undirected) together
+   * with the properties they are cut with
+   */
+  static List<String> getCutSegments(VectorPart vp)
+  {
+    List<String> result = new ArrayList<String>();
+    LaserProperty p = vp.getInitialCuttingProperty();
+    int x = 0;
+    int y = 0;
+    VectorCommandCursor c = vp.getCommandCursor();
+    while (c.next())
+    {
+      switch (c.getType())
+      {
+        case SETPOWER:
+          p.setPower(c.getPower());
+          break;
+        case SETSPEED:
+          p.setSpeed(c.getSpeed());
+          break;
+        case SETFREQUENCY:
+          p.setFrequency(c.getFrequency());
+          break;
+        case SETFOCUS:
+          p.setFocus(c.getFocus());
+          break;
+        case MOVETO:
+          x = c.getX();
+          y = c.getY();
+          break;
+        case LINETO:
+          boolean forward = x < c.getX() || (x == c.getX() && y <= c.getY());
+          String segment = forward
+            ? x + "," + y + "-" + c.getX() + "," + c.getY()
+            : c.getX() + "," + c.getY() + "-" + x + "," + y;
+          result.add(p.getPower() + "/" + p.getSpeed() + "/" + p.getFrequency() + "/" + p.getFocus() + ":" + segment);
+          x = c.getX();
+          y = c.getY();
+          break;
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private void square(VectorPart vp, int x, int y, int size)
+  {
+    vp.moveto(x, y);
+    vp.lineto(x + size, y);
+    vp.lineto(x + size, y + size);
+    vp.lineto(x, y + size);
+    vp.lineto(x, y);
+  }
+
+  @Test
+  public void testScatteredPaths()
+  {
+    Random r = new Random(7);
+    VectorPart vp = new VectorPart(new LaserProperty(50, 60, 1000));
+    for (int i = 0; i < 500; i++)
+    {
+      vp.setPower(10 + r.nextInt(3) * 10);
+      vp.setFocus(r.nextInt(2));
+      if (r.nextBoolean())
+      {
+        square(vp, r.nextInt(10000), r.nextInt(10000), 1 + r.nextInt(50));
+      }
+      else
+      {
+        vp.moveto(r.nextInt(10000), r.nextInt(10000));
+        vp.lineto(r.nextInt(10000), r.nextInt(10000));
+        vp.lineto(r.nextInt(10000), r.nextInt(10000));
+      }
+    }
+    TravelOptimizer o = new TravelOptimizer();
+    VectorPart result = o.optimize(vp);
+    assertEquals(VectorOptimizer.getTravelLength(vp), o.getTravelBefore(), 1e-6);
+    assertEquals(VectorOptimizer.getTravelLength(result), o.getTravelAfter(), 1e-6);
+    assertTrue(o.getTravelAfter() < o.getTravelBefore() / 2);
+    assertEquals(getCutSegments(vp), getCutSegments(result));
+    //2-opt does not make it worse
+    o.setTwoOptPasses(0);
+    o.optimize(vp);
+    assertTrue(o.getTravelAfter() + 1e-6 >= VectorOptimizer.getTravelLength(result));
+  }
+
+  @Test
+  public void testReversesOpenPaths()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    vp.moveto(0, 100);
+    vp.lineto(0, 0);
+    vp.moveto(1000, 0);
+    vp.lineto(0, 100);
+    TravelOptimizer o = new TravelOptimizer();
+    VectorPart result = o.optimize(vp);
+    assertEquals(1100, o.getTravelBefore(), 1e-6);
+    assertEquals(0, o.getTravelAfter(), 1e-6);
+    assertEquals(getCutSegments(vp), getCutSegments(result));
+  }
+
+  @Test
+  public void testInnerFirst()
+  {
+    VectorPart vp = new VectorPart(new LaserProperty());
+    square(vp, 0, 0, 1000);
+    square(vp, 100, 100, 100);
+    square(vp, 800, 800, 100);
+    square(vp, 2000, 2000, 10);
+    TravelOptimizer o = new TravelOptimizer();
+    o.setInnerFirst(true);
+    VectorPart result = o.optimize(vp);
+    assertEquals(getCutSegments(vp), getCutSegments(result));
+    //both inner squares are cut before the outer one
+    int lastInner = -1;
+    int firstOuter = -1;
+    int i = 0;
+    VectorCommandCursor c = result.getCommandCursor();
+    while (c.next())
+    {
+      if (c.getType() == VectorCommand.CmdType.LINETO)
+      {
+        if ((c.getX() == 0 || c.getX() == 1000) && (c.getY() == 0 || c.getY() == 1000))
+        {
+          firstOuter = firstOuter < 0 ? i : firstOuter;
+        }
+        else if (c.getX() < 1000)
+        {
+          lastInner = i;
+        }
+      }
+      i++;
+    }
+    assertTrue(lastInner >= 0 && lastInner < firstOuter);
+    //without the constraint the outer square is cut first
+    o.setInnerFirst(false);
+    result = o.optimize(vp);
+    c = result.getCommandCursor();
+    c.next();
+    c.next();
+    c.next();
+    c.next();
+    assertEquals(VectorCommand.CmdType.MOVETO, c.getType());
+    assertEquals(0, c.getX());
+    assertEquals(0, c.getY());
+  }
+}